@@ -0,0 +1,81 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import tech.greenfield.vertx.irked.Router;
+
+/**
+ * Dispatches batches of requests through a router on the Vert.x context of the request, as a server does, and waits
+ * for each batch to complete.
+ *
+ * Dispatching directly on the benchmark thread would not be comparable between request flows: vertx-web completes
+ * some flows - such as failing a request - in a new task on the request's context, so they would include a thread
+ * hand-off and a wait that the synchronous flows don't. Instead, the whole batch runs on the context: each request is
+ * dispatched when the previous one completed - in the same task if it completed synchronously, or from the
+ * completion of its response otherwise - and the hand-off from the benchmark thread is shared by the whole batch.
+ * Benchmarks should be annotated with {@code @OperationsPerInvocation(BatchDispatcher.BATCH_SIZE)} to report the
+ * cost of a single request.
+ *
+ * @author odeda
+ */
+public class BatchDispatcher {
+
+	/**
+	 * Number of requests dispatched by each call to {@link #dispatch()}
+	 */
+	public static final int BATCH_SIZE = 100;
+	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final Router router;
+	private final MockServerRequest request;
+	private int remaining;
+	private boolean dispatching;
+	private volatile boolean done;
+
+	/**
+	 * Create a dispatcher for a request
+	 * @param router router to dispatch the request through
+	 * @param request request to dispatch repeatedly, recycling it between dispatches
+	 */
+	public BatchDispatcher(Router router, MockServerRequest request) {
+		this.router = router;
+		this.request = request;
+		request.response().completionHandler(this::completed);
+	}
+
+	/**
+	 * Dispatch a batch of {@link #BATCH_SIZE} requests on the request's context and wait for all of them to complete
+	 * @return the status code of the last response
+	 * @throws IllegalStateException if the batch is not completed within 10 seconds
+	 */
+	public int dispatch() {
+		done = false;
+		remaining = BATCH_SIZE;
+		request.context().runOnContext(v -> next());
+		long deadline = System.nanoTime() + TIMEOUT_NANOS;
+		while (!done) {
+			if (System.nanoTime() - deadline > 0)
+				throw new IllegalStateException("Batch was not completed, last status " + request.response().getStatusCode());
+			Thread.onSpinWait();
+		}
+		return request.response().getStatusCode();
+	}
+
+	private void next() {
+		while (remaining > 0) {
+			remaining--;
+			dispatching = true;
+			router.handle(request.recycle());
+			dispatching = false;
+			if (!request.response().isCompleted())
+				return; // will continue when the response is completed
+		}
+		done = true;
+	}
+
+	private void completed() {
+		if (!dispatching) // otherwise the response was completed synchronously, and next() continues the batch
+			next();
+	}
+
+}
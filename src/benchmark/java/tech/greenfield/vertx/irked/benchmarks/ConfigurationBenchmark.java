@@ -0,0 +1,155 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.impl.RouteImplHelper;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Router;
+
+/**
+ * Measures the cost of configuring synthetic controller hierarchies generated by {@link ControllerGenerator}, so that
+ * configuration costs that grow faster than the number of routes can be detected.
+ *
+ * The benchmark is parameterized by the number of {@code routes}, and by whether the controller {@code classes} are
+ * {@code cold} - loaded by a new class loader for each measurement, so that reflection data and annotations are parsed
+ * as they are when a service starts - or {@code warm} - reused between measurements. Either way, each measurement
+ * configures new controller instances.
+ *
+ * Each configuration stage is measured separately:
+ * <ul>
+ * <li>{@code configure} - {@link Router#configure(Controller)} of the whole hierarchy</li>
+ * <li>{@code getRoutes} - the route discovery in {@code Controller.getRoutes()}, for all the controllers of the
+ * hierarchy</li>
+ * <li>{@code parsePaths} - parsing all the route paths with {@link RouteImplHelper}</li>
+ * </ul>
+ * The {@code configure} benchmark also reports the heap retained by the configured router in the
+ * {@code retainedBytes} secondary result.
+ *
+ * Run with {@code -prof gc} to also report the bytes allocated by each stage.
+ *
+ * @author odeda
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ConfigurationBenchmark {
+
+	private static final Method getRoutes;
+	static {
+		try {
+			getRoutes = Controller.class.getDeclaredMethod("getRoutes", Router.class);
+			getRoutes.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Secondary results of the {@code configure} benchmark
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class RetainedHeap {
+		/**
+		 * Number of heap bytes retained by the configured router
+		 */
+		public long retainedBytes;
+	}
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int routes;
+
+	@Param({ "cold", "warm" })
+	public String classes;
+
+	private Vertx vertx;
+	private ControllerGenerator generator;
+	private ClassLoader loader;
+	private Controller root;
+	private List<Controller> controllers;
+	private Router router;
+	private long heapBefore;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		vertx = Vertx.vertx();
+		generator = new ControllerGenerator(routes);
+		loader = generator.newClassLoader();
+	}
+
+	@Setup(Level.Invocation)
+	public void prepare(BenchmarkParams params) {
+		if ("cold".equals(classes))
+			loader = generator.newClassLoader();
+		root = generator.newRoot(loader);
+		router = null;
+		if (params.getBenchmark().endsWith(".getRoutes"))
+			collectControllers(root, controllers = new ArrayList<>());
+		if (params.getBenchmark().endsWith(".configure"))
+			heapBefore = usedHeap();
+	}
+
+	@TearDown(Level.Invocation)
+	public void measureRetainedHeap(RetainedHeap heap) {
+		if (router != null)
+			heap.retainedBytes = usedHeap() - heapBefore;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		vertx.close().await();
+	}
+
+	@Benchmark
+	public Router configure(RetainedHeap heap) throws Exception {
+		return router = new Router(vertx).configure(root);
+	}
+
+	@Benchmark
+	public void getRoutes(Blackhole blackhole) throws Exception {
+		Router router = new Router(vertx);
+		for (Controller controller : controllers)
+			blackhole.consume(getRoutes.invoke(controller, router));
+	}
+
+	@Benchmark
+	public void parsePaths(Blackhole blackhole) {
+		Router router = new Router(vertx);
+		for (String path : generator.getPaths())
+			blackhole.consume(new RouteImplHelper(router, path).listParameters());
+	}
+
+	private static void collectControllers(Controller controller, List<Controller> out) {
+		out.add(controller);
+		for (Class<?> type = controller.getClass(); !type.equals(Controller.class); type = type.getSuperclass())
+			for (Field field : type.getDeclaredFields())
+				if (Controller.class.isAssignableFrom(field.getType()))
+					try {
+						field.setAccessible(true);
+						collectControllers((Controller) field.get(controller), out);
+					} catch (IllegalAccessException e) {
+						throw new IllegalStateException(e);
+					}
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+}
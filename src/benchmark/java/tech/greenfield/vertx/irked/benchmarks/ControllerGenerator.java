@@ -0,0 +1,157 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import tech.greenfield.vertx.irked.Controller;
+
+/**
+ * Generates, compiles and loads synthetic controller hierarchies of a requested size, for benchmarking the route
+ * configuration.
+ *
+ * The hierarchy is made of units of 10 routes each, where each unit has a leaf controller that extends a base
+ * controller and mounts a nested sub-controller, and uses a mix of field and method handlers, dynamic path
+ * parameters, repeatable annotations, {@code @Consumes} and {@code @Timeout}. A root controller mounts all the units
+ * under their own prefix.
+ *
+ * Because the classes are generated at runtime, they can be loaded again by a new class loader, so that the
+ * configuration cost can be measured with classes whose reflection data and annotations were not yet parsed.
+ *
+ * @author odeda
+ */
+public class ControllerGenerator {
+
+	/**
+	 * Number of routes in each generated unit
+	 */
+	public static final int ROUTES_PER_UNIT = 10;
+
+	private static final String PACKAGE = "tech.greenfield.vertx.irked.benchmarks.generated";
+
+	private final Path classes;
+	private final List<String> paths = new ArrayList<>();
+
+	/**
+	 * Generate and compile a controller hierarchy
+	 * @param routes number of routes to generate, rounded up to a multiple of {@link #ROUTES_PER_UNIT}
+	 * @throws IOException if the generated sources could not be written or compiled
+	 */
+	public ControllerGenerator(int routes) throws IOException {
+		int units = Math.max(1, (routes + ROUTES_PER_UNIT - 1) / ROUTES_PER_UNIT);
+		Path sources = Files.createTempDirectory("irked-generated-sources");
+		classes = Files.createTempDirectory("irked-generated-classes");
+		Path packageDir = Files.createDirectories(sources.resolve(PACKAGE.replace('.', '/')));
+		StringBuilder root = new StringBuilder(header()).append("public class Root extends Controller {\n");
+		for (int i = 0; i < units; i++) {
+			root.append("\t@Endpoint(\"/unit").append(i).append("\")\n\tpublic Leaf").append(i)
+					.append(" unit").append(i).append(" = new Leaf").append(i).append("();\n");
+			Files.write(packageDir.resolve("Leaf" + i + ".java"), unit(i).getBytes(StandardCharsets.UTF_8));
+		}
+		Files.write(packageDir.resolve("Root.java"), root.append("}\n").toString().getBytes(StandardCharsets.UTF_8));
+		compile(sources);
+	}
+
+	/**
+	 * Retrieve the full paths of all the generated routes, for benchmarking the route path parser
+	 * @return list of route paths
+	 */
+	public List<String> getPaths() {
+		return Collections.unmodifiableList(paths);
+	}
+
+	/**
+	 * Create a new class loader for the generated classes, so that they are loaded as new classes
+	 * @return a class loader that loads the generated classes
+	 */
+	public ClassLoader newClassLoader() {
+		try {
+			return new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader());
+		} catch (MalformedURLException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Create the root controller of the generated hierarchy
+	 * @param loader class loader to load the generated classes from
+	 * @return root controller
+	 */
+	public Controller newRoot(ClassLoader loader) {
+		try {
+			return (Controller) loader.loadClass(PACKAGE + ".Root").getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Failed to create the generated root controller", e);
+		}
+	}
+
+	private String unit(int i) {
+		String prefix = "/unit" + i;
+		Stream.of("/", "/health", "/items/:id", "/items/:id/parts/:part", "/items", "/list", "/all", "/slow",
+				"/sub/:key", "/sub/:key").map(p -> p.equals("/") ? prefix : prefix + p).forEach(paths::add);
+		return header() +
+				"abstract class Base" + i + " extends Controller {\n" +
+				"\t@Get(\"/\")\n" +
+				"\tWebResult<Request> index = r -> \"index\";\n" +
+				"\t@Get(\"/health\")\n" +
+				"\tWebHandler health = r -> r.send(\"OK\");\n" +
+				"}\n" +
+				"class Sub" + i + " extends Controller {\n" +
+				"\t@Put(\"/:key\")\n" +
+				"\tvoid update(Request r, @Name(\"key\") String key) { r.send(key); }\n" +
+				"\t@Delete(\"/:key\")\n" +
+				"\tWebHandler remove = r -> r.send(\"Removed\");\n" +
+				"}\n" +
+				"public class Leaf" + i + " extends Base" + i + " {\n" +
+				"\t@Get(\"/items/:id\")\n" +
+				"\tString item(Request r, @Name(\"id\") String id) { return id; }\n" +
+				"\t@Get(\"/items/:id/parts/:part\")\n" +
+				"\tString part(Request r, @Name(\"id\") String id, @Name(\"part\") String part) { return id + part; }\n" +
+				"\t@Post(\"/items\")\n" +
+				"\t@Consumes(\"application/json\")\n" +
+				"\tWebHandler create = r -> r.send(\"Created\");\n" +
+				"\t@Get(\"/list\")\n" +
+				"\t@Get(\"/all\")\n" +
+				"\tWebResult<Request> list = r -> \"list\";\n" +
+				"\t@Get(\"/slow\")\n" +
+				"\t@Timeout(1000)\n" +
+				"\tWebResult<Request> slow = r -> \"slow\";\n" +
+				"\t@Endpoint(\"/sub\")\n" +
+				"\tSub" + i + " sub = new Sub" + i + "();\n" +
+				"}\n";
+	}
+
+	private static String header() {
+		return "package " + PACKAGE + ";\n\n" +
+				"import tech.greenfield.vertx.irked.*;\n" +
+				"import tech.greenfield.vertx.irked.annotations.*;\n\n";
+	}
+
+	private void compile(Path sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+			throw new IllegalStateException("Generating controllers requires a JDK");
+		List<String> args;
+		try (Stream<Path> files = Files.walk(sources)) {
+			args = files.filter(p -> p.toString().endsWith(".java")).map(Path::toString).collect(Collectors.toList());
+		}
+		args.addAll(0, List.of("-proc:none", "-nowarn", "-d", classes.toString(),
+				"-classpath", System.getProperty("java.class.path")));
+		if (compiler.run(null, null, null, args.toArray(new String[args.size()])) != 0)
+			throw new IOException("Failed to compile the generated controllers in " + sources);
+	}
+
+}
@@ -0,0 +1,168 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Irked;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.Router;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.annotations.OnFail;
+import tech.greenfield.vertx.irked.exceptions.InvalidRouteConfiguration;
+import tech.greenfield.vertx.irked.status.BadRequest;
+
+/**
+ * Measures the cost of dispatching a request through an Irked router to a handler, including the vertx-web routing,
+ * the Irked request wrapping and the response rendering, but without the HTTP codec and the network.
+ *
+ * The benchmark is parameterized by:
+ * <ul>
+ * <li>{@code handler} - the type of the handler: a {@code WebHandler} field, a routing method, a {@code WebResult}
+ * field, or a {@code WebHandler} that fails the request, which is handled by an {@code @OnFail} handler</li>
+ * <li>{@code pathParams} - the number of dynamic path parameters in the route</li>
+ * <li>{@code nesting} - the number of controllers from the router to the handler, where 1 means that the handler's
+ * controller is configured directly on the router</li>
+ * <li>{@code request} - whether the handler's controller creates a custom {@link Request} subclass for its handlers</li>
+ * <li>{@code metrics} - whether per-route metrics collection is enabled on the router</li>
+ * </ul>
+ *
+ * The parameter values are chosen to show the trend of each parameter rather than cover every combination.
+ *
+ * Requests are dispatched in batches on a Vert.x event loop using a {@link BatchDispatcher}, so with {@code metrics=on}
+ * the results include the per-route metrics collected on event loops, and all handler types are measured the same way - the {@code onfail}
+ * results include the event loop task that vertx-web schedules to handle a failure, but no thread hand-off.
+ *
+ * @author odeda
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(BatchDispatcher.BATCH_SIZE)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	public static class BenchmarkRequest extends Request {
+		public BenchmarkRequest(Request request) {
+			super(request);
+		}
+	}
+
+	abstract static class LeafController extends Controller {
+		boolean customRequest;
+
+		@Override
+		protected Request getRequestContext(Request request) {
+			return customRequest ? new BenchmarkRequest(request) : request;
+		}
+	}
+
+	static class FieldController extends LeafController {
+		@Get("/item")
+		WebHandler item = r -> r.send("OK");
+	}
+
+	static class MethodController extends LeafController {
+		@Get("/item")
+		void item(Request r) {
+			r.send("OK");
+		}
+	}
+
+	static class WebResultController extends LeafController {
+		@Get("/item")
+		WebResult<Request> item = r -> "OK";
+	}
+
+	static class OnFailController extends LeafController {
+		@Get("/item")
+		WebHandler item = r -> r.fail(new BadRequest());
+
+		@OnFail
+		@Endpoint("/*")
+		WebHandler failureHandler = r -> r.send("Failed");
+	}
+
+	static class NestingController extends Controller {
+		@Endpoint("/nested")
+		Controller child;
+
+		NestingController(Controller child) {
+			this.child = child;
+		}
+	}
+
+	@Param({ "field", "method", "result", "onfail" })
+	public String handler;
+
+	@Param({ "0", "1", "4" })
+	public int pathParams;
+
+	@Param({ "1", "2", "4" })
+	public int nesting;
+
+	@Param({ "plain", "custom" })
+	public String request;
+
+	@Param({ "off", "on" })
+	public String metrics;
+
+	private Vertx vertx;
+	private Router router;
+	private MockServerRequest serverRequest;
+	private BatchDispatcher dispatcher;
+
+	@Setup(Level.Trial)
+	public void setup() throws InvalidRouteConfiguration {
+		vertx = Vertx.vertx();
+		LeafController leaf = createLeaf(handler);
+		leaf.customRequest = "custom".equals(request);
+		Controller api = leaf;
+		for (int i = 1; i < nesting; i++)
+			api = new NestingController(api);
+		StringBuilder mountPath = new StringBuilder(), uri = new StringBuilder();
+		for (int i = 0; i < pathParams; i++) {
+			mountPath.append("/:param").append(i);
+			uri.append("/value").append(i);
+		}
+		for (int i = 1; i < nesting; i++)
+			uri.append("/nested");
+		uri.append("/item");
+		router = Irked.router(vertx);
+		if ("on".equals(metrics))
+			router.enableMetrics();
+		router.configure(api, mountPath.length() > 0 ? mountPath.toString() : "/");
+		serverRequest = new MockServerRequest(vertx, HttpMethod.GET, uri.toString());
+		dispatcher = new BatchDispatcher(router, serverRequest);
+		int status = dispatch();
+		if (!serverRequest.response().ended() || status != 200)
+			throw new IllegalStateException("Unexpected response to " + uri + ": " + status);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		vertx.close().await();
+	}
+
+	@Benchmark
+	public int dispatch() {
+		return dispatcher.dispatch();
+	}
+
+	private static LeafController createLeaf(String handler) {
+		switch (handler) {
+		case "field": return new FieldController();
+		case "method": return new MethodController();
+		case "result": return new WebResultController();
+		case "onfail": return new OnFailController();
+		default: throw new IllegalArgumentException("Unknown handler type " + handler);
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.HttpError;
+import tech.greenfield.vertx.irked.Irked;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.Router;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.annotations.OnFail;
+import tech.greenfield.vertx.irked.exceptions.InvalidRouteConfiguration;
+import tech.greenfield.vertx.irked.status.BadRequest;
+import tech.greenfield.vertx.irked.status.InternalServerError;
+import tech.greenfield.vertx.irked.status.NotFound;
+import tech.greenfield.vertx.irked.status.ServiceUnavailable;
+
+/**
+ * Measures the cost of failing a request through an Irked router, from the handler's failure, through the Irked
+ * exception unwrapping and the {@code @OnFail} handler matching, to the error response - which is the path that gets
+ * hot when a service has an incident and most requests fail.
+ *
+ * The benchmark is parameterized by:
+ * <ul>
+ * <li>{@code failure} - how the handler fails: a routing method that throws an {@link HttpError}, a {@code WebHandler}
+ * that throws an {@link HttpError#unchecked()} wrapper, a {@code WebHandler} that throws an {@link HttpError} wrapped
+ * in layers of runtime exceptions, a {@code WebResult} that returns a failed {@link Future}, or a {@code WebHandler}
+ * that calls {@link Request#fail(HttpError)}</li>
+ * <li>{@code onfail} - how the failure is handled: by the generic {@link Request#failureHandler()}, by status specific
+ * {@code @OnFail(status)} handlers or by exception specific {@code @OnFail(exception)} handlers - in the last two
+ * cases, the matching handler is preceded by a handler that does not match</li>
+ * <li>{@code depth} - the number of exceptions in the cause chain between the {@link HttpError} and its root cause,
+ * which is also the number of runtime exception layers that wrap the {@code wrapped} failure</li>
+ * </ul>
+ *
+ * The exceptions are created once when the benchmark starts, so that the results measure the Irked failure handling
+ * and not the JVM's stack trace capture. Requests are failed in batches on a Vert.x event loop using a
+ * {@link BatchDispatcher}, so the results are the event loop time per failed request - including the event loop task
+ * that vertx-web schedules to handle each failure, but not the hand-off from the benchmark thread, which is shared by
+ * the batch. Run with {@code -prof gc} (the default) to report the bytes allocated per failed request, and with
+ * {@code -t} to fail requests concurrently from several threads, each with its own router on its own event loop.
+ *
+ * @author odeda
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(BatchDispatcher.BATCH_SIZE)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FailureBenchmark {
+
+	/**
+	 * Root cause of the failures, standing in for a driver exception of an unavailable back-end
+	 */
+	public static class StorageException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public StorageException(String message) {
+			super(message);
+		}
+	}
+
+	abstract static class FailingController extends Controller {
+		BadRequest error;
+		RuntimeException wrapped;
+
+		@Get("/thrown")
+		void thrown(Request r) throws BadRequest {
+			throw error;
+		}
+
+		@Get("/unchecked")
+		WebHandler unchecked = r -> {
+			throw error.unchecked();
+		};
+
+		@Get("/wrapped")
+		WebHandler wrappedHandler = r -> {
+			throw wrapped;
+		};
+
+		@Get("/future")
+		WebResult<Request> future = r -> Future.failedFuture(error);
+
+		@Get("/failed")
+		WebHandler failed = r -> r.fail(error);
+	}
+
+	static class GenericFailures extends FailingController {
+		@OnFail
+		@Endpoint
+		WebHandler failureHandler = Request.failureHandler();
+	}
+
+	static class StatusFailures extends FailingController {
+		@OnFail(status = 404)
+		@Endpoint
+		WebHandler notFound = r -> r.sendError(new NotFound());
+
+		@OnFail(status = 400)
+		@Endpoint
+		WebHandler badRequest = r -> r.sendError(HttpError.toHttpError(r));
+	}
+
+	static class ExceptionFailures extends FailingController {
+		@OnFail(exception = IllegalStateException.class)
+		@Endpoint
+		WebHandler illegalState = r -> r.sendError(new InternalServerError());
+
+		@OnFail(exception = StorageException.class)
+		@Endpoint
+		WebHandler storage = r -> r.sendError(new ServiceUnavailable(r.findFailure(StorageException.class).getMessage()));
+	}
+
+	@Param({ "thrown", "unchecked", "wrapped", "future", "failed" })
+	public String failure;
+
+	@Param({ "handler", "status", "exception" })
+	public String onfail;
+
+	@Param({ "0", "4", "16" })
+	public int depth;
+
+	private Vertx vertx;
+	private Router router;
+	private MockServerRequest serverRequest;
+	private BatchDispatcher dispatcher;
+	private int expectedStatus;
+
+	@Setup(Level.Trial)
+	public void setup() throws InvalidRouteConfiguration {
+		vertx = Vertx.vertx();
+		FailingController api = createController(onfail);
+		Throwable cause = new StorageException("Storage is unavailable");
+		for (int i = 0; i < depth; i++)
+			cause = new RuntimeException("Storage layer " + i, cause);
+		api.error = new BadRequest("Invalid request", cause);
+		api.wrapped = api.error.unchecked();
+		for (int i = 0; i < depth; i++)
+			api.wrapped = i % 2 == 0 ? new CompletionException(api.wrapped) : new RuntimeException(api.wrapped);
+		expectedStatus = "exception".equals(onfail) ? 503 : 400;
+		router = Irked.router(vertx).configure(api);
+		serverRequest = new MockServerRequest(vertx, HttpMethod.GET, "/" + failure);
+		dispatcher = new BatchDispatcher(router, serverRequest);
+		int status = fail();
+		if (!serverRequest.response().ended() || status != expectedStatus)
+			throw new IllegalStateException("Unexpected response to /" + failure + ": " + status);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		vertx.close().await();
+	}
+
+	@Benchmark
+	public int fail() {
+		return dispatcher.dispatch();
+	}
+
+	private static FailingController createController(String onfail) {
+		switch (onfail) {
+		case "handler": return new GenericFailures();
+		case "status": return new StatusFailures();
+		case "exception": return new ExceptionFailures();
+		default: throw new IllegalArgumentException("Unknown failure handler type " + onfail);
+		}
+	}
+
+}
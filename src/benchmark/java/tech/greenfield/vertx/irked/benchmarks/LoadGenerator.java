@@ -0,0 +1,258 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.VerticleBase;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.PoolOptions;
+
+/**
+ * HTTP load generator for a local server, with two load models:
+ * <ul>
+ * <li>Closed loop - a fixed number of concurrent clients, each sending its next request as soon as the previous
+ * response arrived. This measures the maximal throughput, but hides latency spikes because a slow server also slows
+ * down the load.</li>
+ * <li>Open loop - requests are sent at a fixed rate regardless of how fast the server responds, and latency is
+ * measured from the time the request was scheduled to be sent, so queuing delays caused by the server are included in
+ * the latency (avoiding "coordinated omission").</li>
+ * </ul>
+ *
+ * The load is spread over a number of client verticle instances, each with its own HTTP client on its own event loop
+ * (if the Vert.x instance has enough event loops), so that the load generator itself does not limit the throughput.
+ * Each client gets an equal share of the connections and of the concurrency or request rate - in the open loop, the
+ * clients take turns sending the requests of a single evenly spaced schedule.
+ *
+ * @author odeda
+ */
+public class LoadGenerator {
+
+	private static final long TICK_MILLIS = 1;
+	private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final Vertx vertx;
+	private final int port;
+	private final List<Client> clients = new CopyOnWriteArrayList<>();
+	private String deployment;
+
+	/**
+	 * Start a load generator
+	 * @param vertx Vert.x instance to run the HTTP clients on
+	 * @param port local port that the server listens on
+	 * @param connections maximal number of connections to open to the server, shared by the clients
+	 * @param threads number of clients to generate load with, each on its own event loop
+	 * @return a future that will be completed with the load generator when all its clients have started
+	 */
+	public static Future<LoadGenerator> start(Vertx vertx, int port, int connections, int threads) {
+		LoadGenerator generator = new LoadGenerator(vertx, port);
+		int count = Math.max(1, threads);
+		AtomicInteger index = new AtomicInteger();
+		return vertx.deployVerticle(() -> generator.new Client(share(connections, count, index.getAndIncrement())),
+				new DeploymentOptions().setInstances(count))
+				.map(id -> {
+					generator.deployment = id;
+					return generator;
+				});
+	}
+
+	private LoadGenerator(Vertx vertx, int port) {
+		this.vertx = vertx;
+		this.port = port;
+	}
+
+	/**
+	 * Result of a load run
+	 */
+	public static class Result {
+		private final PreciseLatencyHistogram latency = new PreciseLatencyHistogram();
+		private final LongAdder errors = new LongAdder();
+		private final AtomicLong inFlight = new AtomicLong();
+		private final AtomicInteger sending = new AtomicInteger();
+		private long durationNanos;
+
+		/**
+		 * @return latency of successful requests
+		 */
+		public PreciseLatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return number of successful requests
+		 */
+		public long getRequests() {
+			return latency.getCount();
+		}
+
+		/**
+		 * @return number of requests that failed or received an unexpected status
+		 */
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		/**
+		 * @return number of successful requests per second
+		 */
+		public double getThroughput() {
+			return getRequests() * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+		}
+	}
+
+	/**
+	 * Run a closed loop load
+	 * @param path request path to send
+	 * @param expectedStatus response status that is considered a success
+	 * @param concurrency number of concurrent clients
+	 * @param durationNanos how long to generate load for
+	 * @return a future that will be completed with the result when all the requests have completed
+	 */
+	public Future<Result> closedLoop(String path, int expectedStatus, int concurrency, long durationNanos) {
+		Result result = new Result();
+		long start = System.nanoTime(), end = start + durationNanos;
+		result.durationNanos = durationNanos;
+		for (int i = 0; i < clients.size(); i++) {
+			Client client = clients.get(i);
+			int share = share(concurrency, clients.size(), i);
+			client.execute(() -> {
+				for (int j = 0; j < share; j++)
+					client.sendClosedLoop(path, expectedStatus, end, result);
+			});
+		}
+		Promise<Result> done = Promise.promise();
+		vertx.setTimer(Math.max(1, TimeUnit.NANOSECONDS.toMillis(durationNanos)), t -> drain(result, end, done));
+		return done.future();
+	}
+
+	/**
+	 * Run an open loop load
+	 * @param path request path to send
+	 * @param expectedStatus response status that is considered a success
+	 * @param requestsPerSecond rate at which to send requests
+	 * @param durationNanos how long to generate load for
+	 * @return a future that will be completed with the result when all the requests have completed
+	 */
+	public Future<Result> openLoop(String path, int expectedStatus, long requestsPerSecond, long durationNanos) {
+		Result result = new Result();
+		long start = System.nanoTime(), end = start + durationNanos;
+		double intervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) requestsPerSecond;
+		result.durationNanos = durationNanos;
+		result.sending.set(clients.size());
+		for (int i = 0; i < clients.size(); i++) {
+			Client client = clients.get(i);
+			int turn = i;
+			client.execute(() -> client.sendOpenLoop(path, expectedStatus, start, end, intervalNanos, turn, result));
+		}
+		Promise<Result> done = Promise.promise();
+		vertx.setTimer(Math.max(1, TimeUnit.NANOSECONDS.toMillis(durationNanos)), t -> drain(result, end, done));
+		return done.future();
+	}
+
+	/**
+	 * Stop the clients and close their HTTP connections
+	 * @return a future that will be completed when the connections are closed
+	 */
+	public Future<Void> close() {
+		return vertx.undeploy(deployment);
+	}
+
+	private static int share(int total, int parts, int part) {
+		return total / parts + (part < total % parts ? 1 : 0);
+	}
+
+	private void drain(Result result, long since, Promise<Result> done) {
+		if ((result.sending.get() == 0 && result.inFlight.get() == 0) || System.nanoTime() - since > DRAIN_TIMEOUT_NANOS) {
+			done.tryComplete(result);
+			return;
+		}
+		vertx.setTimer(TICK_MILLIS, t -> drain(result, since, done));
+	}
+
+	/**
+	 * A client verticle, that sends its share of the load from its own event loop
+	 */
+	private class Client extends VerticleBase {
+		private final int connections;
+		private HttpClient client;
+
+		Client(int connections) {
+			this.connections = Math.max(1, connections);
+		}
+
+		@Override
+		public Future<?> start() {
+			client = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(true).setPipelining(false),
+					new PoolOptions().setHttp1MaxSize(connections));
+			clients.add(this);
+			return Future.succeededFuture();
+		}
+
+		@Override
+		public Future<?> stop() {
+			clients.remove(this);
+			return client.close();
+		}
+
+		private void execute(Runnable task) {
+			context.runOnContext(v -> task.run());
+		}
+
+		private void sendClosedLoop(String path, int expectedStatus, long end, Result result) {
+			send(path, expectedStatus, System.nanoTime(), result, v -> {
+				if (System.nanoTime() < end)
+					sendClosedLoop(path, expectedStatus, end, result);
+			});
+		}
+
+		private void sendOpenLoop(String path, int expectedStatus, long start, long end, double intervalNanos, int turn,
+				Result result) {
+			// this client sends requests turn, turn + n, turn + 2n... of the schedule, where n is the number of clients
+			int stride = clients.size();
+			long[] sent = { 0 };
+			vertx.setPeriodic(TICK_MILLIS, timer -> {
+				long now = System.nanoTime();
+				double elapsed = Math.min(now, end) - start - turn * intervalNanos;
+				for (long due = elapsed > 0 ? (long) (elapsed / (intervalNanos * stride)) : 0; sent[0] < due; sent[0]++)
+					send(path, expectedStatus, start + (long) ((sent[0] * stride + turn) * intervalNanos), result, null);
+				if (now >= end) {
+					vertx.cancelTimer(timer);
+					result.sending.decrementAndGet();
+				}
+			});
+		}
+
+		private void send(String path, int expectedStatus, long scheduledNanos, Result result, Handler<Void> next) {
+			result.inFlight.incrementAndGet();
+			client.request(HttpMethod.GET, port, "localhost", path)
+			.compose(req -> req.send())
+			.compose(res -> res.body().map(body -> res))
+			.onComplete(res -> {
+				long latency = System.nanoTime() - scheduledNanos;
+				if (res.succeeded() && isExpected(res.result(), expectedStatus))
+					result.latency.recordNanos(latency);
+				else
+					result.errors.increment();
+				if (next != null) // before the request is counted as done, so the load never seems drained in between
+					next.handle(null);
+				result.inFlight.decrementAndGet();
+			});
+		}
+	}
+
+	private static boolean isExpected(HttpClientResponse response, int expectedStatus) {
+		return response.statusCode() == expectedStatus;
+	}
+
+}
@@ -0,0 +1,294 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.VerticleBase;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Irked;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.annotations.OnFail;
+import tech.greenfield.vertx.irked.status.BadRequest;
+
+/**
+ * End-to-end load harness that compares the throughput, latency and allocation rate of equivalent APIs implemented
+ * with Irked and directly with vertx-web.
+ *
+ * The harness starts an in-process HTTP server for each API and generates load on it over localhost using
+ * {@link LoadGenerator}, once with a closed loop and once with an open loop, for each of the workloads - which the APIs
+ * implement with the same work, including the failure handling that renders the same JSON error body:
+ * <ul>
+ * <li>{@code text} - a plain text response</li>
+ * <li>{@code json} - a JSON object response</li>
+ * <li>{@code params} - a JSON response built from two path parameters</li>
+ * <li>{@code failure} - a request that fails with a 400 Bad Request status</li>
+ * </ul>
+ *
+ * The results are written as a JSON document, so that runs can be compared across Irked versions. Options are given
+ * as {@code --name=value} arguments:
+ * <ul>
+ * <li>{@code apis} - comma separated list of APIs to test: {@code irked}, {@code vertx-web} (default: both)</li>
+ * <li>{@code workloads} - comma separated list of workloads to run (default: all)</li>
+ * <li>{@code modes} - comma separated list of load models: {@code closed}, {@code open} (default: both)</li>
+ * <li>{@code duration} - number of seconds to measure each workload (default: 10)</li>
+ * <li>{@code warmup} - number of seconds to load each workload before measuring (default: 5)</li>
+ * <li>{@code connections} - number of concurrent connections (default: 64)</li>
+ * <li>{@code rate} - requests per second to send in the open loop (default: 10000)</li>
+ * <li>{@code server-threads} - number of server event loops (default: half the available processors)</li>
+ * <li>{@code client-threads} - number of load generator event loops, each running its own HTTP client with its share
+ * of the connections (default: half the available processors)</li>
+ * <li>{@code output} - file to write the results to (default: standard output)</li>
+ * </ul>
+ *
+ * All the APIs run in the same JVM, so that they are compared under the same conditions. To keep the API that happens
+ * to be measured first from being measured before the JIT compiler has optimized the shared Vert.x code, every API is
+ * warmed up with every workload before any of them is measured, and then the measurements alternate between the APIs.
+ *
+ * The load generator runs in the same process and on the same host as the server, so the absolute numbers are lower
+ * than for a dedicated load generator - the harness is meant for comparing APIs and versions on the same machine.
+ *
+ * @author odeda
+ */
+public class LoadHarness {
+
+	enum Workload {
+		TEXT("/text", 200), JSON("/json", 200), PARAMS("/items/books/42", 200), FAILURE("/fail", 400);
+
+		final String path;
+		final int expectedStatus;
+
+		Workload(String path, int expectedStatus) {
+			this.path = path;
+			this.expectedStatus = expectedStatus;
+		}
+	}
+
+	static class IrkedApi extends Controller {
+		@Get("/text")
+		WebResult<Request> text = r -> "Hello, World!";
+
+		@Get("/json")
+		WebResult<Request> json = r -> new JsonObject().put("message", "Hello, World!");
+
+		@Get("/items/:category/:id")
+		WebResult<Request> item = r -> new JsonObject()
+				.put("category", r.pathParam("category"))
+				.put("id", r.pathParam("id"));
+
+		@Get("/fail")
+		WebHandler fail = r -> r.fail(new BadRequest("Invalid request"));
+
+		@OnFail
+		@Endpoint
+		WebHandler failureHandler = Request.failureHandler();
+	}
+
+	static io.vertx.ext.web.Router vertxWebApi(Vertx vertx) {
+		io.vertx.ext.web.Router router = io.vertx.ext.web.Router.router(vertx);
+		router.get("/text").handler(ctx -> ctx.response().putHeader("Content-Type", "text/plain").end("Hello, World!"));
+		router.get("/json").handler(ctx -> ctx.json(new JsonObject().put("message", "Hello, World!")));
+		router.get("/items/:category/:id").handler(ctx -> ctx.json(new JsonObject()
+				.put("category", ctx.pathParam("category"))
+				.put("id", ctx.pathParam("id"))));
+		router.get("/fail").handler(ctx -> ctx.fail(400, new IllegalArgumentException("Invalid request")));
+		// renders the same error body as Irked's Request.failureHandler()
+		router.route().failureHandler(ctx -> ctx.response().setStatusCode(ctx.statusCode()).putHeader("Content-Type",
+				"application/json").end(new JsonObject().put("status", false).put("message", ctx.failure().getMessage())
+						.toBuffer()));
+		return router;
+	}
+
+	private static final Map<String, Function<Vertx, Handler<HttpServerRequest>>> APIS = Map.of(
+			"irked", vertx -> {
+				try {
+					return Irked.router(vertx).configure(new IrkedApi());
+				} catch (Exception e) {
+					throw new IllegalStateException("Failed to configure the Irked API", e);
+				}
+			},
+			"vertx-web", LoadHarness::vertxWebApi);
+
+	private final Map<String, String> options;
+	private final long durationNanos;
+	private final long warmupNanos;
+	private final int connections;
+	private final long rate;
+	private final int serverThreads;
+	private final int clientThreads;
+
+	LoadHarness(Map<String, String> options) {
+		this.options = options;
+		int halfCores = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "10")));
+		warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "5")));
+		connections = Integer.parseInt(options.getOrDefault("connections", "64"));
+		rate = Long.parseLong(options.getOrDefault("rate", "10000"));
+		serverThreads = Integer.parseInt(options.getOrDefault("server-threads", String.valueOf(halfCores)));
+		clientThreads = Integer.parseInt(options.getOrDefault("client-threads", String.valueOf(halfCores)));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parseOptions(args);
+		writeReport(options, new LoadHarness(options).run());
+		System.exit(0);
+	}
+
+	/**
+	 * Parse harness options given as {@code --name=value} arguments
+	 */
+	static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("="))
+				throw new IllegalArgumentException("Invalid option '" + arg + "', expected --name=value");
+			options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		}
+		return options;
+	}
+
+	/**
+	 * Write a harness report to the file given in the {@code output} option, or to the standard output
+	 */
+	static void writeReport(Map<String, String> options, JsonObject report) throws IOException {
+		String text = report.encodePrettily();
+		if (options.containsKey("output"))
+			Files.write(Paths.get(options.get("output")), text.getBytes(StandardCharsets.UTF_8));
+		else
+			System.out.println(text);
+	}
+
+	JsonObject run() throws IOException {
+		JsonArray results = new JsonArray();
+		Vertx client = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(clientThreads));
+		List<Server> servers = new ArrayList<>();
+		try {
+			for (String api : list("apis", "irked,vertx-web"))
+				servers.add(new Server(api, client));
+			for (String workload : list("workloads", "text,json,params,failure"))
+				for (String mode : list("modes", "closed,open"))
+					for (Server server : servers)
+						load(server.generator, Workload.valueOf(workload.toUpperCase()), mode, warmupNanos);
+			for (String workload : list("workloads", "text,json,params,failure"))
+				for (String mode : list("modes", "closed,open"))
+					for (Server server : servers)
+						results.add(runWorkload(server, Workload.valueOf(workload.toUpperCase()), mode));
+		} finally {
+			for (Server server : servers)
+				server.close();
+			client.close().await();
+		}
+		return new JsonObject()
+				.put("irked", String.valueOf(Irked.class.getPackage().getImplementationVersion()))
+				.put("java", System.getProperty("java.version"))
+				.put("processors", Runtime.getRuntime().availableProcessors())
+				.put("options", new JsonObject()
+						.put("duration", TimeUnit.NANOSECONDS.toSeconds(durationNanos))
+						.put("warmup", TimeUnit.NANOSECONDS.toSeconds(warmupNanos))
+						.put("connections", connections)
+						.put("rate", rate)
+						.put("serverThreads", serverThreads)
+						.put("clientThreads", clientThreads))
+				.put("results", results);
+	}
+
+	/**
+	 * An API under test: an HTTP server running the API on its own Vert.x instance, and a load generator for it
+	 */
+	private class Server {
+		final String api;
+		final Vertx vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(serverThreads));
+		final long[] threadIds;
+		final LoadGenerator generator;
+
+		Server(String api, Vertx client) throws IOException {
+			if (!APIS.containsKey(api))
+				throw new IllegalArgumentException("Unknown API " + api + ", expected one of " + APIS.keySet());
+			this.api = api;
+			int port = freePort();
+			Set<Long> serverThreadIds = ConcurrentHashMap.newKeySet();
+			Handler<HttpServerRequest> handler = APIS.get(api).apply(vertx);
+			vertx.deployVerticle(() -> new VerticleBase() {
+				@Override
+				public Future<?> start() {
+					serverThreadIds.add(Thread.currentThread().getId());
+					return vertx.createHttpServer().requestHandler(handler).listen(port);
+				}
+			}, new DeploymentOptions().setInstances(serverThreads)).await();
+			threadIds = serverThreadIds.stream().mapToLong(Long::longValue).toArray();
+			generator = LoadGenerator.start(client, port, connections, clientThreads).await();
+		}
+
+		void close() {
+			generator.close().await();
+			vertx.close().await();
+		}
+	}
+
+	private JsonObject runWorkload(Server server, Workload workload, String mode) {
+		long allocatedBefore = allocatedBytes(server.threadIds);
+		LoadGenerator.Result result = load(server.generator, workload, mode, durationNanos);
+		long allocated = allocatedBytes(server.threadIds) - allocatedBefore;
+		double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		return new JsonObject()
+				.put("api", server.api)
+				.put("workload", workload.name().toLowerCase())
+				.put("mode", mode)
+				.put("requests", result.getRequests())
+				.put("errors", result.getErrors())
+				.put("throughput", result.getThroughput())
+				.put("latency", result.getLatency().toJson())
+				.put("allocation", new JsonObject()
+						.put("bytesPerSecond", allocated / seconds)
+						.put("bytesPerRequest", result.getRequests() > 0 ? allocated / (double) result.getRequests() : 0));
+	}
+
+	private LoadGenerator.Result load(LoadGenerator generator, Workload workload, String mode, long durationNanos) {
+		switch (mode) {
+		case "closed": return generator.closedLoop(workload.path, workload.expectedStatus, connections, durationNanos).await();
+		case "open": return generator.openLoop(workload.path, workload.expectedStatus, rate, durationNanos).await();
+		default: throw new IllegalArgumentException("Unknown load mode " + mode + ", expected closed or open");
+		}
+	}
+
+	private List<String> list(String option, String defaultValue) {
+		return Arrays.asList(options.getOrDefault(option, defaultValue).split(","));
+	}
+
+	/**
+	 * Sum the bytes allocated by the server threads, which excludes the load generator allocations
+	 */
+	static long allocatedBytes(long[] threadIds) {
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return Arrays.stream(threads.getThreadAllocatedBytes(threadIds)).filter(b -> b > 0).sum();
+	}
+
+	static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+}
@@ -0,0 +1,306 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.util.Collections;
+import java.util.Set;
+
+import io.netty.handler.codec.DecoderResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.Cookie;
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.http.HttpFrame;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.QueryParamDecoderConfig;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.StreamPriority;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.core.internal.VertxInternal;
+import io.vertx.core.internal.http.HttpServerRequestInternal;
+import io.vertx.core.internal.http.QueryParamDecoder;
+import io.vertx.core.net.HostAndPort;
+import io.vertx.core.net.NetSocket;
+
+/**
+ * A body-less server request that is not connected to the network, so that the router can be driven directly from a
+ * benchmark thread, without the HTTP codec and the network stack.
+ *
+ * vertx-web requires server requests to extend the internal {@link HttpServerRequestInternal} class, so this mock
+ * depends on Vert.x internals and may need to be updated when upgrading Vert.x.
+ *
+ * @author odeda
+ */
+public class MockServerRequest extends HttpServerRequestInternal {
+
+	private static final QueryParamDecoder decoder = new QueryParamDecoder(new QueryParamDecoderConfig());
+	private static final HostAndPort authority = HostAndPort.authority("localhost", 8080);
+
+	private final ContextInternal context;
+	private final HttpMethod method;
+	private final String uri;
+	private final String path;
+	private final String query;
+	private final MultiMap headers = HttpHeaders.headers();
+	private final MockServerResponse response = new MockServerResponse();
+	private MultiMap params;
+
+	/**
+	 * Create a new mock request
+	 * @param vertx Vert.x instance whose context the request should report
+	 * @param method HTTP method of the request
+	 * @param uri request URI, with an optional query string
+	 */
+	public MockServerRequest(Vertx vertx, HttpMethod method, String uri) {
+		this.context = ((VertxInternal) vertx).getOrCreateContext();
+		this.method = method;
+		this.uri = uri;
+		int queryStart = uri.indexOf('?');
+		this.path = queryStart < 0 ? uri : uri.substring(0, queryStart);
+		this.query = queryStart < 0 ? null : uri.substring(queryStart + 1);
+		headers.set(HttpHeaders.HOST, authority.toString());
+	}
+
+	/**
+	 * Set a request header
+	 * @param name header name
+	 * @param value header value
+	 * @return itself for fluent calls
+	 */
+	public MockServerRequest header(String name, String value) {
+		headers.set(name, value);
+		return this;
+	}
+
+	/**
+	 * Prepare the request to be dispatched again
+	 * @return itself for fluent calls
+	 */
+	public MockServerRequest recycle() {
+		response.recycle();
+		return this;
+	}
+
+	@Override
+	public MockServerResponse response() {
+		return response;
+	}
+
+	@Override
+	public ContextInternal context() {
+		return context;
+	}
+
+	@Override
+	public Object metric() {
+		return null;
+	}
+
+	@Override
+	public QueryParamDecoder queryParamDecoder() {
+		return decoder;
+	}
+
+	@Override
+	public HttpMethod method() {
+		return method;
+	}
+
+	@Override
+	public String uri() {
+		return uri;
+	}
+
+	@Override
+	public String path() {
+		return path;
+	}
+
+	@Override
+	public String query() {
+		return query;
+	}
+
+	@Override
+	public MultiMap headers() {
+		return headers;
+	}
+
+	@Override
+	public HttpVersion version() {
+		return HttpVersion.HTTP_1_1;
+	}
+
+	@Override
+	public String scheme() {
+		return "http";
+	}
+
+	@Override
+	public HostAndPort authority() {
+		return authority;
+	}
+
+	@Override
+	public HostAndPort authority(boolean real) {
+		return authority;
+	}
+
+	@Override
+	public String absoluteURI() {
+		return "http://" + authority + uri;
+	}
+
+	@Override
+	public long bytesRead() {
+		return 0;
+	}
+
+	@Override
+	public HttpServerRequest setParamsCharset(String charset) {
+		return this;
+	}
+
+	@Override
+	public String getParamsCharset() {
+		return "UTF-8";
+	}
+
+	@Override
+	public MultiMap params(boolean semicolonIsNormalChar) {
+		if (params == null) {
+			params = MultiMap.caseInsensitiveMultiMap();
+			if (query != null)
+				decoder.appendTo(query, params);
+		}
+		return params;
+	}
+
+	@Override
+	public HttpServerRequest exceptionHandler(Handler<Throwable> handler) {
+		return this;
+	}
+
+	@Override
+	public HttpServerRequest handler(Handler<Buffer> handler) {
+		return this;
+	}
+
+	@Override
+	public HttpServerRequest pause() {
+		return this;
+	}
+
+	@Override
+	public HttpServerRequest resume() {
+		return this;
+	}
+
+	@Override
+	public HttpServerRequest fetch(long amount) {
+		return this;
+	}
+
+	@Override
+	public HttpServerRequest endHandler(Handler<Void> endHandler) {
+		if (endHandler != null)
+			endHandler.handle(null); // there is no body, so the request has always ended
+		return this;
+	}
+
+	@Override
+	public Future<Buffer> body() {
+		return Future.succeededFuture(Buffer.buffer());
+	}
+
+	@Override
+	public Future<Void> end() {
+		return Future.succeededFuture();
+	}
+
+	@Override
+	public Future<NetSocket> toNetSocket() {
+		return Future.failedFuture(new UnsupportedOperationException());
+	}
+
+	@Override
+	public HttpServerRequest setExpectMultipart(boolean expect) {
+		return this;
+	}
+
+	@Override
+	public boolean isExpectMultipart() {
+		return false;
+	}
+
+	@Override
+	public HttpServerRequest uploadHandler(Handler<HttpServerFileUpload> uploadHandler) {
+		return this;
+	}
+
+	@Override
+	public MultiMap formAttributes() {
+		return MultiMap.caseInsensitiveMultiMap();
+	}
+
+	@Override
+	public String getFormAttribute(String attributeName) {
+		return null;
+	}
+
+	@Override
+	public Future<ServerWebSocket> toWebSocket() {
+		return Future.failedFuture(new UnsupportedOperationException());
+	}
+
+	@Override
+	public boolean isEnded() {
+		return true;
+	}
+
+	@Override
+	public HttpServerRequest customFrameHandler(Handler<HttpFrame> handler) {
+		return this;
+	}
+
+	@Override
+	public HttpConnection connection() {
+		return null;
+	}
+
+	@Override
+	public HttpServerRequest streamPriorityHandler(Handler<StreamPriority> handler) {
+		return this;
+	}
+
+	@Override
+	public DecoderResult decoderResult() {
+		return DecoderResult.SUCCESS;
+	}
+
+	@Override
+	public Cookie getCookie(String name) {
+		return null;
+	}
+
+	@Override
+	public Cookie getCookie(String name, String domain, String path) {
+		return null;
+	}
+
+	@Override
+	public Set<Cookie> cookies(String name) {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public Set<Cookie> cookies() {
+		return Collections.emptySet();
+	}
+
+}
@@ -0,0 +1,372 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Set;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.Cookie;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.net.HostAndPort;
+
+/**
+ * A server response that is not connected to the network: it records the status and the body length and runs the
+ * response lifecycle handlers synchronously when it is ended, so that vertx-web and Irked see a normal response.
+ *
+ * Instances are reused between benchmark invocations using {@link #recycle()}, so that the mock itself does not show up
+ * in the allocation profile. Some Irked and vertx-web flows (such as failing a request) complete the response
+ * asynchronously on the Vert.x context, so benchmarks should dispatch requests on the context using a
+ * {@link BatchDispatcher}, which continues from the {@link #completionHandler(Runnable) completion handler}.
+ *
+ * @author odeda
+ */
+public class MockServerResponse implements HttpServerResponse {
+
+	private final MultiMap headers = HttpHeaders.headers();
+	private final MultiMap trailers = HttpHeaders.headers();
+	private int statusCode;
+	private String statusMessage;
+	private boolean chunked;
+	private boolean headWritten;
+	private boolean ended;
+	private long bytesWritten;
+	private Handler<Void> headersEndHandler;
+	private Handler<Void> bodyEndHandler;
+	private Handler<Void> endHandler;
+	private Handler<Void> closeHandler;
+	private Runnable completionHandler;
+	private volatile boolean completed;
+
+	/**
+	 * Prepare the response to be used by a new request
+	 */
+	public void recycle() {
+		headers.clear();
+		trailers.clear();
+		statusCode = 200;
+		statusMessage = null;
+		chunked = headWritten = ended = false;
+		bytesWritten = 0;
+		headersEndHandler = bodyEndHandler = endHandler = closeHandler = null;
+		completed = false;
+	}
+
+	/**
+	 * Set a handler to be called, on the thread that ended the response, after the response has been ended and all its
+	 * end handlers have completed. Unlike the response lifecycle handlers, this handler is kept when the response is
+	 * recycled.
+	 * @param handler handler to call when each response is completed
+	 * @return itself for fluent calls
+	 */
+	public MockServerResponse completionHandler(Runnable handler) {
+		completionHandler = handler;
+		return this;
+	}
+
+	/**
+	 * Check whether the response has been ended and all its end handlers have completed
+	 * @return whether the response is completed
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	private Future<Void> writeBody(int length, boolean end) {
+		if (ended)
+			return Future.failedFuture(new IllegalStateException("Response has already been written"));
+		if (!headWritten) {
+			headWritten = true;
+			if (headersEndHandler != null)
+				headersEndHandler.handle(null);
+		}
+		bytesWritten += length;
+		if (end) {
+			ended = true;
+			if (bodyEndHandler != null)
+				bodyEndHandler.handle(null);
+			if (endHandler != null)
+				endHandler.handle(null);
+			completed = true;
+			if (completionHandler != null)
+				completionHandler.run();
+		}
+		return Future.succeededFuture();
+	}
+
+	@Override
+	public HttpServerResponse exceptionHandler(Handler<Throwable> handler) {
+		return this;
+	}
+
+	@Override
+	public Future<Void> write(Buffer data) {
+		return writeBody(data.length(), false);
+	}
+
+	@Override
+	public HttpServerResponse setWriteQueueMaxSize(int maxSize) {
+		return this;
+	}
+
+	@Override
+	public boolean writeQueueFull() {
+		return false;
+	}
+
+	@Override
+	public HttpServerResponse drainHandler(Handler<Void> handler) {
+		return this;
+	}
+
+	@Override
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	@Override
+	public HttpServerResponse setStatusCode(int statusCode) {
+		this.statusCode = statusCode;
+		return this;
+	}
+
+	@Override
+	public String getStatusMessage() {
+		return statusMessage;
+	}
+
+	@Override
+	public HttpServerResponse setStatusMessage(String statusMessage) {
+		this.statusMessage = statusMessage;
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse setChunked(boolean chunked) {
+		this.chunked = chunked;
+		return this;
+	}
+
+	@Override
+	public boolean isChunked() {
+		return chunked;
+	}
+
+	@Override
+	public MultiMap headers() {
+		return headers;
+	}
+
+	@Override
+	public HttpServerResponse putHeader(String name, String value) {
+		headers.set(name, value);
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse putHeader(CharSequence name, CharSequence value) {
+		headers.set(name, value);
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse putHeader(String name, Iterable<String> values) {
+		headers.set(name, values);
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse putHeader(CharSequence name, Iterable<CharSequence> values) {
+		headers.set(name, values);
+		return this;
+	}
+
+	@Override
+	public MultiMap trailers() {
+		return trailers;
+	}
+
+	@Override
+	public HttpServerResponse putTrailer(String name, String value) {
+		trailers.set(name, value);
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse putTrailer(CharSequence name, CharSequence value) {
+		trailers.set(name, value);
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse putTrailer(String name, Iterable<String> values) {
+		trailers.set(name, values);
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse putTrailer(CharSequence name, Iterable<CharSequence> value) {
+		trailers.set(name, value);
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse closeHandler(Handler<Void> handler) {
+		closeHandler = handler;
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse endHandler(Handler<Void> handler) {
+		endHandler = handler;
+		return this;
+	}
+
+	@Override
+	public Future<Void> writeHead() {
+		return writeBody(0, false);
+	}
+
+	@Override
+	public Future<Void> write(String chunk, String enc) {
+		return writeBody(chunk.length(), false);
+	}
+
+	@Override
+	public Future<Void> write(String chunk) {
+		return writeBody(chunk.length(), false);
+	}
+
+	@Override
+	public Future<Void> writeContinue() {
+		return Future.succeededFuture();
+	}
+
+	@Override
+	public Future<Void> writeEarlyHints(MultiMap headers) {
+		return Future.succeededFuture();
+	}
+
+	@Override
+	public Future<Void> end(String chunk) {
+		return writeBody(chunk.length(), true);
+	}
+
+	@Override
+	public Future<Void> end(String chunk, String enc) {
+		return writeBody(chunk.length(), true);
+	}
+
+	@Override
+	public Future<Void> end(Buffer chunk) {
+		return writeBody(chunk.length(), true);
+	}
+
+	@Override
+	public Future<Void> end() {
+		return writeBody(0, true);
+	}
+
+	@Override
+	public Future<Void> sendFile(String filename, long offset, long length) {
+		return writeBody((int) length, true);
+	}
+
+	@Override
+	public Future<Void> sendFile(FileChannel channel, long offset, long length) {
+		return writeBody((int) length, true);
+	}
+
+	@Override
+	public Future<Void> sendFile(RandomAccessFile file, long offset, long length) {
+		return writeBody((int) length, true);
+	}
+
+	@Override
+	public boolean ended() {
+		return ended;
+	}
+
+	@Override
+	public boolean closed() {
+		return false;
+	}
+
+	@Override
+	public boolean headWritten() {
+		return headWritten;
+	}
+
+	@Override
+	public HttpServerResponse headersEndHandler(Handler<Void> handler) {
+		headersEndHandler = handler;
+		return this;
+	}
+
+	@Override
+	public HttpServerResponse bodyEndHandler(Handler<Void> handler) {
+		bodyEndHandler = handler;
+		return this;
+	}
+
+	@Override
+	public long bytesWritten() {
+		return bytesWritten;
+	}
+
+	@Override
+	public long streamId() {
+		return -1;
+	}
+
+	@Override
+	public Future<HttpServerResponse> push(HttpMethod method, HostAndPort authority, String path, MultiMap headers) {
+		return Future.failedFuture(new UnsupportedOperationException());
+	}
+
+	@Override
+	public Future<Void> reset(long code) {
+		return Future.succeededFuture();
+	}
+
+	@Override
+	public Future<Boolean> cancel() {
+		return Future.succeededFuture(false);
+	}
+
+	@Override
+	public Future<Void> writeCustomFrame(int type, int flags, Buffer payload) {
+		return Future.succeededFuture();
+	}
+
+	@Override
+	public HttpServerResponse addCookie(Cookie cookie) {
+		return this;
+	}
+
+	@Override
+	public Cookie removeCookie(String name, boolean invalidate) {
+		return null;
+	}
+
+	@Override
+	public Set<Cookie> removeCookies(String name, boolean invalidate) {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public Cookie removeCookie(String name, String domain, String path, boolean invalidate) {
+		return null;
+	}
+
+	@Override
+	public Future<Void> writeAltSvc(String altSvc) {
+		return Future.succeededFuture();
+	}
+
+}
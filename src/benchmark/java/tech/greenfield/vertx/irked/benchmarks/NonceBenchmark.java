@@ -0,0 +1,54 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import tech.greenfield.vertx.irked.helpers.DigestAuthenticate;
+import tech.greenfield.vertx.irked.helpers.DigestNonces;
+
+/**
+ * Measures the throughput of Digest nonce generation, which happens for every challenged request, to show that it
+ * scales with the number of threads that generate nonces concurrently - as event loops do.
+ *
+ * Run with {@code -t 1} and with {@code -t} set to the number of processors, and compare the total throughput:
+ * <ul>
+ * <li>{@code nonces} - {@link DigestNonces#generate()}, which signs the nonce</li>
+ * <li>{@code challenge} - {@link DigestAuthenticate#generateNonce(String, long)}</li>
+ * <li>{@code nativePrng} - the random part of a nonce from a per thread {@code new SecureRandom()}, as a baseline:
+ * on Linux that is {@code NativePRNG}, whose instances share a global lock, so it does not scale</li>
+ * </ul>
+ *
+ * @author odeda
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NonceBenchmark {
+
+	private static final ThreadLocal<SecureRandom> nativeRandom = ThreadLocal.withInitial(SecureRandom::new);
+
+	private final DigestNonces digestNonces = new DigestNonces(300);
+
+	@Benchmark
+	public String nonces() {
+		return digestNonces.generate();
+	}
+
+	@Benchmark
+	public String challenge() {
+		return DigestAuthenticate.generateNonce("", 300);
+	}
+
+	@Benchmark
+	public byte[] nativePrng() {
+		byte[] random = new byte[8];
+		nativeRandom.get().nextBytes(random);
+		return random;
+	}
+
+}
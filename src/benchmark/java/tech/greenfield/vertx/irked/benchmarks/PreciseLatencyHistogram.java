@@ -0,0 +1,107 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A thread-safe log-linear histogram of latencies, in nanoseconds, with a relative error of less than 1.6%.
+ *
+ * This is a finer version of {@link tech.greenfield.vertx.irked.metrics.LatencyHistogram}, which trades precision for a
+ * small fixed size that suits per-route metrics: its buckets are up to 12.5% wide and it resolves microseconds, which is
+ * too coarse to compare the latency percentiles of APIs or versions that differ by a few percent, or to measure the
+ * sub-microsecond latencies of local round trips. Here each power of two range is split into 64 linear buckets, so
+ * recording is still allocation free and percentiles can be computed without keeping the samples.
+ *
+ * @author odeda
+ */
+public class PreciseLatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1));
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Record a latency measurement
+	 * @param nanos latency in nanoseconds
+	 */
+	public void recordNanos(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Retrieve the number of recorded measurements
+	 * @return number of measurements
+	 */
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++)
+			total += counts.get(i);
+		return total;
+	}
+
+	/**
+	 * Retrieve the highest recorded latency
+	 * @return maximal latency in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Compute a latency percentile
+	 * @param percentile percentile to compute, between 0 and 100
+	 * @return the latency, in nanoseconds, that the specified percentage of the measurements did not exceed, or 0 if
+	 *   nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = getCount();
+		if (total == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= target)
+				return Math.min(value(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Render the common latency percentiles, in milliseconds
+	 * @return JSON object with the median, 99th, 99.9th percentiles and the maximal latency
+	 */
+	public JsonObject toJson() {
+		return new JsonObject()
+				.put("p50", millis(getValueAtPercentile(50)))
+				.put("p99", millis(getValueAtPercentile(99)))
+				.put("p99.9", millis(getValueAtPercentile(99.9)))
+				.put("max", millis(getMax()));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	private static long value(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long base = (long) ((bucket - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return base + ((1L << shift) >> 1); // middle of the bucket
+	}
+
+}
@@ -0,0 +1,310 @@
+package tech.greenfield.vertx.irked.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.VerticleBase;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.http.WebSocketClient;
+import io.vertx.core.http.WebSocketClientOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Irked;
+
+/**
+ * End-to-end WebSocket harness that measures the message throughput, the message latency and the heap retained by
+ * idle connections, for an Irked {@code @WebSocket} echo handler and for an equivalent vertx-web handler.
+ *
+ * For each API, the harness starts an in-process HTTP server, opens {@code connections} WebSocket connections to it
+ * over localhost, and runs a closed loop on each connection - sending a message and waiting for its echo before
+ * sending the next one - for text and binary messages of each of the requested sizes. It then opens {@code idle}
+ * additional connections, exchanges a single message on each so that any state created by the first message is
+ * included, and reports the heap retained per connection. Because the client runs in the same process, the retained
+ * heap includes the client side of the connections - the difference between the APIs is the cost of the server side
+ * Irked objects: the {@code WebSocketConnection}, the upgraded {@code Request} and the handler closures.
+ *
+ * The results are written as a JSON document. Options are given as {@code --name=value} arguments:
+ * <ul>
+ * <li>{@code apis} - comma separated list of APIs to test: {@code irked}, {@code vertx-web} (default: both)</li>
+ * <li>{@code types} - comma separated list of message types: {@code text}, {@code binary} (default: both)</li>
+ * <li>{@code sizes} - comma separated list of message sizes in bytes (default: 16,1024,65536)</li>
+ * <li>{@code duration} - number of seconds to measure each message type and size (default: 10)</li>
+ * <li>{@code warmup} - number of seconds to load each message type and size before measuring (default: 5)</li>
+ * <li>{@code connections} - number of connections that send messages concurrently (default: 1000)</li>
+ * <li>{@code idle} - number of idle connections to open for measuring the retained heap, 0 to skip (default: 5000)</li>
+ * <li>{@code server-threads} - number of server event loops (default: half the available processors)</li>
+ * <li>{@code client-threads} - number of client event loops (default: half the available processors)</li>
+ * <li>{@code output} - file to write the results to (default: standard output)</li>
+ * </ul>
+ *
+ * Each connection uses two file descriptors in the harness process, so the process file descriptor limit should be
+ * more than twice the sum of {@code connections} and {@code idle}.
+ *
+ * @author odeda
+ */
+public class WebSocketHarness {
+
+	private static final String PATH = "/echo";
+	private static final int CONNECT_BATCH = 100;
+	private static final long TIMEOUT_SECONDS = 30;
+
+	static class IrkedApi extends Controller {
+		@tech.greenfield.vertx.irked.annotations.WebSocket(PATH)
+		MessageHandler echo = m -> {
+			if (m.isBinary())
+				m.reply(m.slice());
+			else
+				m.reply(m.toString());
+		};
+	}
+
+	static io.vertx.ext.web.Router vertxWebApi(Vertx vertx) {
+		io.vertx.ext.web.Router router = io.vertx.ext.web.Router.router(vertx);
+		router.route(PATH).handler(ctx -> ctx.request().toWebSocket().onSuccess(socket -> {
+			socket.binaryMessageHandler(socket::writeBinaryMessage);
+			socket.textMessageHandler(socket::writeTextMessage);
+		}));
+		return router;
+	}
+
+	private static final Map<String, Function<Vertx, Handler<HttpServerRequest>>> APIS = Map.of(
+			"irked", vertx -> {
+				try {
+					return Irked.router(vertx).configure(new IrkedApi());
+				} catch (Exception e) {
+					throw new IllegalStateException("Failed to configure the Irked API", e);
+				}
+			},
+			"vertx-web", WebSocketHarness::vertxWebApi);
+
+	private final Map<String, String> options;
+	private final long durationNanos;
+	private final long warmupNanos;
+	private final int connections;
+	private final int idle;
+	private final int maxMessageSize;
+	private final int serverThreads;
+	private final int clientThreads;
+
+	WebSocketHarness(Map<String, String> options) {
+		this.options = options;
+		int halfCores = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "10")));
+		warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "5")));
+		connections = Integer.parseInt(options.getOrDefault("connections", "1000"));
+		idle = Integer.parseInt(options.getOrDefault("idle", "5000"));
+		maxMessageSize = Math.max(HttpServerOptions.DEFAULT_MAX_WEBSOCKET_MESSAGE_SIZE,
+				sizes().stream().mapToInt(Integer::intValue).max().orElse(0));
+		serverThreads = Integer.parseInt(options.getOrDefault("server-threads", String.valueOf(halfCores)));
+		clientThreads = Integer.parseInt(options.getOrDefault("client-threads", String.valueOf(halfCores)));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = LoadHarness.parseOptions(args);
+		LoadHarness.writeReport(options, new WebSocketHarness(options).run());
+		System.exit(0);
+	}
+
+	JsonObject run() throws Exception {
+		JsonArray results = new JsonArray();
+		for (String api : list("apis", "irked,vertx-web"))
+			results.add(runApi(api));
+		return new JsonObject()
+				.put("irked", String.valueOf(Irked.class.getPackage().getImplementationVersion()))
+				.put("java", System.getProperty("java.version"))
+				.put("processors", Runtime.getRuntime().availableProcessors())
+				.put("options", new JsonObject()
+						.put("duration", TimeUnit.NANOSECONDS.toSeconds(durationNanos))
+						.put("warmup", TimeUnit.NANOSECONDS.toSeconds(warmupNanos))
+						.put("connections", connections)
+						.put("idle", idle)
+						.put("serverThreads", serverThreads)
+						.put("clientThreads", clientThreads))
+				.put("results", results);
+	}
+
+	private JsonObject runApi(String api) throws Exception {
+		if (!APIS.containsKey(api))
+			throw new IllegalArgumentException("Unknown API " + api + ", expected one of " + APIS.keySet());
+		Vertx server = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(serverThreads));
+		Vertx client = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(clientThreads));
+		try {
+			int port = LoadHarness.freePort();
+			Set<Long> serverThreadIds = ConcurrentHashMap.newKeySet();
+			Handler<HttpServerRequest> handler = APIS.get(api).apply(server);
+			HttpServerOptions serverOptions = new HttpServerOptions()
+					.setMaxWebSocketFrameSize(maxMessageSize).setMaxWebSocketMessageSize(maxMessageSize);
+			server.deployVerticle(() -> new VerticleBase() {
+				@Override
+				public Future<?> start() {
+					serverThreadIds.add(Thread.currentThread().getId());
+					return vertx.createHttpServer(serverOptions).requestHandler(handler).listen(port);
+				}
+			}, new DeploymentOptions().setInstances(serverThreads)).await();
+			long[] threadIds = serverThreadIds.stream().mapToLong(Long::longValue).toArray();
+			WebSocketClient webSocketClient = client.createWebSocketClient(new WebSocketClientOptions()
+					.setMaxConnections(connections + idle)
+					.setMaxFrameSize(maxMessageSize).setMaxMessageSize(maxMessageSize));
+			List<WebSocket> sockets = connect(webSocketClient, port, connections);
+			JsonArray throughput = new JsonArray();
+			for (String type : list("types", "text,binary"))
+				for (int size : sizes())
+					throughput.add(runMessages(sockets, type, size, threadIds));
+			JsonObject result = new JsonObject().put("api", api).put("messages", throughput);
+			if (idle > 0)
+				result.put("idle", measureIdle(webSocketClient, port));
+			close(sockets);
+			webSocketClient.close().await();
+			return result;
+		} finally {
+			client.close().await();
+			server.close().await();
+		}
+	}
+
+	private JsonObject runMessages(List<WebSocket> sockets, String type, int size, long[] serverThreads) throws Exception {
+		Echo warmup = new Echo(sockets, type, size, warmupNanos);
+		warmup.await();
+		long allocatedBefore = LoadHarness.allocatedBytes(serverThreads);
+		Echo echo = new Echo(sockets, type, size, durationNanos);
+		echo.await();
+		long allocated = LoadHarness.allocatedBytes(serverThreads) - allocatedBefore;
+		long messages = echo.latency.getCount();
+		double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		return new JsonObject()
+				.put("type", type)
+				.put("size", size)
+				.put("messages", messages)
+				.put("errors", echo.errors.sum())
+				.put("throughput", messages / seconds)
+				.put("latency", echo.latency.toJson())
+				.put("allocation", new JsonObject()
+						.put("bytesPerSecond", allocated / seconds)
+						.put("bytesPerMessage", messages > 0 ? allocated / (double) messages : 0));
+	}
+
+	private JsonObject measureIdle(WebSocketClient client, int port) throws Exception {
+		long heapBefore = usedHeap();
+		List<WebSocket> sockets = connect(client, port, idle);
+		new Echo(sockets, "text", 16, 0).await();
+		for (WebSocket socket : sockets)
+			socket.textMessageHandler(null).binaryMessageHandler(null);
+		long retained = usedHeap() - heapBefore;
+		close(sockets);
+		return new JsonObject()
+				.put("connections", sockets.size())
+				.put("retainedBytes", retained)
+				.put("bytesPerConnection", retained / (double) sockets.size());
+	}
+
+	/**
+	 * A closed loop of echo messages on a set of connections: each connection sends a message as soon as the echo of
+	 * its previous message arrives, until the duration is over, and at least one message
+	 */
+	private static class Echo {
+		private final PreciseLatencyHistogram latency = new PreciseLatencyHistogram();
+		private final LongAdder errors = new LongAdder();
+		private final AtomicInteger active;
+		private final Promise<Void> done = Promise.promise();
+
+		Echo(List<WebSocket> sockets, String type, int size, long durationNanos) {
+			boolean binary = parseBinary(type);
+			Buffer payload = payload(size);
+			String text = payload.toString();
+			long end = System.nanoTime() + durationNanos;
+			active = new AtomicInteger(sockets.size());
+			for (WebSocket socket : sockets) {
+				long[] sentAt = new long[1];
+				Handler<Void> send = v -> {
+					sentAt[0] = System.nanoTime();
+					(binary ? socket.writeBinaryMessage(payload) : socket.writeTextMessage(text))
+					.onFailure(t -> errors.increment());
+				};
+				Handler<Object> received = message -> {
+					long now = System.nanoTime();
+					latency.recordNanos(now - sentAt[0]);
+					if (now < end)
+						send.handle(null);
+					else if (active.decrementAndGet() == 0)
+						done.tryComplete();
+				};
+				socket.binaryMessageHandler(received::handle).textMessageHandler(received::handle);
+				send.handle(null);
+			}
+		}
+
+		void await() throws Exception {
+			done.future().await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+
+	private static boolean parseBinary(String type) {
+		switch (type) {
+		case "text": return false;
+		case "binary": return true;
+		default: throw new IllegalArgumentException("Unknown message type " + type + ", expected text or binary");
+		}
+	}
+
+	/**
+	 * Create a payload of printable ASCII characters, so that it can be sent as both text and binary
+	 */
+	private static Buffer payload(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++)
+			bytes[i] = (byte) ('a' + i % 26);
+		return Buffer.buffer(bytes);
+	}
+
+	private static List<WebSocket> connect(WebSocketClient client, int port, int count) throws Exception {
+		List<WebSocket> sockets = Collections.synchronizedList(new ArrayList<>(count));
+		for (int opened = 0; opened < count; opened += CONNECT_BATCH) {
+			List<Future<WebSocket>> batch = new ArrayList<>();
+			for (int i = opened; i < Math.min(count, opened + CONNECT_BATCH); i++)
+				batch.add(client.connect(port, "localhost", PATH).onSuccess(sockets::add));
+			Future.all(batch).await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		return sockets;
+	}
+
+	private static void close(List<WebSocket> sockets) throws Exception {
+		Future.join(sockets.stream().map(WebSocket::close).collect(Collectors.toList()))
+		.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	private List<Integer> sizes() {
+		return list("sizes", "16,1024,65536").stream().map(Integer::valueOf).collect(Collectors.toList());
+	}
+
+	private List<String> list(String option, String defaultValue) {
+		return Arrays.asList(options.getOrDefault(option, defaultValue).split(","));
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+}
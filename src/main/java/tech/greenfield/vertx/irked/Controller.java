@@ -34,12 +34,23 @@ abstract public class Controller {
 		return request;
 	}
 	
+	/**
+	 * Controller implementations may override this to get access to the router that they are
+	 * being configured on, before their routes are discovered.
+	 * 
+	 * The default implementation does nothing
+	 * @param router The Irked router that is configuring this controller
+	 */
+	protected void onConfigure(Router router) {
+	}
+	
 	/**
 	 * Helper method for {@link Router} to discover routing endpoints
 	 * @return list of fields that are routing endpoints
 	 * @throws InvalidRouteConfiguration If one of the declared and annotated routes is invalid
 	 */
 	List<RouteConfiguration> getRoutes(Router router) throws InvalidRouteConfiguration {
+		onConfigure(router);
 		ArrayList<RouteConfiguration> out = new ArrayList<>();
 		for (Class<?> ctrClass = getClass(); !ctrClass.equals(Controller.class); ctrClass = ctrClass.getSuperclass()) {
 			for (Field f : ctrClass.getDeclaredFields())
@@ -11,6 +11,7 @@ import io.vertx.ext.web.handler.LoggerFormat;
 import io.vertx.ext.web.handler.LoggerHandler;
 import io.vertx.ext.web.handler.impl.LoggerHandlerImpl;
 import tech.greenfield.vertx.irked.exceptions.InvalidRouteConfiguration;
+import tech.greenfield.vertx.irked.logging.AccessLogger;
 
 /**
  * Helper for creating Irked routers
@@ -137,4 +138,39 @@ public class Irked {
 			}
 		};
 	}
+	
+	/**
+	 * Create an {@link AccessLogger} instance to log HTTP access under the SLF4J logger name "{@code access}", using
+	 * the default log format. Unlike {@link #logger()}, the access log lines are formatted and written by a
+	 * background thread instead of on the event loop.
+	 * 
+	 * To use - define a field in your main (root) controller like so:
+	 * 
+	 * <pre><code>
+	 * &#x0040;Endpoint private LoggerHandler accessLog = Irked.accessLogger();
+	 * </code></pre>
+	 * 
+	 * @return an instance of a {@code LoggerHandler} that will log HTTP requests asynchronously
+	 */
+	public static AccessLogger accessLogger() {
+		return accessLogger("access", AccessLogger.Format.DEFAULT);
+	}
+	
+	/**
+	 * Create an {@link AccessLogger} instance to log HTTP access under a simple SLF4J logger name. The access log
+	 * lines are formatted and written by a background thread instead of on the event loop.
+	 * 
+	 * To use - define a field in your main (root) controller like so:
+	 * 
+	 * <pre><code>
+	 * &#x0040;Endpoint private LoggerHandler accessLog = Irked.accessLogger("access_log", AccessLogger.Format.JSON);
+	 * </code></pre>
+	 * 
+	 * @param loggerName text to use for the logger name
+	 * @param format format of the access log lines
+	 * @return an instance of a {@code LoggerHandler} that will log HTTP requests asynchronously
+	 */
+	public static AccessLogger accessLogger(String loggerName, AccessLogger.Format format) {
+		return new AccessLogger(loggerName, format);
+	}
 }
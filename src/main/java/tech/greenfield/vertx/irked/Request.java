@@ -2,12 +2,18 @@ package tech.greenfield.vertx.irked;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClosedException;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
@@ -18,8 +24,11 @@ import io.vertx.ext.web.impl.RoutingContextDecorator;
 import io.vertx.ext.web.impl.RoutingContextInternal;
 import tech.greenfield.vertx.irked.Controller.WebHandler;
 import tech.greenfield.vertx.irked.auth.AuthorizationToken;
+import tech.greenfield.vertx.irked.deadline.Deadline;
+import tech.greenfield.vertx.irked.diagnostics.ServerTiming;
 import tech.greenfield.vertx.irked.exceptions.MissingBodyException;
 import tech.greenfield.vertx.irked.helpers.JsonDecodingExceptionFormatter;
+import tech.greenfield.vertx.irked.metrics.RouteMetrics;
 import tech.greenfield.vertx.irked.status.BadRequest;
 import tech.greenfield.vertx.irked.status.HttpStatuses;
 
@@ -53,8 +62,12 @@ public class Request extends RoutingContextDecorator {
 	
 	public static final String USE_JSON_PRETTY_ENCODER = "irked.json-pretty-encoder";
 	
+	private static final Logger log = LoggerFactory.getLogger(Request.class);
+	
 	private RoutingContext outerContext;
 	private boolean usePrettyEncoder = false;
+	private ServerTiming serverTiming;
+	private RouteMetrics routeMetrics;
 
 	/**
 	 * Create a new request wrapper as a {@link RoutingContextDecorator} around the specified parent routing context
@@ -67,6 +80,10 @@ public class Request extends RoutingContextDecorator {
 		super(outerContext.currentRoute(), downCastOrFailWithExplanation(outerContext));
 		this.outerContext = outerContext;
 		usePrettyEncoder = Objects.requireNonNullElse(this.outerContext.get(USE_JSON_PRETTY_ENCODER), usePrettyEncoder);
+		if (outerContext instanceof Request) {
+			serverTiming = ((Request) outerContext).serverTiming;
+			routeMetrics = ((Request) outerContext).routeMetrics;
+		}
 	}
 	
 	/**
@@ -85,6 +102,7 @@ public class Request extends RoutingContextDecorator {
 	
 	@Override
 	public void next() {
+		enterStage(ServerTiming.MATCH);
 		this.outerContext.next();
 	}
 
@@ -105,6 +123,7 @@ public class Request extends RoutingContextDecorator {
 	 * @param value result provided by handler caller, that will be ignored
 	 */
 	public <T> void next(T value) {
+		enterStage(ServerTiming.MATCH);
 		this.outerContext.next();
 	}
 
@@ -254,7 +273,12 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendJSON(JsonObject json) {
-		return sendJSON(json, statusFromResponseCode());
+		int execution = startSerialization();
+		try {
+			return sendBody(Buffer.buffer(Json.CODEC.toString(json, usePrettyEncoder)), "application/json");
+		} finally {
+			endSerialization(execution);
+		}
 	}
 	
 	/**
@@ -264,10 +288,13 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendObject(Object data) {
+		int execution = startSerialization();
 		try {
 			return sendJSON(JsonObject.mapFrom(data));
 		} catch (Throwable t) { // JsonObject.mapFrom run user's code that may throw by mistake
 			return Future.failedFuture(t);
+		} finally {
+			endSerialization(execution);
 		}
 	}
 	
@@ -278,7 +305,12 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendJSON(JsonArray json) {
-		return sendJSON(json, statusFromResponseCode());
+		int execution = startSerialization();
+		try {
+			return sendBody(Buffer.buffer(Json.CODEC.toString(json, usePrettyEncoder)), "application/json");
+		} finally {
+			endSerialization(execution);
+		}
 	}
 	
 	/**
@@ -289,7 +321,12 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendJSON(JsonObject json, HttpError status) {
-		return sendContent(Json.CODEC.toString(json, usePrettyEncoder), status, "application/json");
+		int execution = startSerialization();
+		try {
+			return sendContent(Json.CODEC.toString(json, usePrettyEncoder), status, "application/json");
+		} finally {
+			endSerialization(execution);
+		}
 	}
 	
 	/**
@@ -300,10 +337,13 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendObject(Object data, HttpError status) {
+		int execution = startSerialization();
 		try {
 			return sendJSON(JsonObject.mapFrom(data), status);
 		} catch (Throwable t) { // JsonObject.mapFrom run user's code that may throw by mistake
 			return Future.failedFuture(t);
+		} finally {
+			endSerialization(execution);
 		}
 	}
 	
@@ -315,7 +355,12 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendJSON(JsonArray json, HttpError status) {
-		return sendContent(Json.CODEC.toString(json, usePrettyEncoder), status, "application/json");
+		int execution = startSerialization();
+		try {
+			return sendContent(Json.CODEC.toString(json, usePrettyEncoder), status, "application/json");
+		} finally {
+			endSerialization(execution);
+		}
 	}
 	
 	/**
@@ -339,12 +384,69 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will resolve when the body was sent successfully
 	 */
 	public Future<Void> sendContent(Buffer content, HttpError status, String contentType) {
-		var res = response(status)
+		response(status);
+		return sendBody(content, contentType);
+	}
+	
+	/**
+	 * Write the specified content as the body of the response, using whatever status is currently set
+	 * @param content Binary content to send in the response
+	 * @param contentType The MIME Content-Type to be set for the response
+	 * @return a promise that will resolve when the body was sent successfully
+	 */
+	private Future<Void> sendBody(Buffer content, String contentType) {
+		response()
 				.putHeader("Content-Type", contentType)
 				.putHeader("Content-Length", String.valueOf(content.length()));
-		if (isHead())
-			return res.end();
-		return res.end(content);
+		return endResponse(content);
+	}
+
+	/**
+	 * End the response, with the specified body unless this is a HEAD request. All the send helpers end the response
+	 * here, so this is where requests whose client has already disconnected stop being processed.
+	 * @param content body to send, or {@code null} to send no body
+	 * @return a promise that will resolve when the response was sent successfully, or fail if the client has disconnected
+	 */
+	private Future<Void> endResponse(Buffer content) {
+		if (response().closed())
+			return responseClosed();
+		enterStage(ServerTiming.WRITE);
+		if (isHead() || Objects.isNull(content))
+			return response().end();
+		return response().end(content);
+	}
+	
+	/**
+	 * Attach the server timing tracker of the request, so that the processing stages handled by this request context
+	 * are recorded without looking up the tracker each time
+	 * @param timing the request's server timing tracker
+	 */
+	void setServerTiming(ServerTiming timing) {
+		serverTiming = timing;
+	}
+	
+	private void enterStage(String stage) {
+		if (serverTiming != null)
+			serverTiming.enter(stage, null);
+	}
+	
+	/**
+	 * Attach the metrics of the route whose handler received this request context, so that response serialization
+	 * that happens outside of the handler's execution - such as from an asynchronous callback - is attributed to it
+	 * @param metrics metrics of the route handling the request
+	 */
+	void setRouteMetrics(RouteMetrics metrics) {
+		routeMetrics = metrics;
+	}
+	
+	private int startSerialization() {
+		enterStage(ServerTiming.SERIALIZE);
+		return routeMetrics != null && routeMetrics.isEnabled() ? routeMetrics.completionStarted() : -1;
+	}
+	
+	private void endSerialization(int execution) {
+		if (execution >= 0)
+			routeMetrics.handlerCompleted(execution);
 	}
 	
 	/**
@@ -355,7 +457,7 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendContent(String content, String contentType) {
-		return sendContent(content, statusFromResponseCode(), contentType);
+		return sendBody(Buffer.buffer(content), contentType);
 	}
 	
 	/**
@@ -376,7 +478,7 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> sendContent(String content) {
-		return sendContent(content, statusFromResponseCode(), "text/plain");
+		return sendContent(content, "text/plain");
 	}
 	
 	/**
@@ -424,7 +526,7 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public Future<Void> send(Buffer buffer) {
-		return sendContent(buffer, statusFromResponseCode(), "application/octet-stream");
+		return sendBody(buffer, "application/octet-stream");
 	}
 	
 	/**
@@ -436,6 +538,33 @@ public class Request extends RoutingContextDecorator {
 		return sendError(status);
 	}
 	
+	/**
+	 * Helper method to terminate request processing with the status, headers and body described by a {@link Response}.
+	 * A response that has no body is sent in the same format as {@link #sendError(HttpError)} if it has an error
+	 * status or a message, otherwise it is sent with an empty body. Text and binary bodies are sent with the
+	 * response's content type, if set, and all other bodies are sent using {@link #send(Object)}.
+	 * @param response description of the response to send
+	 * @return a promise that will complete when the body was sent successfully
+	 */
+	public Future<Void> send(Response response) {
+		HttpServerResponse res = response().setStatusCode(response.getStatusCode());
+		res.setStatusMessage(response.getStatusText());
+		if (response.getHeaders() != null)
+			res.headers().addAll(response.getHeaders());
+		Object body = response.getBody();
+		if (body == null) {
+			if (!response.isError() && response.getMessage() == null)
+				return endResponse(null);
+			return sendJSON(new JsonObject().put("status", response.getStatusCode() / 100 == 2)
+					.put("message", Objects.nonNull(response.getMessage()) ? response.getMessage() : response.getStatusText()));
+		}
+		if (body instanceof String)
+			return sendBody(Buffer.buffer((String)body), Objects.nonNull(response.getContentType()) ? response.getContentType() : "text/plain");
+		if (body instanceof Buffer)
+			return sendBody((Buffer)body, Objects.nonNull(response.getContentType()) ? response.getContentType() : "application/octet-stream");
+		return send(body);
+	}
+	
 	/**
 	 * Helper method to terminate request processing with an HTTP OK and an application/json
 	 * response containing a list of {@link io.vertx.core.json.Json}-encoded objects
@@ -457,10 +586,13 @@ public class Request extends RoutingContextDecorator {
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	public <G> Future<Void> sendStream(Stream<G> stream) {
+		int execution = startSerialization();
 		try {
 			return sendJSON(stream.map(this::encodeToJsonType).collect(JsonArray::new, JsonArray::add, JsonArray::addAll));
 		} catch (Throwable t) { // JsonObject.mapFrom run user's code that may throw by mistake
 			return Future.failedFuture(t);
+		} finally {
+			endSerialization(execution);
 		}
 	}
 	
@@ -468,13 +600,16 @@ public class Request extends RoutingContextDecorator {
 	 * Helper method to terminate request processing with an HTTP OK and a JSON response
 	 * @param object any object that make sense to convert to JSON for sending. Converts lists and streams to arrays
 	 * using {@linkplain #sendList(List)} and {@linkplain #sendStream(Stream)}; exceptions and {@link HttpError}s to
-	 * HTTP status descriptions using {@linkplain #sendError(HttpError)} and everything else maps to JSON using
+	 * HTTP status descriptions using {@linkplain #sendError(HttpError)}; {@link Response}s using {@linkplain #send(Response)}
+	 * and everything else maps to JSON using
 	 * {@linkplain #sendObject}.
 	 * @return a promise that will complete when the body was sent successfully
 	 */
 	@SuppressWarnings("unchecked")
 	public Future<Void> send(Object object) {
-		if (object instanceof Collection)
+		if (object instanceof Response)
+			return send((Response)object);
+		else if (object instanceof Collection)
 			return sendStream(((Collection<Object>)object).stream());
 		else if (object instanceof Stream)
 			return sendStream((Stream<Object>)object);
@@ -509,12 +644,18 @@ public class Request extends RoutingContextDecorator {
 	 * succeed if the {@linkplain #send(Object)} has succeeded. But you will probably not care about the difference if you
 	 * use this as a terminal operation.
 	 * </p>
+	 * <p>
+	 * If the client has already disconnected, neither the result nor the failure are processed, and the returned promise
+	 * will fail.
+	 * </p>
 	 * @param <T> Type of value in a successful result
 	 * @param result a possible success or failure result
 	 * @return a promise that will fail if the result has failed or if sending a successful result has failed, or will
 	 *   succeed if sending the successful result has succeeded.
 	 */
 	public <T> Future<Void> sendOrFail(AsyncResult<T> result) {
+		if (response().closed())
+			return result.failed() ? Future.failedFuture(result.cause()) : responseClosed();
 		if (result.failed()) {
 			handleFailure(result.cause());
 			return Future.failedFuture(result.cause());
@@ -523,6 +664,10 @@ public class Request extends RoutingContextDecorator {
 				.onFailure(this::handleFailure);
 	}
 
+	private Future<Void> responseClosed() {
+		return Future.failedFuture(new HttpClosedException("Response closed before it could be sent"));
+	}
+
 	/**
 	 * Helper method to generate response with the specified HTTP status
 	 * @param status HTTP status code and text to set on the response
@@ -555,12 +700,94 @@ public class Request extends RoutingContextDecorator {
 				(type == null || type.equalsIgnoreCase(req.getHeader("Upgrade")));
 	}
 	
+	private static final String AUTHORIZATION_FLD = String.format("%1$s.authorization", Request.class);
+
 	/**
-	 * Helper for authorization header parsing
+	 * Helper for authorization header parsing.
+	 * The header is parsed once per request, and the token is shared by all the handlers of the request.
 	 * @return A parsed {@link AuthorizationToken}
 	 */
 	public AuthorizationToken getAuthorization() {
-		return AuthorizationToken.parse(request().getHeader("Authorization"));
+		AuthorizationToken token = get(AUTHORIZATION_FLD);
+		if (Objects.isNull(token))
+			put(AUTHORIZATION_FLD, token = AuthorizationToken.parse(request().getHeader("Authorization")));
+		return token;
+	}
+
+	/**
+	 * Retrieve the deadline set for this request, for example using the {@link tech.greenfield.vertx.irked.annotations.Timeout}
+	 * annotation.
+	 * @return the request deadline, or {@code null} if no deadline was set
+	 */
+	public Deadline deadline() {
+		return Deadline.of(this);
+	}
+	
+	/**
+	 * Retrieve the amount of time left until the request deadline expires. This is useful for setting timeouts
+	 * on calls to downstream services.
+	 * @return number of milliseconds until the request deadline, {@code 0} if the deadline has expired, or {@code -1}
+	 *   if no deadline was set for this request
+	 */
+	public long remaining() {
+		Deadline deadline = deadline();
+		return Objects.isNull(deadline) ? -1 : deadline.remaining();
+	}
+	
+	/**
+	 * Register a handler to be called if the request deadline expires before a response was sent. This is useful
+	 * for cancelling downstream operations whose results will no longer be used.
+	 * If no deadline was set for this request, the handler will never be called.
+	 * @param handler handler to call when the deadline expires
+	 * @return itself for fluent calls
+	 */
+	public Request onExpire(Handler<Void> handler) {
+		Deadline deadline = deadline();
+		if (Objects.nonNull(deadline))
+			deadline.onExpire(handler);
+		return this;
+	}
+
+	private static final String CANCEL_HANDLERS_FLD = String.format("%1$s.cancel-handlers", Request.class);
+
+	/**
+	 * Register a handler to be called if the client disconnects - the connection is closed or the HTTP/2 stream
+	 * is reset - before the response was completely sent. This is useful for cancelling long running operations
+	 * whose results nobody will read.
+	 * If the client has already disconnected, the handler is called immediately.
+	 * @param handler handler to call when the request is cancelled by the client
+	 * @return itself for fluent calls
+	 */
+	public Request onCancel(Handler<Void> handler) {
+		if (isCancelled()) {
+			handler.handle(null);
+			return this;
+		}
+		List<Handler<Void>> handlers = get(CANCEL_HANDLERS_FLD);
+		if (Objects.isNull(handlers)) {
+			List<Handler<Void>> cancelHandlers = new CopyOnWriteArrayList<>();
+			put(CANCEL_HANDLERS_FLD, handlers = cancelHandlers);
+			addEndHandler(res -> {
+				if (res.succeeded())
+					return; // response was sent, nothing to cancel
+				for (var h : cancelHandlers)
+					try {
+						h.handle(null);
+					} catch (Throwable t) {
+						log.warn("Request cancel handler threw an exception", t);
+					}
+			});
+		}
+		handlers.add(handler);
+		return this;
+	}
+
+	/**
+	 * Check whether the client has disconnected before the response was completely sent
+	 * @return whether the request was cancelled by the client
+	 */
+	public boolean isCancelled() {
+		return response().closed() && !response().ended();
 	}
 
 	/**
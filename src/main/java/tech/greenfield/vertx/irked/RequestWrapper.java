@@ -6,6 +6,14 @@ import java.util.function.Function;
 import io.vertx.core.Handler;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.impl.OrderListener;
+import tech.greenfield.vertx.irked.deadline.Deadline;
+import tech.greenfield.vertx.irked.diagnostics.FlightRecorderSupport;
+import tech.greenfield.vertx.irked.diagnostics.HandlerInvocationEvent;
+import tech.greenfield.vertx.irked.diagnostics.RequestContextEvent;
+import tech.greenfield.vertx.irked.diagnostics.RequestTimeline;
+import tech.greenfield.vertx.irked.diagnostics.RouteDispatchEvent;
+import tech.greenfield.vertx.irked.diagnostics.ServerTiming;
+import tech.greenfield.vertx.irked.metrics.RouteMetrics;
 
 public class RequestWrapper implements Function<RoutingContext, Request>, Handler<RoutingContext>, OrderListener {
 	
@@ -15,6 +23,10 @@ public class RequestWrapper implements Function<RoutingContext, Request>, Handle
 	private Controller ctr;
 	protected Function<RoutingContext, Request> wrapper;
 	private Handler<? super Request> handler;
+	private Router router;
+	private String route;
+	private Class<?> controller;
+	private RouteMetrics metrics;
 	
 	public RequestWrapper(Controller ctr) {
 		this(ctr, Request::new);
@@ -44,12 +56,148 @@ public class RequestWrapper implements Function<RoutingContext, Request>, Handle
 
 	@Override
 	public Request apply(RoutingContext r) {
-		return ctr.getRequestContext(wrapper.apply(r));
+		Request request = wrapper.apply(r);
+		if (!FlightRecorderSupport.AVAILABLE || !RequestContextEvent.isTypeEnabled())
+			return ctr.getRequestContext(request);
+		RequestContextEvent event = new RequestContextEvent();
+		event.begin();
+		try {
+			return ctr.getRequestContext(request);
+		} finally {
+			event.end();
+			if (event.shouldCommit())
+				event.on(RouteConfiguration.routeName(r.currentRoute()), ctr.getClass()).commit();
+		}
 	}
 
 	@Override
 	public void handle(RoutingContext r) {
-		this.handler.handle(wrapper.apply(r));
+		if (!r.failed() && isPastDeadline(r))
+			return; // nobody is waiting for the result, so don't start working on it
+		if (metrics != null && metrics.isEnabled() && !r.failed()) // failure routes only measure their handlers
+			metrics.dispatched(r);
+		if (!FlightRecorderSupport.AVAILABLE || !RouteDispatchEvent.isTypeEnabled()) {
+			dispatch(r);
+			return;
+		}
+		RouteDispatchEvent event = new RouteDispatchEvent();
+		event.begin();
+		try {
+			dispatch(r);
+		} finally {
+			event.end();
+			if (event.shouldCommit())
+				event.on(route, controller).commit();
+		}
+	}
+
+	private void dispatch(RoutingContext r) {
+		RequestTimeline timeline = RequestTimeline.of(r);
+		if (timeline == null) {
+			invokeTimed(r);
+			return;
+		}
+		int segment = timeline.begin(route, this);
+		try {
+			invokeTimed(r);
+		} finally {
+			timeline.end(segment);
+		}
+	}
+
+	private void invokeTimed(RoutingContext r) {
+		ServerTiming timing = router != null && router.isServerTimingEnabled() ? ServerTiming.of(r) : null;
+		if (timing == null) {
+			invoke(track(wrapper.apply(r)));
+			return;
+		}
+		timing.enter(ServerTiming.CONTEXT, route);
+		Request request = track(wrapper.apply(r));
+		request.setServerTiming(timing);
+		timing.enter(ServerTiming.HANDLER, route);
+		invoke(request);
+		timing.enter(ServerTiming.WAIT, null);
+	}
+
+	private Request track(Request request) {
+		if (metrics != null)
+			request.setRouteMetrics(metrics);
+		return request;
+	}
+
+	private void invoke(Request request) {
+		if (metrics == null || !metrics.isEnabled()) {
+			invokeHandler(request);
+			return;
+		}
+		int execution = metrics.handlerStarted();
+		try {
+			invokeHandler(request);
+		} finally {
+			metrics.handlerCompleted(execution);
+		}
+	}
+
+	private void invokeHandler(Request request) {
+		if (!FlightRecorderSupport.AVAILABLE || !HandlerInvocationEvent.isTypeEnabled()) {
+			this.handler.handle(request);
+			return;
+		}
+		HandlerInvocationEvent event = new HandlerInvocationEvent();
+		event.begin();
+		try {
+			this.handler.handle(request);
+		} finally {
+			event.end();
+			if (event.shouldCommit())
+				event.on(route, controller).commit();
+		}
+	}
+
+	/**
+	 * Set the route that this wrapper handles, for diagnostics
+	 * @param router router on which the route is configured
+	 * @param route description of the route, such as "GET /items/:id"
+	 * @param controller class of the controller that implements the route
+	 * @param metrics per-route metrics to which requests handled by this wrapper will be attributed, or {@code null}
+	 * @return itself for fluent calls
+	 */
+	RequestWrapper forRoute(Router router, String route, Class<?> controller, RouteMetrics metrics) {
+		this.router = router;
+		this.route = route;
+		this.controller = controller;
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * Retrieve the route that this wrapper handles
+	 * @return description of the route, or {@code null} if this wrapper does not handle a specific route
+	 */
+	String getRoute() {
+		return route;
+	}
+
+	/**
+	 * Retrieve the controller that implements the route this wrapper handles
+	 * @return class of the controller, or {@code null} if this wrapper does not handle a specific route
+	 */
+	Class<?> getController() {
+		return controller;
+	}
+
+	/**
+	 * Check if the request has a deadline that has already passed, in which case process the expiry
+	 * immediately instead of waiting for the deadline timer to notice it.
+	 * @param r routing context to check
+	 * @return whether the request's deadline has passed before a response was sent
+	 */
+	private boolean isPastDeadline(RoutingContext r) {
+		Deadline deadline = Deadline.of(r);
+		if (deadline == null || !deadline.isExpired() || r.response().ended())
+			return false;
+		deadline.expire();
+		return true;
 	}
 
 	public String toString() {
@@ -0,0 +1,233 @@
+package tech.greenfield.vertx.irked;
+
+import java.util.Objects;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.MultiMap;
+
+/**
+ * A lightweight description of an HTTP response - status, headers and body - that handlers can return
+ * instead of throwing an {@link HttpError}.
+ *
+ * Throwing {@link HttpError}s is a convenient way to abort processing, but it costs an exception creation and
+ * stack unwinding for every response. For common outcomes such as "not found" or validation failures, routing
+ * methods and {@code WebResult} fields can return a {@code Response} instead, and Irked will write it directly
+ * using {@link Request#send(Response)}:
+ *
+ * <pre>{@code
+ * @Get("/:id")
+ * WebResult<Request> retrieve = r -> {
+ *     var item = store.get(r.pathParam("id"));
+ *     return item == null ? Response.notFound("No such item") : Response.ok(item);
+ * };
+ * }</pre>
+ *
+ * A response without a body that has an error status is sent in the same format as {@link Request#sendError(HttpError)},
+ * using the message (or the status text if no message was set). A response without a body that has a non-error status
+ * is sent with an empty body, unless a message was set.
+ *
+ * @author odeda
+ */
+public class Response {
+
+	private int statusCode;
+	private String statusText;
+	private String message;
+	private MultiMap headers;
+	private Object body;
+	private String contentType;
+
+	/**
+	 * Create a new response with the specified status code and its default status text
+	 * @param statusCode HTTP status code
+	 */
+	public Response(int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Create a new response with the specified status code
+	 * @param statusCode HTTP status code
+	 * @return a new response with no body
+	 */
+	public static Response status(int statusCode) {
+		return new Response(statusCode);
+	}
+
+	/**
+	 * Create a new "200 OK" response with the specified body
+	 * @param body content to send, encoded as described in {@link Request#send(Object)}
+	 * @return a new response
+	 */
+	public static Response ok(Object body) {
+		return new Response(200).body(body);
+	}
+
+	/**
+	 * Create a new "201 Created" response with the specified body
+	 * @param body content to send, encoded as described in {@link Request#send(Object)}
+	 * @return a new response
+	 */
+	public static Response created(Object body) {
+		return new Response(201).body(body);
+	}
+
+	/**
+	 * Create a new "204 No Content" response
+	 * @return a new response
+	 */
+	public static Response noContent() {
+		return new Response(204);
+	}
+
+	/**
+	 * Create a new "400 Bad Request" response with an error message
+	 * @param message error message to send
+	 * @return a new response
+	 */
+	public static Response badRequest(String message) {
+		return new Response(400).message(message);
+	}
+
+	/**
+	 * Create a new "404 Not Found" response
+	 * @return a new response
+	 */
+	public static Response notFound() {
+		return new Response(404);
+	}
+
+	/**
+	 * Create a new "404 Not Found" response with an error message
+	 * @param message error message to send
+	 * @return a new response
+	 */
+	public static Response notFound(String message) {
+		return new Response(404).message(message);
+	}
+
+	/**
+	 * Create a new error response with the specified status code and error message
+	 * @param statusCode HTTP status code
+	 * @param message error message to send
+	 * @return a new response
+	 */
+	public static Response error(int statusCode, String message) {
+		return new Response(statusCode).message(message);
+	}
+
+	/**
+	 * Set a non-default HTTP status text
+	 * @param statusText HTTP status message
+	 * @return itself for fluent calls
+	 */
+	public Response statusText(String statusText) {
+		this.statusText = statusText;
+		return this;
+	}
+
+	/**
+	 * Set the message to report in a response that has no body
+	 * @param message message text
+	 * @return itself for fluent calls
+	 */
+	public Response message(String message) {
+		this.message = message;
+		return this;
+	}
+
+	/**
+	 * Add a header to the response
+	 * @param header header name
+	 * @param value header value
+	 * @return itself for fluent calls
+	 */
+	public Response header(String header, String value) {
+		if (headers == null)
+			headers = MultiMap.caseInsensitiveMultiMap();
+		headers.add(header, value);
+		return this;
+	}
+
+	/**
+	 * Set the body of the response
+	 * @param body content to send, encoded as described in {@link Request#send(Object)}
+	 * @return itself for fluent calls
+	 */
+	public Response body(Object body) {
+		this.body = body;
+		return this;
+	}
+
+	/**
+	 * Set the content type of a text or binary body, instead of the default {@code text/plain} or
+	 * {@code application/octet-stream}. This has no effect on bodies that are encoded to JSON.
+	 * @param contentType MIME type of the body
+	 * @return itself for fluent calls
+	 */
+	public Response contentType(String contentType) {
+		this.contentType = contentType;
+		return this;
+	}
+
+	/**
+	 * Retrieve the HTTP status code of this response
+	 * @return HTTP status code
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Retrieve the HTTP status text of this response
+	 * @return the custom status text if one was set, otherwise the standard text for the status code
+	 */
+	public String getStatusText() {
+		return Objects.nonNull(statusText) ? statusText : HttpResponseStatus.valueOf(statusCode).reasonPhrase();
+	}
+
+	/**
+	 * Retrieve the message to report in a response that has no body
+	 * @return the message set, or {@code null} if no message was set
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Retrieve the additional headers set on this response
+	 * @return additional headers, or {@code null} if no headers were set
+	 */
+	public MultiMap getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Retrieve the body of this response
+	 * @return the response body, or {@code null} if no body was set
+	 */
+	public Object getBody() {
+		return body;
+	}
+
+	/**
+	 * Retrieve the content type set for a text or binary body
+	 * @return the content type, or {@code null} if the default should be used
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Check whether this response has a "error class" HTTP status
+	 * @return whether the HTTP status code is between 400-599 (inclusive)
+	 */
+	public boolean isError() {
+		return statusCode >= 400 && statusCode < 600;
+	}
+
+	@Override
+	public String toString() {
+		return "HTTP " + statusCode + " " + getStatusText();
+	}
+}
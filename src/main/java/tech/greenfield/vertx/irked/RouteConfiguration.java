@@ -8,6 +8,9 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -17,15 +20,22 @@ import org.slf4j.LoggerFactory;
 
 import java.util.stream.Collectors;
 
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.ext.web.Route;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.handler.TimeoutHandler;
 import io.vertx.ext.web.impl.BlockingHandlerDecorator;
 import tech.greenfield.vertx.irked.HttpError.UncheckedHttpError;
 import tech.greenfield.vertx.irked.Router.RoutingMethod;
 import tech.greenfield.vertx.irked.annotations.*;
+import tech.greenfield.vertx.irked.deadline.DeadlineHandler;
+import tech.greenfield.vertx.irked.diagnostics.AsyncCompletionEvent;
+import tech.greenfield.vertx.irked.diagnostics.FailureHandlingEvent;
+import tech.greenfield.vertx.irked.diagnostics.FlightRecorderSupport;
 import tech.greenfield.vertx.irked.exceptions.InvalidRouteConfiguration;
+import tech.greenfield.vertx.irked.metrics.RouteMetrics;
 import tech.greenfield.vertx.irked.status.BadRequest;
 import tech.greenfield.vertx.irked.status.InternalServerError;
 import tech.greenfield.vertx.irked.websocket.WebSocketMessage;
@@ -199,7 +209,7 @@ public abstract class RouteConfiguration {
 				.flatMap(s -> getRoutes(method, s))
 				.collect(Collectors.toList())) {
 			if (anot.equals(WebSocket.class))
-				r.handler(getWebSocketHandler(requestWrapper));
+				r.handler(getWebSocketHandler(requestWrapper, r));
 			else
 				configureRoute(requestWrapper, r);
 			routes.add(r);
@@ -212,9 +222,10 @@ public abstract class RouteConfiguration {
 			throws InvalidRouteConfiguration {
 		try {
 			if (isFailHandler())
-				r.failureHandler(wrapHandler(requestWrapper, getFailureHandler()));
+				r.failureHandler(wrapHandler(requestWrapper, getFailureHandler(), routeName(r),
+						router.metrics().route("@OnFail " + routeName(r))));
 			else
-				r.handler(wrapHandler(requestWrapper, getHandler()));
+				r.handler(wrapHandler(requestWrapper, getHandler(), routeName(r), router.metrics().route(routeName(r))));
 		} catch (IllegalAccessException e) {
 			throw new InvalidRouteConfiguration("Illegal access error while trying to configure " + this);
 		}
@@ -228,24 +239,40 @@ public abstract class RouteConfiguration {
 		if (withTimeout) {
 			Timeout t = trygetTimeout();
 			if (t != null)
-				return getRoutes(method, s, false).map(r -> r.handler(TimeoutHandler.create(t.value())));
+				return getRoutes(method, s, false).map(r -> r.handler(DeadlineHandler.create(t.value(), t.header())));
 		}
 		if (!hasConsumes())
 			return Stream.of(method.getRoute(s));
 		return consumes().map(c -> method.getRoute(s).consumes(c));
 	}
 	
-	private Handler<RoutingContext> wrapHandler(RequestWrapper parent, Handler<? super Request> userHandler)
-			throws IllegalArgumentException, InvalidRouteConfiguration {
-		Handler<RoutingContext> handler = new RequestWrapper(Objects.requireNonNull(userHandler), parent);
+	private Handler<RoutingContext> wrapHandler(RequestWrapper parent, Handler<? super Request> userHandler, String route,
+			RouteMetrics metrics) throws IllegalArgumentException, InvalidRouteConfiguration {
+		Handler<RoutingContext> handler = new RequestWrapper(Objects.requireNonNull(userHandler), parent)
+				.forRoute(router, route, impl.getClass(), metrics);
 		if (isBlocking())
 			handler = new BlockingHandlerDecorator(handler, true);
 		return handler;
 	}
 
-	private Handler<RoutingContext> getWebSocketHandler(RequestWrapper parent) throws IllegalArgumentException, InvalidRouteConfiguration {
+	/**
+	 * Generate the name under which metrics and diagnostics for a route are reported, from the route's methods
+	 * and path pattern
+	 * @param r route to describe
+	 * @return route name, such as "GET /items/:id", or {@code null} if no route is specified
+	 */
+	static String routeName(Route r) {
+		if (r == null)
+			return null;
+		String methods = r.methods() == null || r.methods().isEmpty() ? "*" :
+			r.methods().stream().map(Object::toString).sorted().collect(Collectors.joining(","));
+		return methods + " " + (r.getPath() != null ? r.getPath() : r.getName());
+	}
+
+	private Handler<RoutingContext> getWebSocketHandler(RequestWrapper parent, Route r) throws IllegalArgumentException, InvalidRouteConfiguration {
 		try {
-			return new WebSocketUpgradeRequestWrapper(Objects.requireNonNull(getMessageHandler()), parent);
+			return new WebSocketUpgradeRequestWrapper(Objects.requireNonNull(getMessageHandler()), parent)
+					.forRoute(router, routeName(r), impl.getClass(), null);
 		} catch (IllegalAccessException e) {
 			throw new InvalidRouteConfiguration("Illegal access error while trying to configure " + this);
 		}
@@ -255,6 +282,72 @@ public abstract class RouteConfiguration {
 		routes.forEach(Route::remove);
 	}
 
+	/**
+	 * Handling logic for values returned from a handler invocation.
+	 * Asynchronous results - Vert.x {@link Future}s and {@link CompletionStage}s - are waited on, and then the
+	 * result is sent using {@link Request#sendOrFail(io.vertx.core.AsyncResult)}, unless the handler has already
+	 * started sending a response or the client has disconnected.
+	 *
+	 * {@link CompletionStage}s are waited on directly: if they complete on the handler's context (for example, because
+	 * they were already completed when returned) the result is sent immediately, otherwise the completion is dispatched
+	 * back to the handler's context. {@link CompletableFuture}s are cancelled if the client disconnects before they complete.
+	 *
+	 * @param r routing context on which this handler was called
+	 * @param retValue value returned from the handler
+	 */
+	protected void handleResult(Request r, Object retValue) {
+		if (retValue instanceof Future) {
+			Handler<Boolean> completion = beginAsyncCompletion(r);
+			((Future<?>) retValue).onComplete(res -> sendResult(r, res.result(), res.cause(), completion));
+		} else if (retValue instanceof CompletionStage)
+			handleCompletionStage(r, (CompletionStage<?>) retValue, beginAsyncCompletion(r));
+		else
+			sendResult(r, retValue, null, null);
+	}
+
+	/**
+	 * Start recording the asynchronous completion of a handler's result, if JFR is recording it
+	 * @return a handler to call with whether the result succeeded when it completes, or {@code null} if not recording.
+	 *   The event is not captured directly by the completion callbacks, so they can be linked without JFR
+	 */
+	private Handler<Boolean> beginAsyncCompletion(Request r) {
+		if (!FlightRecorderSupport.AVAILABLE || !AsyncCompletionEvent.isTypeEnabled())
+			return null;
+		AsyncCompletionEvent event = new AsyncCompletionEvent();
+		event.on(routeName(r.currentRoute()), impl.getClass()); // the request may be on another route when it completes
+		event.begin();
+		return succeeded -> {
+			event.end();
+			if (event.shouldCommit()) {
+				event.succeeded = succeeded;
+				event.commit();
+			}
+		};
+	}
+
+	private void handleCompletionStage(Request r, CompletionStage<?> stage, Handler<Boolean> completion) {
+		if (stage instanceof CompletableFuture && !((CompletableFuture<?>) stage).isDone())
+			r.onCancel(v -> ((CompletableFuture<?>) stage).cancel(true));
+		Context context = Vertx.currentContext();
+		stage.whenComplete((value, error) -> {
+			if (context == null || Vertx.currentContext() == context)
+				sendResult(r, value, error, completion);
+			else
+				context.runOnContext(v -> sendResult(r, value, error, completion));
+		});
+	}
+
+	private void sendResult(Request r, Object value, Throwable error, Handler<Boolean> completion) {
+		if (completion != null)
+			completion.handle(error == null);
+		if (r.response().headWritten() || r.response().closed())
+			return;
+		if (error instanceof CompletionException && error.getCause() != null)
+			error = error.getCause();
+		// the send helpers attribute the serialization of the result to the route
+		r.sendOrFail(error != null ? Future.failedFuture(error) : Future.succeededFuture(value));
+	}
+
 	/**
 	 * Handling logic for user exceptions thrown from a handler invocation.
 	 * Handler developers can throw an Irked {@link HttpError} exception to propagate an HTTP response
@@ -268,27 +361,55 @@ public abstract class RouteConfiguration {
 	 * @param invocationDescription Description of the invocation endpoint for logging
 	 */
 	protected void handleUserException(Request r, Throwable cause, String invocationDescription) {
+		if (!FlightRecorderSupport.AVAILABLE || !FailureHandlingEvent.isTypeEnabled()) {
+			processUserException(r, cause, invocationDescription);
+			return;
+		}
+		FailureHandlingEvent event = new FailureHandlingEvent();
+		event.begin();
+		try {
+			processUserException(r, cause, invocationDescription);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.exception = cause.getClass();
+				event.message = cause.getMessage();
+				event.on(routeName(r.currentRoute()), impl.getClass()).commit();
+			}
+		}
+	}
+
+	private void processUserException(Request r, Throwable cause, String invocationDescription) {
 		if (r.failed()) {
 			if (r.response().headWritten()) {
-				log.error("Exception in user fail route '{}', after response started - ignoring", r.normalizedPath(), cause);
+				router.errorLog().error(log, invocationDescription, cause, "Exception in user fail route '{}', after response started - ignoring", r.normalizedPath());
 				if (!r.response().ended()) r.response().end(); // at least let the client have some closure
 				return;
 			}
-			log.warn("Exception in user fail route '{}', issuing ISE!", r.normalizedPath(), cause);
+			router.errorLog().warn(log, invocationDescription, cause, "Exception in user fail route '{}', issuing ISE!", r.normalizedPath());
 			r.send(new InternalServerError());
 		}
 		if (HttpError.unwrap(cause) instanceof HttpError)
 			r.fail(HttpError.toHttpError(cause));
 		else if (invocationDescription.contains("io.vertx.ext.web") && cause instanceof IllegalStateException) {
 			// a Vert.x handler detected an invalid request
-			log.warn("Handler {} encountered an illegal state: {}", invocationDescription, cause.getMessage(), cause);
-			r.fail(new BadRequest("Illegal state in request", cause));
+			router.errorLog().warn(log, invocationDescription, cause, "Handler {} encountered an illegal state: {}", invocationDescription, cause.getMessage());
+			failLogged(r, new BadRequest("Illegal state in request", cause));
 		} else {
-			log.error("Handler {} threw an unexpected exception", invocationDescription, cause);
-			r.fail(cause); // propagate exceptions thrown by the method to the Vert.x fail handler
+			router.errorLog().error(log, invocationDescription, cause, "Handler {} threw an unexpected exception", invocationDescription);
+			failLogged(r, cause); // propagate exceptions thrown by the method to the Vert.x fail handler
 		}
 	}
 
+	/**
+	 * Propagate a failure that was already logged, so that the router does not log it again if no failure handler
+	 * handles it
+	 */
+	private void failLogged(Request r, Throwable failure) {
+		r.put(Router.LOGGED_FAILURE_FIELD, failure);
+		r.fail(failure);
+	}
+
 	/**
 	 * Handling logic for user exceptions thrown from a message handler invocation.
 	 * Note that WebSocket does not provide robust error reporting mechanisms - unless the application handles
@@ -318,7 +439,7 @@ public abstract class RouteConfiguration {
 		if (err instanceof HttpError)
 			m.socket().close((short)1002, ((HttpError)err).getMessage());
 		else {
-			log.error("Handler " + invocationDescription + " threw an unexpected exception",cause);
+			router.errorLog().error(log, invocationDescription, cause, "Handler {} threw an unexpected exception", invocationDescription);
 			m.socket().close((short)1011, cause.getMessage());
 		}
 	}
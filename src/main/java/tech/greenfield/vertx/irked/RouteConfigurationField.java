@@ -5,7 +5,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.util.function.Function;
 
-import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.ext.web.impl.OrderListener;
 import tech.greenfield.vertx.irked.exceptions.InvalidRouteConfiguration;
@@ -125,12 +124,7 @@ public class RouteConfigurationField extends RouteConfiguration {
 		public FieldHandler(Function<Request, Object> handler) {
 			this.handler = r -> {
 				try {
-					Object retValue = handler.apply(r);
-					Future<?> resultHandler = retValue instanceof Future ? (Future<?>) retValue : Future.succeededFuture(retValue);
-					resultHandler.onComplete(val -> {
-						if (!r.response().headWritten())
-							r.sendOrFail(val);
-					});
+					handleResult(r, handler.apply(r));
 				} catch (Throwable cause) {
 					r.fail(cause);
 				}
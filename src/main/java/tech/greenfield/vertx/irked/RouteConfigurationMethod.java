@@ -19,7 +19,6 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.impl.RouteImplHelper;
@@ -182,11 +181,7 @@ public class RouteConfigurationMethod extends RouteConfiguration {
 					Object retValue = method.invoke(impl, createParamBlock(resolveRequestContext(r)));
 					if (method.getReturnType().equals(void.class)) // no return value expected
 						return;
-					Future<?> resultHandler = retValue instanceof Future ? (Future<?>) retValue : Future.succeededFuture(retValue);
-					resultHandler.onComplete(val -> {
-						if (!r.response().headWritten())
-							r.sendOrFail(val);
-					});
+					handleResult(r, retValue);
 				} catch (RoutingContextImplException e) {
 					r.fail(new InternalServerError(e.getMessage(), e));
 				} catch (InvocationTargetException e) { // user exception
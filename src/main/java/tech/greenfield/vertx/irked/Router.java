@@ -6,6 +6,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -20,19 +21,35 @@ import io.vertx.ext.web.Route;
 import io.vertx.ext.web.RoutingContext;
 import tech.greenfield.vertx.irked.annotations.*;
 import tech.greenfield.vertx.irked.exceptions.InvalidRouteConfiguration;
+import tech.greenfield.vertx.irked.diagnostics.ServerTiming;
+import tech.greenfield.vertx.irked.diagnostics.SlowRequestRecorder;
+import tech.greenfield.vertx.irked.logging.ErrorLogAggregator;
+import tech.greenfield.vertx.irked.metrics.MetricsRegistry;
 
 public class Router implements io.vertx.ext.web.Router {
 
 	static Logger log = LoggerFactory.getLogger(Router.class);
 
+	/**
+	 * Routing context field where Irked stores a failure that it has already logged, before propagating it
+	 */
+	static final String LOGGED_FAILURE_FIELD = "irked.logged-failure";
+
 	private Vertx vertx;
 	private io.vertx.ext.web.Router router;
 
 	private Set<Route> routePaths = new HashSet<>(); // used for debugging only
+	private ErrorLogAggregator errorLog;
+	private MetricsRegistry metrics = new MetricsRegistry();
+	private volatile double serverTimingRate;
+	private volatile SlowRequestRecorder slowRequests;
+	private Route diagnosticsRoute;
 
 	public Router(Vertx vertx) {
 		this.vertx = vertx;
 		this.router = io.vertx.ext.web.Router.router(this.vertx);
+		this.errorLog = new ErrorLogAggregator(vertx);
+		router.errorHandler(500, this::handleUncaughtFailure);
 	}
 
 	public Router with(Controller api) throws InvalidRouteConfiguration {
@@ -56,6 +73,147 @@ public class Router implements io.vertx.ext.web.Router {
 	public io.vertx.ext.web.Router vertxWebRouter() {
 		return router;
 	}
+	
+	/**
+	 * Retrieve the aggregator used to log unexpected exceptions thrown by the handlers of this router
+	 * @return the router's error log aggregator
+	 */
+	public ErrorLogAggregator errorLog() {
+		return errorLog;
+	}
+	
+	/**
+	 * Enable reporting of a per-stage latency breakdown to clients using the {@code Server-Timing} response header,
+	 * for all requests
+	 * @return itself for fluent calls
+	 * @see ServerTiming
+	 */
+	public Router enableServerTiming() {
+		return enableServerTiming(1);
+	}
+	
+	/**
+	 * Enable reporting of a per-stage latency breakdown to clients using the {@code Server-Timing} response header,
+	 * for a random sample of requests
+	 * @param sampleRate fraction of requests to report, between 0 (disabled) and 1 (all requests)
+	 * @return itself for fluent calls
+	 * @see ServerTiming
+	 */
+	public Router enableServerTiming(double sampleRate) {
+		serverTimingRate = sampleRate;
+		installDiagnostics();
+		return this;
+	}
+	
+	/**
+	 * Check whether server timing is reported for any of the requests handled by this router
+	 * @return whether server timing was enabled with a sample rate above 0
+	 */
+	public boolean isServerTimingEnabled() {
+		return serverTimingRate > 0;
+	}
+	
+	/**
+	 * Enable capturing the handler timeline of requests that take longer than the specified threshold
+	 * @param thresholdMillis number of milliseconds after which a request is considered slow
+	 * @return itself for fluent calls
+	 * @see SlowRequestRecorder
+	 */
+	public Router recordSlowRequests(long thresholdMillis) {
+		return recordSlowRequests(new SlowRequestRecorder(thresholdMillis));
+	}
+	
+	/**
+	 * Enable capturing the handler timeline of slow requests using the specified recorder
+	 * @param recorder slow request recorder to use, or {@code null} to disable slow request recording
+	 * @return itself for fluent calls
+	 */
+	public Router recordSlowRequests(SlowRequestRecorder recorder) {
+		slowRequests = recorder;
+		installDiagnostics();
+		return this;
+	}
+	
+	/**
+	 * Retrieve the slow request recorder of this router
+	 * @return the slow request recorder, or {@code null} if slow request recording is not enabled
+	 */
+	public SlowRequestRecorder slowRequests() {
+		return slowRequests;
+	}
+	
+	/**
+	 * Install a first route that starts tracking the request diagnostics that are enabled
+	 */
+	private synchronized void installDiagnostics() {
+		if (diagnosticsRoute == null)
+			diagnosticsRoute = router.route().order(Integer.MIN_VALUE).handler(this::startDiagnostics);
+	}
+	
+	/**
+	 * Replaces vert.x-web's handling of internal server errors that no failure route has handled, which logs the full
+	 * stack trace of every such failure: failures that Irked has already logged are not logged again, and other failures
+	 * are logged through the error log aggregator. The response is then ended with the failure status.
+	 */
+	private void handleUncaughtFailure(RoutingContext ctx) {
+		Throwable failure = ctx.failure();
+		if (failure != null && ctx.get(LOGGED_FAILURE_FIELD) != failure)
+			errorLog.error(log, Objects.toString(RouteConfiguration.routeName(ctx.currentRoute()), "*"), failure,
+					"Unhandled exception in router");
+		if (!ctx.response().ended() && !ctx.response().headWritten() && !ctx.response().closed())
+			ctx.response().setStatusCode(500).setStatusMessage("Internal Server Error").end();
+	}
+
+	private void startDiagnostics(RoutingContext ctx) {
+		double rate = serverTimingRate;
+		if (rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate))
+			ServerTiming.start(ctx);
+		SlowRequestRecorder recorder = slowRequests;
+		if (recorder != null)
+			recorder.start(ctx);
+		ctx.next();
+	}
+	
+	/**
+	 * Retrieve the registry of per-route metrics collected for the routes of this router
+	 * @return the router's metrics registry
+	 */
+	public MetricsRegistry metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Enable per-route metrics collection for this router. Metrics are not collected unless enabled, either using
+	 * this method, by configuring a {@link tech.greenfield.vertx.irked.metrics.MetricsController} on the router or
+	 * for all routers using the {@code irked.metrics.enable} system property
+	 * @return itself for fluent calls
+	 * @see MetricsRegistry
+	 */
+	public Router enableMetrics() {
+		metrics.setEnabled(true);
+		return this;
+	}
+
+	/**
+	 * Disable per-route metrics collection for this router, so requests are not tracked at all
+	 * @return itself for fluent calls
+	 * @see MetricsRegistry
+	 */
+	public Router disableMetrics() {
+		metrics.setEnabled(false);
+		return this;
+	}
+
+	/**
+	 * Sample the CPU time and memory allocations of a fraction of the handler executions of this router's routes
+	 * @param sampleRate fraction of handler executions to measure, between 0 (disabled) and 1 (all executions)
+	 * @return itself for fluent calls
+	 * @see tech.greenfield.vertx.irked.metrics.ResourceUsageSampler
+	 */
+	public Router sampleResourceUsage(double sampleRate) {
+		metrics.setResourceSampleRate(sampleRate);
+		return this;
+	}
 
 	public Router configReport() {
 		return configReport(System.err);
@@ -3,6 +3,8 @@ package tech.greenfield.vertx.irked;
 
 import io.vertx.core.Handler;
 import io.vertx.ext.web.RoutingContext;
+import tech.greenfield.vertx.irked.diagnostics.FlightRecorderSupport;
+import tech.greenfield.vertx.irked.diagnostics.WebSocketMessageEvent;
 import tech.greenfield.vertx.irked.websocket.WebSocketConnection;
 import tech.greenfield.vertx.irked.websocket.WebSocketMessage;
 
@@ -19,10 +21,26 @@ public class WebSocketUpgradeRequestWrapper extends RequestWrapper {
 	public void handle(RoutingContext r) {
 		Request req = wrapper.apply(r);
 		if (req.needUpgrade("websocket"))
-			new WebSocketConnection(req, msghandler);
+			new WebSocketConnection(req, this::dispatch);
 		else
 			req.next();
 	}
+
+	private void dispatch(WebSocketMessage message) {
+		if (!FlightRecorderSupport.AVAILABLE || !WebSocketMessageEvent.isTypeEnabled()) {
+			msghandler.handle(message);
+			return;
+		}
+		WebSocketMessageEvent event = new WebSocketMessageEvent();
+		event.begin();
+		try {
+			msghandler.handle(message);
+		} finally {
+			event.end();
+			if (event.shouldCommit())
+				event.on(getRoute(), getController()).commit();
+		}
+	}
 	
 	@Override
 	public String toString() {
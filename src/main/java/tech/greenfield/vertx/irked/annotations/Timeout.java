@@ -3,20 +3,29 @@ package tech.greenfield.vertx.irked.annotations;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
-import io.vertx.ext.web.handler.TimeoutHandler;
+import tech.greenfield.vertx.irked.deadline.DeadlineHandler;
 
 /**
- * Annotation that will add a {@link TimeoutHandler} to the configured route, causing that route
- * to fail with a 503 server error if no response was written after the specified timeout.
+ * Annotation that will add a {@link DeadlineHandler} to the configured route, setting a deadline for the request
+ * and causing that route to fail with a 503 server error if no response was written after the specified timeout.
+ * Handlers can access the deadline using {@link tech.greenfield.vertx.irked.Request#deadline()}.
  * @author odeda
  */
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Timeout {
 
 	/**
-	 * Timeout in milliseconds to configure for the {@link TimeoutHandler}
+	 * Timeout in milliseconds to configure for the {@link DeadlineHandler}
 	 * @return number of milliseconds to wait for a response before returning a 503 server error
 	 */
 	int value();
 	
+	/**
+	 * Optional name of a request header from which the deadline may be derived. If the request contains
+	 * this header with a valid number of milliseconds that is shorter than {@link #value()}, it will be used
+	 * as the timeout instead.
+	 * @return name of the request header that specifies the client's timeout
+	 */
+	String header() default "";
+	
 }
@@ -1,15 +1,32 @@
 package tech.greenfield.vertx.irked.auth;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Base class for RFC 7235 authentication/authorization tokens
+ * 
+ * Token implementations are selected by the authentication scheme name in the Authorization header, using a case
+ * insensitive lookup. In addition to the built-in {@link TokenTypes}, custom schemes can be supported by registering
+ * an implementation using {@link #register(String, Supplier)}, or by listing it in a
+ * {@code META-INF/services/tech.greenfield.vertx.irked.auth.AuthorizationToken} service loader configuration file.
  * @author odeda
  */
 public class AuthorizationToken {
 	
+	private static final Logger log = LoggerFactory.getLogger(AuthorizationToken.class);
+
 	private String token;
 	private String type;
 	
@@ -17,20 +34,22 @@ public class AuthorizationToken {
 		// not actually a type - just a base implementation:
 		// PARAMETER(ParameterEncodedAuthorizationToken.class)
 		
-		NULL(NullAuthorizationToken.class),
-		SIMPLE(SimpleAuthrizationToken.class),
-		BASIC(BasicAuthorizationToken.class),
-		BEARER(BearerAuthorizationToken.class),
-		DIGEST(DigestAuthorizationToken.class),
-		HOB(HOBAAuthorizationToken.class),
-		MUTUAL(MutualAuthorizationToken.class),
-		NEGOTIATE(NegotiateAuthorizationToken.class),
-		OAUTH(OAuthAuthorizationToken.class);
-
-		private Class<? extends AuthorizationToken> clz;
-
-		TokenTypes(Class<? extends AuthorizationToken> clz) {
-			this.clz = clz;
+		NULL(null, NullAuthorizationToken::new),
+		SIMPLE(null, SimpleAuthrizationToken::new),
+		BASIC("Basic", BasicAuthorizationToken::new),
+		BEARER("Bearer", BearerAuthorizationToken::new),
+		DIGEST("Digest", DigestAuthorizationToken::new),
+		HOB("HOBA", HOBAAuthorizationToken::new),
+		MUTUAL("Mutual", MutualAuthorizationToken::new),
+		NEGOTIATE("Negotiate", NegotiateAuthorizationToken::new),
+		OAUTH("OAuth", OAuthAuthorizationToken::new);
+
+		private String scheme;
+		private Supplier<? extends AuthorizationToken> factory;
+
+		TokenTypes(String scheme, Supplier<? extends AuthorizationToken> factory) {
+			this.scheme = scheme;
+			this.factory = factory;
 		}
 
 		public static Iterable<AuthorizationToken> instances() {
@@ -47,48 +66,105 @@ public class AuthorizationToken {
 						}
 						@Override
 						public AuthorizationToken next() {
-							try {
-								return types[index++].clz.getConstructor().newInstance();
-							} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-									| InvocationTargetException | NoSuchMethodException | SecurityException e) {
-								System.err.print("Unexpected exception instantiating a known authorization token type! this shouldn't happen");
-								throw new Error(e);
-							}
+							return types[index++].factory.get();
 						}
 					};
 				}};
 		}
 	}
 
+	/**
+	 * Registry of token implementations by authentication scheme name, initialized when the first token is parsed
+	 */
+	private static class Schemes {
+		private static final Map<String, Supplier<? extends AuthorizationToken>> factories = new ConcurrentHashMap<>();
+		private static final List<Supplier<? extends AuthorizationToken>> unnamed = new ArrayList<>();
+
+		static {
+			for (TokenTypes type : TokenTypes.values())
+				if (Objects.nonNull(type.scheme))
+					register(type.scheme, type.factory);
+			try {
+				ServiceLoader.load(AuthorizationToken.class).stream().forEach(provider -> {
+					String scheme = provider.get().getSchemeName();
+					if (Objects.nonNull(scheme))
+						register(scheme, provider::get);
+					else
+						unnamed.add(provider::get);
+				});
+			} catch (ServiceConfigurationError e) {
+				log.error("Failed to load authorization token implementations", e);
+			}
+		}
+
+		static void register(String scheme, Supplier<? extends AuthorizationToken> factory) {
+			// register both the canonical and the lower case names, so that correctly cased schemes are found without
+			// converting the header text
+			factories.put(scheme, factory);
+			factories.put(scheme.toLowerCase(Locale.ROOT), factory);
+		}
+
+		static AuthorizationToken create(String scheme) {
+			Supplier<? extends AuthorizationToken> factory = factories.get(scheme);
+			if (Objects.isNull(factory))
+				factory = factories.get(scheme.toLowerCase(Locale.ROOT));
+			if (Objects.nonNull(factory))
+				return factory.get();
+			for (Supplier<? extends AuthorizationToken> candidate : unnamed) {
+				AuthorizationToken token = candidate.get();
+				if (token.supports(scheme))
+					return token;
+			}
+			return new AuthorizationToken();
+		}
+	}
+
 	/**
 	 * Constructor for token implementations is internal - use {@link #parse(String)} to create tokens
 	 */
 	protected AuthorizationToken() {
 	}
 	
+	/**
+	 * Register a token implementation for an IANA HTTP Authentication Scheme Name, replacing any implementation
+	 * previously registered for that scheme
+	 * @param scheme IANA HTTP Authentication Scheme Name, matched case insensitively
+	 * @param factory supplier of new (not yet updated) token instances
+	 */
+	public static void register(String scheme, Supplier<? extends AuthorizationToken> factory) {
+		Schemes.register(Objects.requireNonNull(scheme), Objects.requireNonNull(factory));
+	}
+
 	/**
 	 * Parse an Authorization header text to create a specific token implementation
 	 * 
 	 * This method uses the convention of the first word in the Authorization value being the
-	 * IANA HTTP Authentication Scheme Name, to dynamically load an appropriate implementation
-	 * from the tech.greenfield.vertx.irked.auth.AuthorizationToken service loader. If the
+	 * IANA HTTP Authentication Scheme Name, to look up an appropriate implementation from the
+	 * built-in {@link TokenTypes}, implementations added by {@link #register(String, Supplier)} and
+	 * implementations loaded from the tech.greenfield.vertx.irked.auth.AuthorizationToken service loader. If the
 	 * header value is incompatible (i.e. contains only one "word") then a token with the type
 	 * "simple" will be returned. Otherwise if no supporting implementation is found, an instance
 	 * of the {@link AuthorizationToken} class will be created.
 	 * @param authorizationHeader value of the HTTP Authorization header
-	 * @return a 
+	 * @return a token implementation for the authentication scheme of the header
 	 */
 	public static AuthorizationToken parse(String authorizationHeader) {
 		if (Objects.isNull(authorizationHeader))
 			return new NullAuthorizationToken();
-		String[] parts = authorizationHeader.split("\\s+",2);
-		if (parts.length == 1)
-			return new SimpleAuthrizationToken(parts[0]);
-		for (AuthorizationToken a : TokenTypes.instances()) {
-			if (a.supports(parts[0]))
-				return a.update(parts[0], parts[1]);
-		}
-		return new AuthorizationToken().update(parts[0], parts[1]);
+		int length = authorizationHeader.length(), schemeEnd = 0;
+		while (schemeEnd < length && !isWhitespace(authorizationHeader.charAt(schemeEnd)))
+			schemeEnd++;
+		if (schemeEnd == length)
+			return new SimpleAuthrizationToken(authorizationHeader);
+		int tokenStart = schemeEnd;
+		while (tokenStart < length && isWhitespace(authorizationHeader.charAt(tokenStart)))
+			tokenStart++;
+		String type = authorizationHeader.substring(0, schemeEnd);
+		return Schemes.create(type).update(type, authorizationHeader.substring(tokenStart));
+	}
+
+	static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f' || c == '\u000B';
 	}
 
 	/**
@@ -111,6 +187,16 @@ public class AuthorizationToken {
 	protected boolean supports(String type) {
 		return false;
 	}
+
+	/**
+	 * Retrieve the IANA HTTP Authentication Scheme Name that this implementation supports, so that implementations
+	 * loaded by the service loader can be looked up directly by the scheme name. Implementations that return
+	 * {@code null} (the default) are looked up by calling {@link #supports(String)} instead.
+	 * @return IANA HTTP Authentication Scheme Name supported by this implementation, or {@code null}
+	 */
+	protected String getSchemeName() {
+		return null;
+	}
 	
 	/**
 	 * Check whether the token implementation implements the specified IANA HTTP Authentication Scheme Name
@@ -0,0 +1,340 @@
+package tech.greenfield.vertx.irked.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.ext.web.RoutingContext;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.helpers.HmacKey;
+import tech.greenfield.vertx.irked.helpers.Stripes;
+import tech.greenfield.vertx.irked.metrics.CacheMetrics;
+import tech.greenfield.vertx.irked.status.Unauthorized;
+
+/**
+ * Routing handler that authenticates requests using Basic or Bearer credentials, verified by an application provided
+ * {@link CredentialVerifier} and cached so that repeated requests from the same client skip the expensive check.
+ *
+ * When the credentials are valid, the principal that the verifier resolved them to is stored in the routing context,
+ * where later handlers can retrieve it using {@link #principal(RoutingContext)}, and the request continues to the next
+ * handler. Requests without Basic or Bearer credentials, or with invalid credentials, fail with 401 Unauthorized - with
+ * a {@code WWW-Authenticate} challenge if one was set using {@link #challenge(String)}. If the verifier fails, the
+ * request fails with the verifier's failure.
+ *
+ * Verification results are cached:
+ * <ul>
+ * <li>Valid credentials are cached for the configured TTL, and invalid credentials for the (usually shorter) negative
+ * TTL. Failed verifications are not cached.</li>
+ * <li>Concurrent requests with the same credentials share a single verification, instead of each calling the
+ * verifier.</li>
+ * <li>The cache is keyed by an HMAC of the credentials with a random per-handler key, so it does not hold the
+ * credentials or hashes that can be checked against guessed passwords.</li>
+ * <li>The number of cached credentials is bounded, and the least recently used credentials are evicted first. The
+ * cache is split into independently locked stripes so that event loops rarely contend on it.</li>
+ * </ul>
+ * Cached credentials that have been revoked can be removed using {@link #invalidate(AuthorizationToken)}. The cache
+ * effectiveness is available through the {@link CacheMetrics} methods, and can be exported with the router's metrics
+ * by registering the handler using {@link tech.greenfield.vertx.irked.metrics.MetricsRegistry#addCache(String,
+ * CacheMetrics)}.
+ *
+ * Typical usage:
+ * <pre>{@code
+ * @Endpoint("/api/*")
+ * CredentialVerificationHandler<User> auth = CredentialVerificationHandler.create(users::verify)
+ *     .challenge("Bearer realm=\"api\"");
+ *
+ * @Override
+ * protected void onConfigure(Router router) {
+ *     router.metrics().addCache("credentials", auth);
+ * }
+ * }</pre>
+ *
+ * @param <T> type of the principal that valid credentials resolve to
+ * @author odeda
+ */
+public class CredentialVerificationHandler<T> implements Handler<RoutingContext>, CacheMetrics {
+
+	/**
+	 * Routing context field where the principal of the verified credentials is stored
+	 */
+	public static final String CONTEXT_FIELD = "irked.principal";
+
+	/**
+	 * Default number of milliseconds to cache valid credentials
+	 */
+	public static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(5);
+	/**
+	 * Default number of milliseconds to cache invalid credentials
+	 */
+	public static final long DEFAULT_NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(30);
+	/**
+	 * Default maximal number of cached credentials
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private final CredentialVerifier<T> verifier;
+	private final long ttl;
+	private final long negativeTtl;
+	private final HmacKey key = new HmacKey(HmacKey.randomKey());
+	private final Stripes<Stripe> stripes;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private String challenge;
+	private volatile Clock clock = Clock.systemUTC();
+
+	/**
+	 * Create a new credential verification handler with the default cache settings
+	 * @param <T> type of the principal that valid credentials resolve to
+	 * @param verifier verifier to check credentials that are not cached
+	 * @return a handler that authenticates requests
+	 */
+	public static <T> CredentialVerificationHandler<T> create(CredentialVerifier<T> verifier) {
+		return new CredentialVerificationHandler<>(verifier, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Create a new credential verification handler
+	 * @param <T> type of the principal that valid credentials resolve to
+	 * @param verifier verifier to check credentials that are not cached
+	 * @param ttl number of milliseconds to cache valid credentials, or 0 to not cache them
+	 * @param negativeTtl number of milliseconds to cache invalid credentials, or 0 to not cache them
+	 * @param maxEntries maximal number of credentials to cache
+	 * @return a handler that authenticates requests
+	 */
+	public static <T> CredentialVerificationHandler<T> create(CredentialVerifier<T> verifier, long ttl, long negativeTtl, int maxEntries) {
+		return new CredentialVerificationHandler<>(verifier, ttl, negativeTtl, maxEntries);
+	}
+
+	protected CredentialVerificationHandler(CredentialVerifier<T> verifier, long ttl, long negativeTtl, int maxEntries) {
+		if (ttl < 0 || negativeTtl < 0 || maxEntries <= 0)
+			throw new IllegalArgumentException("Cache TTLs must not be negative and the number of entries must be positive");
+		this.verifier = Objects.requireNonNull(verifier);
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		stripes = new Stripes<>(maxEntries, Stripe::new);
+	}
+
+	/**
+	 * Set the challenge to send in the {@code WWW-Authenticate} header when the request is not authenticated
+	 * @param challenge authentication challenge, such as {@code Bearer realm="api"}
+	 * @return itself for fluent calling
+	 */
+	public CredentialVerificationHandler<T> challenge(String challenge) {
+		this.challenge = challenge;
+		return this;
+	}
+
+	/**
+	 * Set the clock used to expire cached verification results
+	 * @param clock clock to use instead of the system clock
+	 * @return itself for fluent calling
+	 */
+	public CredentialVerificationHandler<T> clock(Clock clock) {
+		this.clock = Objects.requireNonNull(clock);
+		return this;
+	}
+
+	/**
+	 * Retrieve the principal of the credentials verified for the request
+	 * @param <T> type of the principal
+	 * @param ctx routing context of the request
+	 * @return the principal that the request credentials were resolved to, or {@code null} if the request was not
+	 *   authenticated by a credential verification handler
+	 */
+	public static <T> T principal(RoutingContext ctx) {
+		return ctx.get(CONTEXT_FIELD);
+	}
+
+	@Override
+	public void handle(RoutingContext ctx) {
+		AuthorizationToken token = ctx instanceof Request ? ((Request) ctx).getAuthorization() :
+			AuthorizationToken.parse(ctx.request().getHeader("Authorization"));
+		if (!(token instanceof BasicAuthorizationToken || token instanceof BearerAuthorizationToken)) {
+			reject(ctx);
+			return;
+		}
+		Future<T> verification = lookup(token);
+		if (verification.isComplete()) {
+			complete(ctx, verification);
+			return;
+		}
+		// the verification may complete on another thread, or on the event loop of another request with the same
+		// credentials, so continue this request on its own context
+		Promise<T> result = ((ContextInternal) ctx.vertx().getOrCreateContext()).promise();
+		verification.onComplete(result);
+		result.future().onComplete(v -> complete(ctx, result.future()));
+	}
+
+	private void complete(RoutingContext ctx, Future<T> verification) {
+		if (verification.failed())
+			ctx.fail(verification.cause());
+		else if (Objects.isNull(verification.result()))
+			reject(ctx);
+		else {
+			ctx.put(CONTEXT_FIELD, verification.result());
+			ctx.next();
+		}
+	}
+
+	private void reject(RoutingContext ctx) {
+		Unauthorized error = new Unauthorized();
+		if (Objects.nonNull(challenge))
+			error.addHeader("WWW-Authenticate", challenge);
+		ctx.fail(error.getStatusCode(), error);
+	}
+
+	private Future<T> lookup(AuthorizationToken token) {
+		String key = keyOf(token);
+		Stripe stripe = stripes.of(key);
+		Cached<T> entry;
+		synchronized (stripe) {
+			entry = stripe.get(key);
+			if (Objects.nonNull(entry) && entry.expiry > currentTimeMillis()) {
+				(entry.result.future().isComplete() ? hits : coalesced).increment();
+				return entry.result.future();
+			}
+			stripe.put(key, entry = new Cached<>());
+		}
+		misses.increment();
+		Future<T> verification;
+		try {
+			verification = Objects.requireNonNull(verifier.verify(token), "Credential verifier returned no result");
+		} catch (RuntimeException e) {
+			verification = Future.failedFuture(e);
+		}
+		Cached<T> pending = entry;
+		verification.onComplete(result -> {
+			synchronized (stripe) {
+				if (result.failed())
+					stripe.remove(key, pending);
+				else
+					pending.expiry = currentTimeMillis() + (Objects.nonNull(result.result()) ? ttl : negativeTtl);
+			}
+			pending.result.handle(result);
+		});
+		return entry.result.future();
+	}
+
+	/**
+	 * Remove cached verification results for the credentials in an authorization token, for example after they were
+	 * revoked
+	 * @param token authorization token with the credentials to remove
+	 */
+	public void invalidate(AuthorizationToken token) {
+		String key = keyOf(token);
+		Stripe stripe = stripes.of(key);
+		synchronized (stripe) {
+			stripe.remove(key);
+		}
+	}
+
+	/**
+	 * Remove all cached verification results
+	 */
+	public void invalidateAll() {
+		for (Stripe stripe : stripes)
+			synchronized (stripe) {
+				stripe.clear();
+			}
+	}
+
+	/**
+	 * @return the number of cached verification results, including expired results that were not yet removed
+	 */
+	@Override
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes)
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		return size;
+	}
+
+	/**
+	 * @return the number of requests whose credentials were found in the cache
+	 */
+	@Override
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of requests whose credentials were checked by the verifier
+	 */
+	@Override
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of requests that waited for the verification of the same credentials by another request
+	 */
+	@Override
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @return the number of verification results that were evicted from the cache because it was full
+	 */
+	@Override
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	private long currentTimeMillis() {
+		return clock.millis();
+	}
+
+	private String keyOf(AuthorizationToken token) {
+		Mac mac = key.mac();
+		mac.update(token.getType().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+		mac.update((byte) ' ');
+		return ParameterEncodedAuthorizationToken.toHex(mac.doFinal(token.getToken().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * A cached verification, which is pending until the verifier completes
+	 */
+	private static class Cached<T> {
+		final Promise<T> result = Promise.promise();
+		long expiry = Long.MAX_VALUE;
+	}
+
+	/**
+	 * A part of the cache, in least recently used order and with its own lock
+	 */
+	private class Stripe extends LinkedHashMap<String, Cached<T>> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Cached<T>> eldest) {
+			if (size() <= capacity)
+				return false;
+			if (eldest.getValue().expiry > currentTimeMillis())
+				evictions.increment();
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,28 @@
+package tech.greenfield.vertx.irked.auth;
+
+import io.vertx.core.Future;
+
+/**
+ * Application provided verification of the credentials in a request's authorization token, for use with
+ * {@link CredentialVerificationHandler}.
+ *
+ * The verifier is called on the event loop, so expensive local checks - such as bcrypt or PBKDF2 password hashing -
+ * should be offloaded, for example using {@link io.vertx.core.Vertx#executeBlocking(java.util.concurrent.Callable)},
+ * and remote checks - such as OAuth token introspection - should use an asynchronous client.
+ *
+ * @param <T> type of the principal that the verifier resolves valid credentials to
+ * @author odeda
+ */
+@FunctionalInterface
+public interface CredentialVerifier<T> {
+
+	/**
+	 * Verify the credentials in an authorization token
+	 * @param token authorization token sent by the client
+	 * @return a future that resolves to the principal identified by the credentials, or to {@code null} if the
+	 *   credentials are invalid. A failed future signals that the credentials could not be verified - for example
+	 *   because the identity service is unavailable - and fails the request
+	 */
+	Future<T> verify(AuthorizationToken token);
+
+}
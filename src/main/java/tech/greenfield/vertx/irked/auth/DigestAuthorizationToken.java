@@ -1,8 +1,6 @@
 package tech.greenfield.vertx.irked.auth;
 
 import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -18,7 +16,9 @@ import tech.greenfield.vertx.irked.helpers.DigestAuthenticate;
  * Implementation of the standard RFC 7616 Digest authentication scheme token
  * 
  * Complete implementation of token validation and data access is provided, depending on the
- * specified digest algorithm being available from the JVM cryptography provider.
+ * specified digest algorithm being available from the JVM cryptography provider. The RFC 7616 {@code MD5},
+ * {@code SHA-256} and {@code SHA-512-256} algorithms and their {@code -sess} variants are supported, as well as
+ * usernames hashed by the client ({@code userhash}).
  * 
  * @author odeda
  */
@@ -26,7 +26,7 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 
 	private static Logger logger = LoggerFactory.getLogger(DigestAuthorizationToken.class);
 
-	private MessageDigest digestAlgorithm;
+	private DigestEngine engine;
 
 	public DigestAuthorizationToken() {}
 
@@ -69,6 +69,26 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 	 */
 	public DigestAuthorizationToken(String realm, String method, String uri, Buffer entityBody, String username, String password,
 			String nonce, String cnonce, String opaque, String algorithm) {
+		this(realm, method, uri, entityBody, username, password, nonce, cnonce, opaque, algorithm, false);
+	}
+
+	/**
+	 * Helper constructor to compute a new Digest authorization header
+	 * @param realm Realm received in the Unauthorized response
+	 * @param method HTTP method to authorize
+	 * @param uri URI of the request
+	 * @param entityBody HTTP body content to authorize
+	 * @param username Username to authenticate with
+	 * @param password password to authentication with
+	 * @param nonce Nonce received in the Unauthorized response
+	 * @param cnonce cnonce received in the unauthorized response
+	 * @param opaque whether the authorized content is opaque (as per the RFC)
+	 * @param algorithm Algorithm to use
+	 * @param userhash whether to send a hash of the username instead of the username, as per RFC 7616 section 3.4.4
+	 */
+	public DigestAuthorizationToken(String realm, String method, String uri, Buffer entityBody, String username, String password,
+			String nonce, String cnonce, String opaque, String algorithm, boolean userhash) {
+		engine = DigestEngine.forAlgorithm(algorithm);
 		parameters.put("username", username);
 		parameters.put("realm", realm);
 		parameters.put("nonce", nonce);
@@ -83,14 +103,17 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 			if (Objects.nonNull(entityBody))
 				logger.warn("If entity body is provided for digest, cnonce must also be provided");
 		}
-		try {
-			digestAlgorithm = MessageDigest.getInstance(algorithm);
-			parameters.put("algorithm", algorithm);
-		} catch (NoSuchAlgorithmException e) {
+		if (!isValid()) {
 			parameters.put("algorithm", "unknown");
 			return;
 		}
-		parameters.put("response", computeResponse(password, method, entityBody));
+		parameters.put("algorithm", algorithm);
+		byte[] response = computeResponse(username, password, method, entityBody);
+		if (userhash) {
+			parameters.put("username", hashUsername(username));
+			parameters.put("userhash", "true");
+		}
+		parameters.put("response", Objects.nonNull(response) ? DigestEngine.toString(response) : "");
 	}
 
 	public String generateAuthrizationHeader() {
@@ -110,12 +133,8 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 	@Override
 	protected AuthorizationToken update(String type, String token) {
 		super.update(type, token);
-		try {
-			digestAlgorithm = MessageDigest.getInstance(getAlgorithm());
-		} catch (NoSuchAlgorithmException e) {
-			logger.warn("Unsupported digest algorithm - " + e.getMessage());
-			digestAlgorithm = null;
-		}
+		if (Objects.isNull(engine = DigestEngine.forAlgorithm(getAlgorithm())))
+			logger.warn("Unsupported digest algorithm - " + getAlgorithm());
 		return this;
 	}
 
@@ -128,7 +147,7 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 	 * @return Whether the token is valid
 	 */
 	public boolean isValid() {
-		return Objects.nonNull(digestAlgorithm);
+		return Objects.nonNull(engine);
 	}
 
 	/**
@@ -153,7 +172,9 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 	 * @return a lowercased hex encoded hash of the provided text
 	 */
 	public String hash(String text) {
-		return hash(Buffer.buffer(text));
+		if (!isValid())
+			return "";
+		return DigestEngine.toString(engine.begin().add(text).hex());
 	}
 
 	/**
@@ -164,17 +185,51 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 	public String hash(Buffer buffer) {
 		if (!isValid())
 			return "";
-		return toHex(digestAlgorithm.digest(buffer.getBytes())).toLowerCase();
+		return DigestEngine.toString(engine.begin().add(buffer).hex());
 	}
 
 	/**
-	 * Retrieve the username claimed in the token
+	 * Retrieve the username claimed in the token. If the client hashed the username (see {@link #isUserhash()})
+	 * this is the hash of the username and the realm.
 	 * @return username value of the token
 	 */
 	public String getUsername() {
 		return getParameter("username");
 	}
 
+	/**
+	 * Check if the client sent a hash of the username instead of the username, as per RFC 7616 section 3.4.4.
+	 * In that case, the server should look up the user by comparing {@link #getUsername()} to
+	 * {@link #hashUsername(String)} of its known users, or use {@link #matchesUsername(String)}.
+	 * @return whether the "userhash" value of the digest is "true"
+	 */
+	public boolean isUserhash() {
+		return "true".equalsIgnoreCase(getParameter("userhash"));
+	}
+
+	/**
+	 * Compute the RFC 7616 userhash of a username, using the algorithm and the realm of this token
+	 * @param username username to hash
+	 * @return a lowercased hex encoded hash of the username and the realm
+	 */
+	public String hashUsername(String username) {
+		if (!isValid())
+			return "";
+		return DigestEngine.toString(engine.begin().add(username).add(':').add(getParameter("realm")).hex());
+	}
+
+	/**
+	 * Check if the username claimed in the token is the specified username, whether the client sent the username
+	 * or its hash
+	 * @param username username to check
+	 * @return whether the token claims the specified username
+	 */
+	public boolean matchesUsername(String username) {
+		if (!isUserhash())
+			return Objects.equals(username, getUsername());
+		return isValid() && DigestEngine.matches(engine.begin().add(username).add(':').add(getParameter("realm")).hex(), getUsername());
+	}
+
 	/**
 	 * Check if the sender requested a body integrity check
 	 * @return whether the "qop" value of the digest specified "auth-int"
@@ -187,6 +242,9 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 	 * Check if the response value provided in the token is valid considering the provided password, method
 	 * and optional body.
 	 *
+	 * If the client hashed the username (see {@link #isUserhash()}), this method cannot compute the response and
+	 * will return false - use {@link #validateResponse(String, String, Request)} instead.
+	 *
 	 * @param password Password to check against the digest response
 	 * @param req HTTP request to verify integrity with. If the token has set "qop" to "auth-int"
 	 * (as can be verified by {@link #qopIntegrityRequested()}, and a body is not provided in the request, this method
@@ -194,26 +252,48 @@ public class DigestAuthorizationToken extends ParameterEncodedAuthorizationToken
 	 * @return Whether the response value specified in the token is correct according to RFC7616
 	 */
 	public boolean validateResponse(String password, Request req) {
-		return getParameter("uri").equals(req.request().uri()) &&
-				computeResponse(password, req.request().method().name(), req.body().buffer()).equals(getParameter("response"));
-	}
-
-	private String computeResponse(String password, String method, Buffer entityBody) {
-		String A1 = hash(getParameter("username") + ":" + getParameter("realm") + ":" + password);
-		String A2 = null;
-		if(!parameters.containsKey("qop") || getParameter("qop").equals("auth"))
-			A2 = hash(method + ":" + getParameter("uri"));
-		else if(getParameter("qop").equals("auth-int") && Objects.nonNull(entityBody))
-			A2 = hash(method + ":" + getParameter("uri") + hash(entityBody));
-		else {
-			logger.warn("Invalid digest format: " + getParameter("qop"));
-			return "";
+		return !isUserhash() && validateResponse(getUsername(), password, req);
+	}
+
+	/**
+	 * Check if the response value provided in the token is valid for the provided username and password, method
+	 * and optional body. The username is checked using {@link #matchesUsername(String)}, so this method supports
+	 * clients that hash the username.
+	 *
+	 * @param username Username of the user that the password belongs to
+	 * @param password Password to check against the digest response
+	 * @param req HTTP request to verify integrity with. If the token has set "qop" to "auth-int"
+	 * (as can be verified by {@link #qopIntegrityRequested()}, and a body is not provided in the request, this method
+	 * will return false.
+	 * @return Whether the response value specified in the token is correct according to RFC7616
+	 */
+	public boolean validateResponse(String username, String password, Request req) {
+		if (!isValid() || !matchesUsername(username) || !req.request().uri().equals(getParameter("uri")))
+			return false;
+		byte[] response = computeResponse(username, password, req.request().method().name(),
+				qopIntegrityRequested() ? req.body().buffer() : null);
+		return Objects.nonNull(response) && DigestEngine.matches(response, getParameter("response"));
+	}
+
+	private byte[] computeResponse(String username, String password, String method, Buffer entityBody) {
+		String qop = getParameter("qop");
+		byte[] hashA2;
+		if (Objects.isNull(qop) || qop.equals("auth"))
+			hashA2 = engine.begin().add(method).add(':').add(getParameter("uri")).hex();
+		else if (qop.equals("auth-int") && Objects.nonNull(entityBody)) {
+			byte[] bodyHash = engine.begin().add(entityBody).hex();
+			hashA2 = engine.begin().add(method).add(':').add(getParameter("uri")).add(':').add(bodyHash).hex();
+		} else {
+			logger.warn("Invalid digest format: " + qop);
+			return null;
 		}
-		return parameters.containsKey("qop") ?
-			hash(A1 + ":" + getParameter("nonce") + ":" + getParameter("nc") + ":" + getParameter("cnonce") + ":" +
-					getParameter("qop") + ":" + A2)
-			:
-			hash(A1 + ":" + getParameter("nonce") + ":" + A2);
+		byte[] hashA1 = engine.begin().add(username).add(':').add(getParameter("realm")).add(':').add(password).hex();
+		if (engine.isSession())
+			hashA1 = engine.begin().add(hashA1).add(':').add(getParameter("nonce")).add(':').add(getParameter("cnonce")).hex();
+		DigestEngine.Computation response = engine.begin().add(hashA1).add(':').add(getParameter("nonce")).add(':');
+		if (Objects.nonNull(qop))
+			response.add(getParameter("nc")).add(':').add(getParameter("cnonce")).add(':').add(qop).add(':');
+		return response.add(hashA2).hex();
 	}
 
 	/**
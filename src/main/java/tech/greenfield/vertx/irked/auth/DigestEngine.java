@@ -0,0 +1,230 @@
+package tech.greenfield.vertx.irked.auth;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.internal.buffer.BufferInternal;
+
+/**
+ * Hash computation for the RFC 7616 Digest authentication scheme.
+ *
+ * Supports the RFC 7616 algorithms {@code MD5}, {@code SHA-256} and {@code SHA-512-256} and their {@code -sess}
+ * variants, as well as any other digest algorithm name supported by the JVM cryptography provider. Message digests
+ * are cached per thread, data is hashed as it is added, without building intermediate strings, and hash values
+ * are encoded directly to lower case hex bytes.
+ *
+ * @author odeda
+ */
+final class DigestEngine {
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+	private static final Map<String, DigestEngine> engines = new ConcurrentHashMap<>();
+
+	static {
+		register("MD5", "MD5");
+		register("SHA-256", "SHA-256");
+		register("SHA-512-256", "SHA-512/256");
+	}
+
+	private final String name;
+	private final boolean session;
+	private final ThreadLocal<Computation> computations;
+
+	private DigestEngine(String name, String jcaName, boolean session) {
+		this.name = name;
+		this.session = session;
+		computations = ThreadLocal.withInitial(() -> {
+			try {
+				return new Computation(MessageDigest.getInstance(jcaName));
+			} catch (NoSuchAlgorithmException e) { // checked when the engine was created
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	private static void register(String name, String jcaName) {
+		if (!isSupported(jcaName))
+			return;
+		DigestEngine engine = new DigestEngine(name, jcaName, false), sessionEngine = new DigestEngine(name + "-sess", jcaName, true);
+		engines.put(name, engine);
+		engines.put(name + "-sess", sessionEngine);
+		engines.put(name + "-SESS", sessionEngine);
+	}
+
+	/**
+	 * Retrieve the engine for a Digest algorithm
+	 * @param algorithm RFC 7616 algorithm name (case insensitive), or a JVM message digest algorithm name
+	 * @return the engine for the algorithm, or {@code null} if the algorithm is not supported
+	 */
+	static DigestEngine forAlgorithm(String algorithm) {
+		if (Objects.isNull(algorithm))
+			return null;
+		DigestEngine engine = engines.get(algorithm);
+		if (Objects.isNull(engine))
+			engine = engines.get(algorithm.toUpperCase(Locale.ROOT));
+		if (Objects.nonNull(engine) || !isSupported(algorithm))
+			return engine;
+		// only algorithms supported by the JVM are cached, so the cache size is bounded even for invalid client input
+		return engines.computeIfAbsent(algorithm, a -> new DigestEngine(a, a, false));
+	}
+
+	private static boolean isSupported(String jcaName) {
+		try {
+			MessageDigest.getInstance(jcaName);
+			return true;
+		} catch (NoSuchAlgorithmException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the algorithm name
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Check whether this is a session variant algorithm, where A1 also includes the nonce and cnonce
+	 * @return whether this is a {@code -sess} algorithm
+	 */
+	boolean isSession() {
+		return session;
+	}
+
+	/**
+	 * Start a new hash computation on the current thread. The computation must be completed before another
+	 * computation is started on the same thread.
+	 * @return the current thread's hash computation
+	 */
+	Computation begin() {
+		Computation computation = computations.get();
+		computation.digest.reset();
+		return computation;
+	}
+
+	/**
+	 * A hash computation that is fed with data and completed into lower case hex bytes
+	 */
+	static final class Computation {
+		private final MessageDigest digest;
+		private byte[] scratch = new byte[128];
+
+		private Computation(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		/**
+		 * Add the UTF-8 encoding of the text to the hash
+		 * @param text text to add, where {@code null} is added as an empty text
+		 * @return itself for fluent calling
+		 */
+		Computation add(String text) {
+			if (Objects.isNull(text))
+				return this;
+			int length = text.length();
+			if (scratch.length < length)
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			for (int i = 0; i < length; i++) {
+				char c = text.charAt(i);
+				if (c >= 0x80) { // not ASCII - let the JVM encode it
+					digest.update(scratch, 0, i);
+					digest.update(text.substring(i).getBytes(StandardCharsets.UTF_8));
+					return this;
+				}
+				scratch[i] = (byte) c;
+			}
+			digest.update(scratch, 0, length);
+			return this;
+		}
+
+		/**
+		 * Add an ASCII character, such as a separator, to the hash
+		 * @param c character to add
+		 * @return itself for fluent calling
+		 */
+		Computation add(char c) {
+			digest.update((byte) c);
+			return this;
+		}
+
+		/**
+		 * Add bytes, such as a previously computed hex hash, to the hash
+		 * @param data bytes to add
+		 * @return itself for fluent calling
+		 */
+		Computation add(byte[] data) {
+			digest.update(data);
+			return this;
+		}
+
+		/**
+		 * Add the content of a buffer to the hash, without copying it if possible
+		 * @param buffer data to add
+		 * @return itself for fluent calling
+		 */
+		Computation add(Buffer buffer) {
+			if (!(buffer instanceof BufferInternal)) {
+				digest.update(buffer.getBytes());
+				return this;
+			}
+			ByteBuf data = ((BufferInternal) buffer).unwrap();
+			if (data.hasArray()) {
+				digest.update(data.array(), data.arrayOffset() + data.readerIndex(), data.readableBytes());
+				return this;
+			}
+			for (ByteBuffer part : data.nioBuffers(data.readerIndex(), data.readableBytes()))
+				digest.update(part);
+			return this;
+		}
+
+		/**
+		 * Complete the hash computation
+		 * @return lower case hex encoding of the hash
+		 */
+		byte[] hex() {
+			byte[] hash = digest.digest(), hex = new byte[hash.length * 2];
+			for (int i = 0; i < hash.length; i++) {
+				hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+				hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+			}
+			return hex;
+		}
+	}
+
+	/**
+	 * Compare a hex encoded hash to a text in constant time, ignoring case
+	 * @param hex lower case hex bytes
+	 * @param text text to compare to
+	 * @return whether the text is the hex encoded hash
+	 */
+	static boolean matches(byte[] hex, String text) {
+		if (Objects.isNull(text) || text.length() != hex.length)
+			return false;
+		int difference = 0;
+		for (int i = 0; i < hex.length; i++) {
+			char c = text.charAt(i);
+			// fold only upper case hex letters, so that other characters never match a hex digit
+			difference |= (c >= 'A' && c <= 'F' ? c | 0x20 : c) ^ hex[i];
+		}
+		return difference == 0;
+	}
+
+	/**
+	 * Convert hex bytes to text
+	 * @param hex hex bytes
+	 * @return hex text
+	 */
+	static String toString(byte[] hex) {
+		return new String(hex, StandardCharsets.US_ASCII);
+	}
+
+}
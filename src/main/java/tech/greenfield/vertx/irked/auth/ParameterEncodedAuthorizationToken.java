@@ -1,7 +1,6 @@
 package tech.greenfield.vertx.irked.auth;
 
 import java.util.*;
-import java.util.Map.Entry;
 
 /**
  * Base implementation for authentication schemes where the value is a white-space separated list
@@ -18,50 +17,91 @@ public class ParameterEncodedAuthorizationToken extends AuthorizationToken {
 	@Override
 	protected AuthorizationToken update(String type, String token) {
 		super.update(type, token);
-		for (Map.Entry<String,String> e : parseParameters(token)) {
-			parameters.put(e.getKey(), e.getValue());
-		}
+		parseParameters(token, parameters);
 		return this;
 	}
 	
+	/**
+	 * Parse an RFC 7235 list of auth-params
+	 * @param text list of auth-params
+	 * @return the parameters, in the order they appear in the text
+	 */
 	public static Iterable<Map.Entry<String,String>> parseParameters(String text) {
-		StringTokenizer t = new StringTokenizer(text, " \t\r\n,");
-		return new Iterable<Map.Entry<String,String>>() {
-			@Override
-			public Iterator<Entry<String, String>> iterator() {
-				return new Iterator<Map.Entry<String,String>>() {
-					
-					@Override
-					public Entry<String, String> next() {
-						String next = t.nextToken();
-						String[] parts = next.split("=",2);
-						if (parts.length != 2)
-							return new AbstractMap.SimpleImmutableEntry<String,String>(parts[0], null);
-						while (parts[1].startsWith("\"") && !parts[1].endsWith("\"") && t.hasMoreTokens())
-							parts[1] += " " + t.nextToken();
-						if (parts[1].startsWith("\""))
-							parts[1] = parts[1].substring(1, parts[1].length()-1);
-						return new AbstractMap.SimpleImmutableEntry<String,String>(parts[0], parts[1]);
-					}
-					
-					@Override
-					public boolean hasNext() {
-						return t.hasMoreTokens();
+		Map<String,String> parameters = new LinkedHashMap<>();
+		parseParameters(text, parameters);
+		return parameters.entrySet();
+	}
+
+	/**
+	 * Parse an RFC 7235 list of auth-params in a single pass.
+	 * 
+	 * Parameters are separated by commas and/or white space, values can be tokens or quoted strings (with
+	 * backslash escapes) and white space is allowed around the equal sign. Parameters without a value (such as a
+	 * token68 value) are stored with a {@code null} value.
+	 * @param text list of auth-params
+	 * @param parameters map to store the parsed parameters in
+	 */
+	static void parseParameters(String text, Map<String,String> parameters) {
+		int length = text.length(), pos = 0;
+		while (pos < length) {
+			char c = text.charAt(pos);
+			if (c == ',' || isWhitespace(c)) {
+				pos++;
+				continue;
+			}
+			int nameStart = pos;
+			while (pos < length && (c = text.charAt(pos)) != '=' && c != ',' && !isWhitespace(c))
+				pos++;
+			String name = text.substring(nameStart, pos);
+			pos = skipWhitespace(text, pos);
+			if (pos == length || text.charAt(pos) != '=') {
+				parameters.put(name, null);
+				continue;
+			}
+			pos = skipWhitespace(text, pos + 1);
+			if (pos < length && text.charAt(pos) == '"') {
+				int valueStart = ++pos;
+				StringBuilder unescaped = null;
+				while (pos < length && (c = text.charAt(pos)) != '"') {
+					if (c == '\\' && pos + 1 < length) {
+						if (Objects.isNull(unescaped))
+							unescaped = new StringBuilder(text.length() - valueStart).append(text, valueStart, pos);
+						c = text.charAt(++pos);
 					}
-				};
+					if (Objects.nonNull(unescaped))
+						unescaped.append(c);
+					pos++;
+				}
+				parameters.put(name, Objects.nonNull(unescaped) ? unescaped.toString() : text.substring(valueStart, pos));
+				pos++; // skip the closing quote
+			} else {
+				int valueStart = pos;
+				while (pos < length && (c = text.charAt(pos)) != ',' && !isWhitespace(c))
+					pos++;
+				parameters.put(name, text.substring(valueStart, pos));
 			}
-		};
+		}
+	}
+
+	private static int skipWhitespace(String text, int pos) {
+		while (pos < text.length() && isWhitespace(text.charAt(pos)))
+			pos++;
+		return pos;
 	}
 
 	public String getParameter(String param) {
 		return parameters.get(param);
 	}
 	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
 	public static String toHex(byte[] data) {
-		StringBuilder sb = new StringBuilder(data.length * 2);
-		for(byte b: data)
-			sb.append(String.format("%02x", b));
-		return sb.toString();
+		char[] hex = new char[data.length * 2];
+		for (int i = 0; i < data.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(data[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX_DIGITS[data[i] & 0xf];
+		}
+		return new String(hex);
 	}
 	
 }
@@ -0,0 +1,173 @@
+package tech.greenfield.vertx.irked.deadline;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A point in time after which the processing of a request is no longer useful.
+ *
+ * Deadlines are attached to the routing context by {@link DeadlineHandler} (which is what the
+ * {@link tech.greenfield.vertx.irked.annotations.Timeout} annotation sets up) and are tracked by
+ * a {@link DeadlineWheel} running on the event loop of the request. Handlers can read the deadline
+ * using {@link tech.greenfield.vertx.irked.Request#deadline()} to propagate it to downstream clients,
+ * and register {@link #onExpire(Handler)} hooks to abandon work that is still running when the
+ * deadline passes.
+ *
+ * @author odeda
+ */
+public class Deadline {
+
+	/**
+	 * Routing context data field under which the current request deadline is stored
+	 */
+	public static final String CONTEXT_FIELD = "irked.deadline";
+
+	private static final Logger log = LoggerFactory.getLogger(Deadline.class);
+
+	private final long expiresAtNanos;
+	private final long expiresAtMillis;
+	private final ContextInternal context;
+	private final Handler<Deadline> expireAction;
+	private List<Handler<Void>> expireHandlers;
+	private volatile boolean done;
+
+	// wheel bookkeeping, only accessed from the wheel's event loop thread
+	long tick;
+	Deadline next;
+
+	Deadline(ContextInternal context, long timeout, Handler<Deadline> expireAction) {
+		this.context = context;
+		this.expireAction = expireAction;
+		this.expiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.expiresAtMillis = System.currentTimeMillis() + timeout;
+	}
+
+	/**
+	 * Retrieve the deadline stored on the specified routing context, if there is one
+	 * @param ctx routing context to check
+	 * @return the request's deadline, or {@code null} if no deadline was set
+	 */
+	public static Deadline of(RoutingContext ctx) {
+		return ctx.get(CONTEXT_FIELD);
+	}
+
+	/**
+	 * Retrieve the wall clock time at which this deadline expires
+	 * @return deadline expiry time
+	 */
+	public Instant instant() {
+		return Instant.ofEpochMilli(expiresAtMillis);
+	}
+
+	/**
+	 * Retrieve the amount of time left until this deadline expires.
+	 * This value is suitable to be passed as a timeout to downstream clients.
+	 * @return number of milliseconds until expiry, or {@code 0} if the deadline has already expired
+	 */
+	public long remaining() {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+	}
+
+	/**
+	 * Check whether the deadline has passed, regardless of whether the expiry was already processed
+	 * @return whether there is no more time left
+	 */
+	public boolean isExpired() {
+		return expiresAtNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Check whether this deadline was either processed as expired or cancelled, and will not fire any more
+	 * @return whether this deadline is done
+	 */
+	public boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Register a handler to be called when the deadline expires. If the deadline has already expired, the
+	 * handler will be called immediately. Handlers are not called if the deadline was cancelled because the
+	 * request completed in time.
+	 * @param handler handler to call when the deadline expires
+	 * @return itself for fluent calls
+	 */
+	public Deadline onExpire(Handler<Void> handler) {
+		synchronized (this) {
+			if (!done) {
+				if (expireHandlers == null)
+					expireHandlers = new ArrayList<>(2);
+				expireHandlers.add(handler);
+				return this;
+			}
+		}
+		if (isExpired())
+			handler.handle(null);
+		return this;
+	}
+
+	/**
+	 * Stop tracking this deadline, for example because the response was sent.
+	 * This is safe to call from any thread - the timer wheel will discard the deadline on its next pass.
+	 */
+	public void cancel() {
+		done = true;
+	}
+
+	/**
+	 * Process the expiry of this deadline on the deadline's context, if it wasn't already processed or cancelled.
+	 * This is called by the {@link DeadlineWheel} when the deadline passes, but may be called earlier by code that
+	 * notices that the deadline has passed before the wheel had a chance to tick.
+	 */
+	public void expire() {
+		if (done)
+			return;
+		if (Vertx.currentContext() == context)
+			fire();
+		else if (context.isEventLoopContext() && context.nettyEventLoop().inEventLoop())
+			context.emit(v -> fire());
+		else
+			context.execute(v -> fire());
+	}
+
+	long expiresAtNanos() {
+		return expiresAtNanos;
+	}
+
+	ContextInternal context() {
+		return context;
+	}
+
+	private void fire() {
+		List<Handler<Void>> handlers;
+		synchronized (this) {
+			if (done)
+				return;
+			done = true;
+			handlers = expireHandlers;
+			expireHandlers = null;
+		}
+		if (handlers != null)
+			for (var h : handlers)
+				try {
+					h.handle(null);
+				} catch (Throwable t) {
+					log.warn("Deadline expiry handler threw an exception", t);
+				}
+		expireAction.handle(this);
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline " + instant() + (done ? " (done)" : "");
+	}
+}
@@ -0,0 +1,94 @@
+package tech.greenfield.vertx.irked.deadline;
+
+import java.util.Objects;
+
+import io.vertx.core.Handler;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.ext.web.RoutingContext;
+import tech.greenfield.vertx.irked.status.ServiceUnavailable;
+
+/**
+ * Routing handler that sets a {@link Deadline} for the request, and fails the request with a
+ * 503 Service Unavailable error if no response was sent before the deadline expires.
+ *
+ * This is a replacement for the Vert.x-web {@link io.vertx.ext.web.handler.TimeoutHandler} that, in addition to
+ * failing the request, exposes the deadline to the handlers so they can propagate it and stop working on the request
+ * when it expires. Deadlines are tracked using a per-event-loop {@link DeadlineWheel} instead of a Vert.x timer per request.
+ *
+ * Optionally, the deadline may be derived from a request header that specifies the number of milliseconds the client
+ * is willing to wait. The header value can only shorten the configured timeout, never extend it.
+ *
+ * If the request already has an earlier deadline set, for example by a parent controller, that deadline is retained.
+ *
+ * @author odeda
+ */
+public class DeadlineHandler implements Handler<RoutingContext> {
+
+	private final long timeout;
+	private final String header;
+
+	/**
+	 * Create a new deadline handler
+	 * @param timeout number of milliseconds to allow for the request processing
+	 * @return a handler that sets a deadline for the request
+	 */
+	public static DeadlineHandler create(long timeout) {
+		return new DeadlineHandler(timeout, null);
+	}
+
+	/**
+	 * Create a new deadline handler that may derive the deadline from a request header
+	 * @param timeout maximum number of milliseconds to allow for the request processing
+	 * @param header name of a request header whose value is the number of milliseconds the client is willing to wait
+	 *   for a response. If the header is missing or invalid, the specified timeout is used
+	 * @return a handler that sets a deadline for the request
+	 */
+	public static DeadlineHandler create(long timeout, String header) {
+		return new DeadlineHandler(timeout, header);
+	}
+
+	protected DeadlineHandler(long timeout, String header) {
+		this.timeout = timeout;
+		this.header = Objects.nonNull(header) && !header.isBlank() ? header : null;
+	}
+
+	@Override
+	public void handle(RoutingContext ctx) {
+		long requestTimeout = timeoutFor(ctx);
+		Deadline current = Deadline.of(ctx);
+		if (current == null || current.remaining() > requestTimeout) {
+			Deadline deadline = new Deadline((ContextInternal) ctx.vertx().getOrCreateContext(), requestTimeout, d -> timeout(ctx));
+			ctx.put(Deadline.CONTEXT_FIELD, deadline);
+			ctx.addEndHandler(v -> deadline.cancel());
+			DeadlineWheel.schedule(deadline);
+		}
+		ctx.next();
+	}
+
+	private long timeoutFor(RoutingContext ctx) {
+		if (header == null)
+			return timeout;
+		String value = ctx.request().getHeader(header);
+		if (value == null)
+			return timeout;
+		try {
+			long requested = Long.parseLong(value.trim());
+			return requested >= 0 ? Math.min(requested, timeout) : timeout;
+		} catch (NumberFormatException e) {
+			return timeout;
+		}
+	}
+
+	private void timeout(RoutingContext ctx) {
+		if (ctx.response().ended() || ctx.failed())
+			return;
+		if (!ctx.request().isEnded())
+			ctx.request().resume();
+		ctx.fail(ServiceUnavailable.code);
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline(" + timeout + "ms" + (header != null ? "," + header : "") + ")";
+	}
+}
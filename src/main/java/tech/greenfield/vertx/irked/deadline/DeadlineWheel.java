@@ -0,0 +1,122 @@
+package tech.greenfield.vertx.irked.deadline;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.EventLoop;
+
+/**
+ * A hashed timer wheel that tracks request {@link Deadline}s for a single event loop.
+ *
+ * Instead of scheduling (and then, in the common case, cancelling) a Vert.x timer for every request, deadlines are
+ * hashed into a ring of slots by their expiry tick. A single periodic task on the event loop advances the wheel and
+ * expires whatever is due, and it only runs while the wheel has pending deadlines. Cancelled deadlines are just marked
+ * as done and are unlinked lazily when their slot is visited, so cancellation is cheap and thread safe.
+ *
+ * Each event loop thread gets its own wheel, so all wheel state is only ever accessed from that thread.
+ *
+ * The tick resolution defaults to 10 milliseconds and can be changed using the {@code irked.deadline.tick-ms}
+ * system property.
+ *
+ * @author odeda
+ */
+class DeadlineWheel implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeadlineWheel.class);
+	private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("irked.deadline.tick-ms", 10));
+	private static final int WHEEL_SIZE = 512; // must be a power of 2
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final ThreadLocal<DeadlineWheel> wheels = new ThreadLocal<>();
+
+	private final EventLoop eventLoop;
+	private final Deadline[] slots = new Deadline[WHEEL_SIZE];
+	private final long startNanos = System.nanoTime();
+	private long currentTick;
+	private int size;
+	private ScheduledFuture<?> ticker;
+
+	private DeadlineWheel(EventLoop eventLoop) {
+		this.eventLoop = eventLoop;
+	}
+
+	/**
+	 * Start tracking a deadline on the wheel of the deadline context's event loop
+	 * @param deadline deadline to track
+	 */
+	static void schedule(Deadline deadline) {
+		EventLoop loop = deadline.context().nettyEventLoop();
+		if (loop.inEventLoop())
+			forEventLoop(loop).add(deadline);
+		else
+			loop.execute(() -> forEventLoop(loop).add(deadline));
+	}
+
+	private static DeadlineWheel forEventLoop(EventLoop loop) {
+		DeadlineWheel wheel = wheels.get();
+		if (wheel == null)
+			wheels.set(wheel = new DeadlineWheel(loop));
+		return wheel;
+	}
+
+	private long nowTick() {
+		return (System.nanoTime() - startNanos) / TICK_NANOS;
+	}
+
+	private void add(Deadline deadline) {
+		if (deadline.isDone())
+			return;
+		if (size == 0)
+			currentTick = nowTick(); // the wheel was idle, so catch up without scanning
+		long tick = (deadline.expiresAtNanos() - startNanos + TICK_NANOS - 1) / TICK_NANOS;
+		deadline.tick = Math.max(tick, currentTick + 1);
+		int index = (int) (deadline.tick & WHEEL_MASK);
+		deadline.next = slots[index];
+		slots[index] = deadline;
+		if (size++ == 0)
+			ticker = eventLoop.scheduleAtFixedRate(this, TICK_NANOS, TICK_NANOS, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Advance the wheel to the current time, expiring all the deadlines that are due
+	 */
+	@Override
+	public void run() {
+		long now = nowTick();
+		if (now - currentTick > WHEEL_SIZE) // we fell behind by more than a full rotation, no need to visit slots twice
+			currentTick = now - WHEEL_SIZE;
+		while (currentTick < now && size > 0)
+			expireSlot((int) (++currentTick & WHEEL_MASK), now);
+		if (size == 0 && ticker != null) {
+			ticker.cancel(false);
+			ticker = null;
+		}
+	}
+
+	private void expireSlot(int index, long now) {
+		Deadline prev = null;
+		for (Deadline d = slots[index], next; d != null; d = next) {
+			next = d.next;
+			boolean due = d.tick <= now;
+			if (!due && !d.isDone()) {
+				prev = d;
+				continue;
+			}
+			if (prev == null)
+				slots[index] = next;
+			else
+				prev.next = next;
+			d.next = null;
+			size--;
+			if (due)
+				try {
+					d.expire();
+				} catch (Throwable t) {
+					log.error("Failed to process expired deadline {}", d, t);
+				}
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the time from when a handler returned an asynchronous result until that result completed and
+ * was processed.
+ *
+ * @author odeda
+ */
+@Name("tech.greenfield.irked.AsyncCompletion")
+@Label("Async Completion")
+@Description("Time from a handler returning a Future or CompletionStage until its result was processed")
+public class AsyncCompletionEvent extends IrkedEvent {
+
+	private static final EventType type = EventType.getEventType(AsyncCompletionEvent.class);
+
+	/**
+	 * Check whether a recording has enabled this event type, before creating an event. Must only be called if
+	 * {@link FlightRecorderSupport#AVAILABLE}
+	 * @return whether events of this type are recorded
+	 */
+	public static boolean isTypeEnabled() {
+		return type.isEnabled();
+	}
+
+	@Label("Succeeded")
+	public boolean succeeded;
+
+}
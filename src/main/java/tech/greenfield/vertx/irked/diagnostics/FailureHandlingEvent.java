@@ -0,0 +1,35 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the handling of an exception thrown by a request handler.
+ *
+ * @author odeda
+ */
+@Name("tech.greenfield.irked.FailureHandling")
+@Label("Failure Handling")
+@Description("Handling of an exception thrown by a request handler")
+public class FailureHandlingEvent extends IrkedEvent {
+
+	private static final EventType type = EventType.getEventType(FailureHandlingEvent.class);
+
+	/**
+	 * Check whether a recording has enabled this event type, before creating an event. Must only be called if
+	 * {@link FlightRecorderSupport#AVAILABLE}
+	 * @return whether events of this type are recorded
+	 */
+	public static boolean isTypeEnabled() {
+		return type.isEnabled();
+	}
+
+	@Label("Exception")
+	public Class<?> exception;
+
+	@Label("Message")
+	public String message;
+
+}
@@ -0,0 +1,41 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Checks once whether the Java Flight Recorder is available, so that Irked does not depend on it at runtime.
+ *
+ * Code that emits an {@link IrkedEvent} must check {@link #AVAILABLE} before it touches the event class, and then
+ * the event type's {@code isTypeEnabled()} before it creates the event:
+ * <pre>{@code
+ * if (!FlightRecorderSupport.AVAILABLE || !RouteDispatchEvent.isTypeEnabled()) {
+ *     dispatch(r);
+ *     return;
+ * }
+ * RouteDispatchEvent event = new RouteDispatchEvent();
+ * ...
+ * }</pre>
+ * This way, no event is allocated unless a recording has enabled its type, and the event classes are never loaded on
+ * runtime images without the {@code jdk.jfr} module, or on JVMs that do not support JFR.
+ *
+ * @author odeda
+ */
+public final class FlightRecorderSupport {
+
+	/**
+	 * Whether the JVM supports JFR and the {@code jdk.jfr} module is available
+	 */
+	public static final boolean AVAILABLE = isAvailable();
+
+	private FlightRecorderSupport() {
+	}
+
+	private static boolean isAvailable() {
+		try {
+			return FlightRecorder.isAvailable();
+		} catch (LinkageError e) { // the jdk.jfr module was not linked into the runtime image
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the synchronous execution of a request handler.
+ *
+ * @author odeda
+ */
+@Name("tech.greenfield.irked.HandlerInvocation")
+@Label("Handler Invocation")
+@Description("Synchronous execution of a request handler")
+public class HandlerInvocationEvent extends IrkedEvent {
+
+	private static final EventType type = EventType.getEventType(HandlerInvocationEvent.class);
+
+	/**
+	 * Check whether a recording has enabled this event type, before creating an event. Must only be called if
+	 * {@link FlightRecorderSupport#AVAILABLE}
+	 * @return whether events of this type are recorded
+	 */
+	public static boolean isTypeEnabled() {
+		return type.isEnabled();
+	}
+
+}
@@ -0,0 +1,43 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class for the Java Flight Recorder events that Irked emits while processing requests.
+ *
+ * All Irked events are disabled by default and carry the route name - its methods and path pattern, the same name
+ * under which the route's metrics are reported - and the controller class of the route being processed. They are
+ * always compiled in, and can be enabled while investigating latency issues using a JFR configuration file that
+ * enables the {@code tech.greenfield.irked.*} events. Events are only created when JFR is available and their type
+ * is enabled - see {@link FlightRecorderSupport} - so there is no cost to having them in the request processing path,
+ * and no dependency on the {@code jdk.jfr} module when it is not in the runtime image.
+ *
+ * @author odeda
+ */
+@Category("Irked")
+@Enabled(false)
+@StackTrace(false)
+public abstract class IrkedEvent extends jdk.jfr.Event {
+
+	@Label("Route")
+	protected String route;
+
+	@Label("Controller")
+	protected Class<?> controller;
+
+	/**
+	 * Set the route and controller that this event describes
+	 * @param route route name, e.g. "GET /items/:id"
+	 * @param controller class of the controller that handles the route
+	 * @return itself for fluent calls
+	 */
+	public IrkedEvent on(String route, Class<?> controller) {
+		this.route = route;
+		this.controller = controller;
+		return this;
+	}
+
+}
@@ -0,0 +1,79 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.Response;
+import tech.greenfield.vertx.irked.annotations.Get;
+
+/**
+ * An optional admin controller that profiles the Vert.x event loop and worker threads on request, using the
+ * {@link SamplingProfiler}, and returns the result in the collapsed stack format that flame graph tools use. Mount it
+ * on an administrative path, and make sure it is protected by authorization:
+ *
+ * <pre>{@code
+ * router.configure(new ProfilerController(), "/admin/profile");
+ * }</pre>
+ *
+ * The profile is controlled using the following query parameters:
+ * <ul>
+ * <li>{@code seconds} - how long to profile for, by default 10 seconds and up to the maximum set for the controller</li>
+ * <li>{@code rate} - how many times per second to sample each thread, by default 100 and up to 1000</li>
+ * <li>{@code workers} - set to {@literal false} to sample only event loop threads</li>
+ * </ul>
+ *
+ * Only one profile can run at a time - concurrent requests are rejected with a 409 Conflict status.
+ *
+ * @author odeda
+ */
+public class ProfilerController extends Controller {
+
+	private static final AtomicBoolean running = new AtomicBoolean();
+
+	private final int maxSeconds;
+
+	/**
+	 * Create a profiler controller that allows profiling for up to 60 seconds
+	 */
+	public ProfilerController() {
+		this(60);
+	}
+
+	/**
+	 * Create a profiler controller
+	 * @param maxSeconds longest profile that can be requested, in seconds
+	 */
+	public ProfilerController(int maxSeconds) {
+		this.maxSeconds = maxSeconds;
+	}
+
+	@Get("/")
+	WebResult<Request> profile = this::profile;
+
+	private Object profile(Request r) {
+		double seconds;
+		int rate;
+		try {
+			seconds = Double.parseDouble(param(r, "seconds", "10"));
+			rate = Integer.parseInt(param(r, "rate", "100"));
+		} catch (NumberFormatException e) {
+			return Response.badRequest("Invalid profile parameters: " + e.getMessage());
+		}
+		if (seconds <= 0 || seconds > maxSeconds || rate <= 0 || rate > 1000)
+			return Response.badRequest("Profile duration must be up to " + maxSeconds + " seconds, and rate up to 1000 samples per second");
+		if (!running.compareAndSet(false, true))
+			return Response.error(409, "A profile is already running");
+		SamplingProfiler profiler = new SamplingProfiler(Math.round(seconds * 1000), rate,
+				!"false".equals(r.queryParams().get("workers")));
+		return profiler.run(r.vertx())
+				.<Object>map(stacks -> Response.ok(stacks).contentType("text/plain; charset=utf-8"))
+				.onComplete(res -> running.set(false));
+	}
+
+	private static String param(Request r, String name, String defaultValue) {
+		String value = r.queryParams().get(name);
+		return value != null ? value : defaultValue;
+	}
+
+}
@@ -0,0 +1,29 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the construction of a controller specific request context.
+ *
+ * @author odeda
+ */
+@Name("tech.greenfield.irked.RequestContext")
+@Label("Request Context Construction")
+@Description("Construction of a controller specific request context")
+public class RequestContextEvent extends IrkedEvent {
+
+	private static final EventType type = EventType.getEventType(RequestContextEvent.class);
+
+	/**
+	 * Check whether a recording has enabled this event type, before creating an event. Must only be called if
+	 * {@link FlightRecorderSupport#AVAILABLE}
+	 * @return whether events of this type are recorded
+	 */
+	public static boolean isTypeEnabled() {
+		return type.isEnabled();
+	}
+
+}
@@ -0,0 +1,112 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Timeline of the handlers that processed a request: which handler ran, on which thread, and when its synchronous
+ * execution started and ended. The gaps between consecutive segments are the time the request spent waiting for
+ * asynchronous work or being routed.
+ *
+ * Timelines are only tracked for requests when a {@link SlowRequestRecorder} is enabled on the router, and they store
+ * their segments in fixed size arrays, so recording a segment does not allocate.
+ *
+ * @author odeda
+ */
+public class RequestTimeline {
+
+	/**
+	 * Routing context data field under which the timeline of a request is stored
+	 */
+	public static final String CONTEXT_FIELD = "irked.request-timeline";
+
+	private static final int MAX_SEGMENTS = 64;
+
+	private final long startNanos;
+	private final String[] routes = new String[MAX_SEGMENTS];
+	private final Object[] handlers = new Object[MAX_SEGMENTS];
+	private final Thread[] threads = new Thread[MAX_SEGMENTS];
+	private final long[] starts = new long[MAX_SEGMENTS];
+	private final long[] ends = new long[MAX_SEGMENTS];
+	private int count;
+	private int dropped;
+
+	RequestTimeline(long startNanos) {
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * Retrieve the timeline of a request
+	 * @param ctx routing context of the request
+	 * @return the request's timeline, or {@code null} if a timeline is not tracked for the request
+	 */
+	public static RequestTimeline of(RoutingContext ctx) {
+		return ctx.get(CONTEXT_FIELD);
+	}
+
+	/**
+	 * Record the start of the synchronous execution of a handler
+	 * @param route route that the handler implements
+	 * @param handler the handler, whose description will be reported using its {@code toString()}
+	 * @return identifier of the segment to pass to {@link #end(int)}, or -1 if the timeline is full
+	 */
+	public synchronized int begin(String route, Object handler) {
+		if (count == MAX_SEGMENTS) {
+			dropped++;
+			return -1;
+		}
+		routes[count] = route;
+		handlers[count] = handler;
+		threads[count] = Thread.currentThread();
+		starts[count] = System.nanoTime();
+		return count++;
+	}
+
+	/**
+	 * Record the end of the synchronous execution of a handler
+	 * @param segment identifier returned by {@link #begin(String, Object)}
+	 */
+	public synchronized void end(int segment) {
+		if (segment >= 0)
+			ends[segment] = System.nanoTime();
+	}
+
+	/**
+	 * Retrieve the monotonic time at which the request started processing
+	 * @return start time in nanoseconds, as reported by {@link System#nanoTime()}
+	 */
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * Render the timeline as JSON
+	 * @param endNanos time at which the request completed, used for handlers that did not return
+	 * @return a list of segments, each with the route, handler description, thread name, start offset from the start of
+	 *   the request, synchronous duration and the gap from the end of the previous segment - all in milliseconds
+	 */
+	public synchronized JsonArray toJson(long endNanos) {
+		JsonArray out = new JsonArray();
+		long previousEnd = startNanos;
+		for (int i = 0; i < count; i++) {
+			long end = ends[i] > 0 ? ends[i] : endNanos;
+			out.add(new JsonObject()
+					.put("route", routes[i])
+					.put("handler", String.valueOf(handlers[i]))
+					.put("thread", threads[i].getName())
+					.put("start", millis(starts[i] - startNanos))
+					.put("duration", millis(end - starts[i]))
+					.put("gap", millis(Math.max(0, starts[i] - previousEnd))));
+			previousEnd = Math.max(previousEnd, end);
+		}
+		if (dropped > 0)
+			out.add(new JsonObject().put("dropped", dropped));
+		return out;
+	}
+
+	static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+}
@@ -0,0 +1,30 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the processing of a request by an Irked route, including the construction of the request
+ * context and the handler invocation.
+ *
+ * @author odeda
+ */
+@Name("tech.greenfield.irked.RouteDispatch")
+@Label("Route Dispatch")
+@Description("Processing of a request by an Irked route, including the construction of the request context and the handler invocation")
+public class RouteDispatchEvent extends IrkedEvent {
+
+	private static final EventType type = EventType.getEventType(RouteDispatchEvent.class);
+
+	/**
+	 * Check whether a recording has enabled this event type, before creating an event. Must only be called if
+	 * {@link FlightRecorderSupport#AVAILABLE}
+	 * @return whether events of this type are recorded
+	 */
+	public static boolean isTypeEnabled() {
+		return type.isEnabled();
+	}
+
+}
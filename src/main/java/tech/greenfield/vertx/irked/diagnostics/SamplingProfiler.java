@@ -0,0 +1,172 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import tech.greenfield.vertx.irked.metrics.BlockingMonitor;
+import tech.greenfield.vertx.irked.metrics.RouteMetrics;
+
+/**
+ * In-process sampling profiler for the Vert.x event loop and worker threads.
+ *
+ * While running, a background thread periodically captures the stack of each Vert.x thread and counts identical
+ * stacks. The result is rendered in the "collapsed stack" format used by flame graph tools: one line per distinct
+ * stack, with the semicolon separated frames from the root to the leaf followed by the number of samples. The first
+ * frame is the thread's pool name (e.g. {@code vert.x-eventloop-thread}), and if an Irked handler was executing on the
+ * thread when it was sampled, the second frame is the handler's route in square brackets (e.g.
+ * {@code [GET /items/:id]}), so the flame graph is grouped by route. Routes are known for handlers of routers that
+ * have metrics enabled, on event loop and worker threads alike.
+ *
+ * The sampled threads are found by walking the JVM's thread groups, which - unlike listing all stack traces - does not
+ * pause the application, and the list is refreshed every 100 milliseconds so that threads started during profiling
+ * are sampled.
+ *
+ * Memory use is bounded: the distinct stacks that are kept take up to {@code irked.profiler.max-bytes} (default 8MB)
+ * - samples of additional stacks are counted under a {@code [truncated]} frame - and only the innermost 128 frames of
+ * each stack are used.
+ *
+ * @author odeda
+ */
+public class SamplingProfiler {
+
+	private static final long MAX_BYTES = Long.getLong("irked.profiler.max-bytes", 8 * 1024 * 1024);
+	private static final int MAX_DEPTH = 128;
+	private static final int ENTRY_OVERHEAD = 64; // approximate size of a map entry and the key's string object
+	private static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final String[] EVENT_LOOP_THREADS = { "vert.x-eventloop-thread-" };
+	private static final String[] ALL_THREADS = { "vert.x-eventloop-thread-", "vert.x-worker-thread-",
+			"vert.x-internal-blocking-" };
+
+	private final long durationNanos;
+	private final long intervalNanos;
+	private final String[] threadPrefixes;
+	private final Map<String, Long> stacks = new HashMap<>();
+	private long samples;
+	private long bytes;
+
+	/**
+	 * Create a new profiler
+	 * @param durationMillis number of milliseconds to profile for
+	 * @param samplesPerSecond how many times per second to sample each thread
+	 * @param includeWorkers whether to sample worker threads in addition to event loop threads
+	 */
+	public SamplingProfiler(long durationMillis, int samplesPerSecond, boolean includeWorkers) {
+		this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(samplesPerSecond, 1);
+		this.threadPrefixes = includeWorkers ? ALL_THREADS : EVENT_LOOP_THREADS;
+	}
+
+	/**
+	 * Run the profiler on a background thread
+	 * @param vertx Vert.x instance whose threads should be sampled
+	 * @return a future that will be completed, on the caller's context, with the collapsed stacks when profiling is done
+	 */
+	public Future<String> run(Vertx vertx) {
+		Context context = vertx.getOrCreateContext();
+		Promise<String> result = Promise.promise();
+		Thread sampler = new Thread(() -> {
+			try {
+				sample();
+				String output = collapsed();
+				context.runOnContext(v -> result.complete(output));
+			} catch (Throwable t) {
+				context.runOnContext(v -> result.fail(t));
+			}
+		}, "irked-profiler");
+		sampler.setDaemon(true);
+		sampler.start();
+		return result.future();
+	}
+
+	/**
+	 * Retrieve the number of thread samples taken
+	 * @return number of stacks sampled
+	 */
+	public synchronized long getSampleCount() {
+		return samples;
+	}
+
+	/**
+	 * Render the samples taken so far in the collapsed stack format
+	 * @return a line for each distinct stack, with the number of times it was sampled
+	 */
+	public synchronized String collapsed() {
+		StringBuilder out = new StringBuilder(stacks.size() * 128);
+		stacks.forEach((stack, count) -> out.append(stack).append(' ').append(count).append('\n'));
+		return out.toString();
+	}
+
+	private void sample() {
+		List<Thread> threads = new ArrayList<>();
+		long end = System.nanoTime() + durationNanos, refresh = 0;
+		StringBuilder stack = new StringBuilder(1024);
+		for (long next = System.nanoTime(); next < end; next += intervalNanos) {
+			if (next - refresh >= 0) {
+				findThreads(threads);
+				refresh = next + REFRESH_NANOS;
+			}
+			for (Thread thread : threads)
+				record(thread, stack);
+			long wait = next + intervalNanos - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+			if (Thread.interrupted())
+				return;
+		}
+	}
+
+	private void findThreads(List<Thread> threads) {
+		ThreadGroup root = Thread.currentThread().getThreadGroup();
+		while (root.getParent() != null)
+			root = root.getParent();
+		Thread[] all;
+		int count;
+		do { // grow the array until all the threads fit, in case threads are started while enumerating
+			all = new Thread[root.activeCount() * 2 + 16];
+			count = root.enumerate(all, true);
+		} while (count == all.length);
+		threads.clear();
+		for (Thread thread : Arrays.asList(all).subList(0, count))
+			for (String prefix : threadPrefixes)
+				if (thread.getName().startsWith(prefix))
+					threads.add(thread);
+	}
+
+	private void record(Thread thread, StringBuilder stack) {
+		RouteMetrics route = BlockingMonitor.activeRoute(thread);
+		StackTraceElement[] frames = thread.getStackTrace();
+		if (frames.length == 0)
+			return; // thread has terminated
+		stack.setLength(0);
+		String name = thread.getName();
+		stack.append(name, 0, name.lastIndexOf('-'));
+		if (route != null)
+			stack.append(";[").append(route.getName()).append(']');
+		int truncateAt = stack.length();
+		for (int i = Math.min(frames.length, MAX_DEPTH) - 1; i >= 0; i--)
+			stack.append(';').append(frames[i].getClassName()).append('.').append(frames[i].getMethodName());
+		synchronized (this) {
+			samples++;
+			String key = stack.toString();
+			if (!stacks.containsKey(key)) {
+				if (bytes + key.length() + ENTRY_OVERHEAD > MAX_BYTES) {
+					stack.setLength(truncateAt);
+					key = stack.append(";[truncated]").toString();
+				}
+				if (!stacks.containsKey(key))
+					bytes += key.length() + ENTRY_OVERHEAD;
+			}
+			stacks.merge(key, 1L, Long::sum);
+		}
+	}
+
+}
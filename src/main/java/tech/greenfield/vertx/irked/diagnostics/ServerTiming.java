@@ -0,0 +1,156 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import java.util.Objects;
+
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Per-request breakdown of where the server spent its time, reported to the client using a
+ * <a href="https://www.w3.org/TR/server-timing/">{@code Server-Timing}</a> response header.
+ *
+ * The request processing is modeled as a sequence of stages: each call to {@link #enter(String, String)} records the
+ * monotonic time at which a new stage started, which is also when the previous stage ended. The stages that Irked
+ * records are:
+ * <ul>
+ * <li>{@value #MATCH} - routing the request to the next handler</li>
+ * <li>{@value #CONTEXT} - constructing the request context for a handler</li>
+ * <li>{@value #HANDLER} - running a handler, until it returned or passed the request to the next handler</li>
+ * <li>{@value #WAIT} - waiting for asynchronous work, after a handler returned</li>
+ * <li>{@value #SERIALIZE} - encoding the response body</li>
+ * <li>{@value #WRITE} - writing the response, until the headers were sent</li>
+ * </ul>
+ * Stages for a specific handler are described with the handler's route. The header also includes a {@code total}
+ * entry for the time from when routing started until the response headers were sent.
+ *
+ * Timestamps are stored in small fixed size arrays that are allocated with the tracker, so tracking a request costs
+ * the tracker, its three arrays, a routing context entry and a headers end handler - and no further allocations until
+ * the header is generated. Server timing is enabled using
+ * {@link tech.greenfield.vertx.irked.Router#enableServerTiming(double)}; requests handled by a router that did not
+ * enable it are not tracked and do not look up a tracker.
+ *
+ * @author odeda
+ */
+public class ServerTiming {
+
+	/**
+	 * Routing context data field under which the server timing of a request is stored
+	 */
+	public static final String CONTEXT_FIELD = "irked.server-timing";
+	/**
+	 * Stage of routing the request to the next handler
+	 */
+	public static final String MATCH = "match";
+	/**
+	 * Stage of constructing the request context for a handler
+	 */
+	public static final String CONTEXT = "ctx";
+	/**
+	 * Stage of running a handler, until it returns or passes the request to the next handler
+	 */
+	public static final String HANDLER = "handler";
+	/**
+	 * Stage of waiting for asynchronous work, after a handler returned
+	 */
+	public static final String WAIT = "wait";
+	/**
+	 * Stage of encoding the response body
+	 */
+	public static final String SERIALIZE = "serialize";
+	/**
+	 * Stage of writing the response, until the headers are sent
+	 */
+	public static final String WRITE = "write";
+
+	private static final int MAX_STAGES = 32;
+
+	private final long startNanos;
+	private final long[] nanos = new long[MAX_STAGES];
+	private final String[] stages = new String[MAX_STAGES];
+	private final String[] descriptions = new String[MAX_STAGES];
+	private int count;
+
+	private ServerTiming(long startNanos) {
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * Start tracking the server timing of a request. The {@code Server-Timing} header will be added to the response
+	 * when its headers are sent.
+	 * @param ctx routing context of the request
+	 * @return the server timing tracker for the request
+	 */
+	public static ServerTiming start(RoutingContext ctx) {
+		ServerTiming timing = new ServerTiming(System.nanoTime());
+		ctx.put(CONTEXT_FIELD, timing);
+		ctx.addHeadersEndHandler(v -> ctx.response().putHeader("Server-Timing", timing.toHeader(System.nanoTime())));
+		timing.enter(MATCH, null);
+		return timing;
+	}
+
+	/**
+	 * Retrieve the server timing tracker of a request
+	 * @param ctx routing context of the request
+	 * @return the request's server timing tracker, or {@code null} if server timing is not tracked for the request
+	 */
+	public static ServerTiming of(RoutingContext ctx) {
+		return ctx.get(CONTEXT_FIELD);
+	}
+
+	/**
+	 * Record the start of a new processing stage of a request, if server timing is tracked for it
+	 * @param ctx routing context of the request
+	 * @param stage name of the stage
+	 * @param description description of the stage, such as the route being processed, or {@code null}
+	 */
+	public static void enter(RoutingContext ctx, String stage, String description) {
+		ServerTiming timing = of(ctx);
+		if (timing != null)
+			timing.enter(stage, description);
+	}
+
+	/**
+	 * Record the start of a new processing stage, ending the current stage
+	 * @param stage name of the stage, which must be a valid HTTP token
+	 * @param description description of the stage, such as the route being processed, or {@code null}
+	 */
+	public void enter(String stage, String description) {
+		if (count > 0 && stages[count - 1].equals(stage) && Objects.equals(descriptions[count - 1], description))
+			return; // still in the same stage
+		if (count == MAX_STAGES)
+			return; // the rest of the processing is attributed to the last stage
+		nanos[count] = System.nanoTime();
+		stages[count] = stage;
+		descriptions[count++] = description;
+	}
+
+	/**
+	 * Generate the {@code Server-Timing} header value
+	 * @param endNanos monotonic time at which the last stage ended
+	 * @return header value listing the duration of each stage
+	 */
+	String toHeader(long endNanos) {
+		StringBuilder header = new StringBuilder(count * 32 + 16);
+		for (int i = 0; i < count; i++) {
+			long duration = (i + 1 < count ? nanos[i + 1] : endNanos) - nanos[i];
+			header.append(stages[i]).append(";dur=");
+			appendMillis(header, duration);
+			if (descriptions[i] != null)
+				header.append(";desc=\"").append(descriptions[i].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+			header.append(", ");
+		}
+		header.append("total;dur=");
+		appendMillis(header, endNanos - startNanos);
+		return header.toString();
+	}
+
+	private static void appendMillis(StringBuilder out, long nanos) {
+		long micros = nanos / 1000;
+		out.append(micros / 1000).append('.');
+		long fraction = micros % 1000;
+		if (fraction < 100)
+			out.append('0');
+		if (fraction < 10)
+			out.append('0');
+		out.append(fraction);
+	}
+}
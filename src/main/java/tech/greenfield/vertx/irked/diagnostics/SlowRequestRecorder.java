@@ -0,0 +1,147 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Captures requests whose processing took longer than a threshold, together with the {@link RequestTimeline} of the
+ * handlers that processed them.
+ *
+ * When enabled using {@link tech.greenfield.vertx.irked.Router#recordSlowRequests(long)}, a timeline is tracked for
+ * every request, and when a request completes after more than the threshold, its timeline is logged at the WARN level,
+ * published to any registered listeners and stored in a bounded ring buffer of recent slow requests, that can be
+ * queried using {@link #recent()} or exposed using the {@link SlowRequestsController}.
+ *
+ * @author odeda
+ */
+public class SlowRequestRecorder {
+
+	private static final Logger log = LoggerFactory.getLogger(SlowRequestRecorder.class);
+	private static final int DEFAULT_CAPACITY = 100;
+
+	private final long thresholdNanos;
+	private final AtomicReferenceArray<JsonObject> recent;
+	private final AtomicLong recorded = new AtomicLong();
+	private final List<Handler<JsonObject>> listeners = new CopyOnWriteArrayList<>();
+	private volatile boolean logging = true;
+
+	/**
+	 * Create a new recorder that keeps the 100 most recent slow requests
+	 * @param thresholdMillis number of milliseconds after which a request is considered slow
+	 */
+	public SlowRequestRecorder(long thresholdMillis) {
+		this(thresholdMillis, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a new recorder
+	 * @param thresholdMillis number of milliseconds after which a request is considered slow
+	 * @param capacity number of recent slow requests to keep
+	 */
+	public SlowRequestRecorder(long thresholdMillis, int capacity) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.recent = new AtomicReferenceArray<>(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Register a listener to be called with the report of each slow request
+	 * @param listener handler that will receive slow request reports, in the format described in {@link #recent()}
+	 * @return itself for fluent calls
+	 */
+	public SlowRequestRecorder onSlowRequest(Handler<JsonObject> listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Set whether slow requests are logged
+	 * @param logging whether to log the timeline of slow requests at the WARN level (the default)
+	 * @return itself for fluent calls
+	 */
+	public SlowRequestRecorder setLogging(boolean logging) {
+		this.logging = logging;
+		return this;
+	}
+
+	/**
+	 * Start tracking the timeline of a request. Called by the router for each request.
+	 * @param ctx routing context of the request
+	 */
+	public void start(RoutingContext ctx) {
+		RequestTimeline timeline = new RequestTimeline(System.nanoTime());
+		ctx.put(RequestTimeline.CONTEXT_FIELD, timeline);
+		ctx.addEndHandler(res -> {
+			long end = System.nanoTime();
+			if (end - timeline.getStartNanos() >= thresholdNanos)
+				record(ctx, timeline, end, res.failed());
+		});
+	}
+
+	private void record(RoutingContext ctx, RequestTimeline timeline, long endNanos, boolean cancelled) {
+		JsonObject report = new JsonObject()
+				.put("timestamp", Instant.now().toString())
+				.put("method", ctx.request().method().name())
+				.put("uri", ctx.request().uri())
+				.put("status", ctx.response().getStatusCode())
+				.put("cancelled", cancelled)
+				.put("duration", RequestTimeline.millis(endNanos - timeline.getStartNanos()))
+				.put("timeline", timeline.toJson(endNanos));
+		recent.set((int) (recorded.getAndIncrement() % recent.length()), report);
+		if (logging)
+			log.warn("Slow request {} {} took {}ms: {}", ctx.request().method(), ctx.request().uri(),
+					report.getDouble("duration"), report.getJsonArray("timeline").encode());
+		for (Handler<JsonObject> listener : listeners)
+			try {
+				listener.handle(report);
+			} catch (Throwable t) {
+				log.error("Slow request listener {} failed", listener, t);
+			}
+	}
+
+	/**
+	 * Retrieve the threshold after which requests are considered slow
+	 * @return threshold, in milliseconds
+	 */
+	public long getThreshold() {
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	/**
+	 * Retrieve the total number of slow requests recorded
+	 * @return number of slow requests recorded, including those that are no longer retained
+	 */
+	public long getCount() {
+		return recorded.get();
+	}
+
+	/**
+	 * List the recent slow requests, newest first. Each request is reported as a JSON object with the fields
+	 * {@code timestamp}, {@code method}, {@code uri}, {@code status}, {@code cancelled}, {@code duration} (in
+	 * milliseconds) and {@code timeline}, as described in {@link RequestTimeline#toJson(long)}.
+	 * @return list of recent slow request reports
+	 */
+	public JsonArray recent() {
+		List<JsonObject> out = new ArrayList<>();
+		long last = recorded.get();
+		for (long i = last - 1; i >= 0 && i >= last - recent.length(); i--) {
+			JsonObject report = recent.get((int) (i % recent.length()));
+			if (report != null)
+				out.add(report);
+		}
+		return new JsonArray(out);
+	}
+
+}
@@ -0,0 +1,43 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import io.vertx.core.json.JsonObject;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.Response;
+import tech.greenfield.vertx.irked.Router;
+import tech.greenfield.vertx.irked.annotations.Get;
+
+/**
+ * An optional admin controller that lists the recent slow requests captured by the {@link SlowRequestRecorder} of the
+ * router it is configured on. Mount it on an administrative path:
+ *
+ * <pre>{@code
+ * router.recordSlowRequests(500).configure(new SlowRequestsController(), "/admin/slow-requests");
+ * }</pre>
+ *
+ * The response is a JSON object with the recorder's {@code threshold} (in milliseconds), the total {@code count} of
+ * slow requests recorded and the list of recent slow {@code requests}, as described in {@link SlowRequestRecorder#recent()}.
+ *
+ * @author odeda
+ */
+public class SlowRequestsController extends Controller {
+
+	private Router router;
+
+	@Override
+	protected void onConfigure(Router router) {
+		this.router = router;
+	}
+
+	@Get("/")
+	WebResult<Request> list = r -> {
+		SlowRequestRecorder recorder = router.slowRequests();
+		if (recorder == null)
+			return Response.notFound("Slow request recording is not enabled");
+		return new JsonObject()
+				.put("threshold", recorder.getThreshold())
+				.put("count", recorder.getCount())
+				.put("requests", recorder.recent());
+	};
+
+}
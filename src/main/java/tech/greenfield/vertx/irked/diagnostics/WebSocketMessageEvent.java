@@ -0,0 +1,29 @@
+package tech.greenfield.vertx.irked.diagnostics;
+
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the execution of a WebSocket message handler.
+ *
+ * @author odeda
+ */
+@Name("tech.greenfield.irked.WebSocketMessage")
+@Label("WebSocket Message Dispatch")
+@Description("Execution of a WebSocket message handler")
+public class WebSocketMessageEvent extends IrkedEvent {
+
+	private static final EventType type = EventType.getEventType(WebSocketMessageEvent.class);
+
+	/**
+	 * Check whether a recording has enabled this event type, before creating an event. Must only be called if
+	 * {@link FlightRecorderSupport#AVAILABLE}
+	 * @return whether events of this type are recorded
+	 */
+	public static boolean isTypeEnabled() {
+		return type.isEnabled();
+	}
+
+}
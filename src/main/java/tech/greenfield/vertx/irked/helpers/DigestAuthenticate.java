@@ -1,8 +1,7 @@
 package tech.greenfield.vertx.irked.helpers;
 
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -14,15 +13,6 @@ import tech.greenfield.vertx.irked.status.Unauthorized;
 public class DigestAuthenticate extends Unauthorized {
 
 	private static final long serialVersionUID = 1633008924546501215L;
-	private static SecureRandom rand;
-	
-	static {
-		try {
-			rand = SecureRandom.getInstance("SHA1PRNG");
-		} catch (NoSuchAlgorithmException e) { // shouldn't happen - every JVM must have this implementation
-			rand = null;
-		}
-	}
 	
 	public DigestAuthenticate(String realm) {
 		this(realm, "");
@@ -45,18 +35,32 @@ public class DigestAuthenticate extends Unauthorized {
 	}
 	
 	public DigestAuthenticate(String realm, String nonce, String opaque, String algorithm, boolean allowQopIntegrity) {
+		this(realm, nonce, opaque, algorithm, allowQopIntegrity, false);
+	}
+
+	/**
+	 * Create a Digest challenge
+	 * @param realm protection space of the challenge
+	 * @param nonce nonce for the client to use in its response
+	 * @param opaque opaque value that the client should send back
+	 * @param algorithm RFC 7616 algorithm for the client to use, such as "MD5", "SHA-256" or "SHA-512-256"
+	 * @param allowQopIntegrity whether to offer the "auth-int" quality of protection
+	 * @param userhash whether to allow the client to send a hash of the username, as per RFC 7616 section 3.4.4
+	 */
+	public DigestAuthenticate(String realm, String nonce, String opaque, String algorithm, boolean allowQopIntegrity, boolean userhash) {
 		addHeader("WWW-Authenticate", "Digest " + Stream.of(
 				"realm=\"" + realm + "\"",
 				"qop=\"auth" + (allowQopIntegrity ? ", auth-int" : "") + "\"",
-				"algorithm=\"" + algorithm + "\"",
+				"algorithm=" + algorithm,
 				"nonce=\"" + nonce + "\"",
-				"opaque=\"" + opaque + "\""
-				).collect(Collectors.joining(", ")));
+				"opaque=\"" + opaque + "\"",
+				userhash ? "userhash=true" : null
+				).filter(Objects::nonNull).collect(Collectors.joining(", ")));
 	}
 
 	public static String generateNonce(String tag, long expiry) {
 		byte[] randdata = new byte[8];
-		rand.nextBytes(randdata);
+		ThreadRandom.nextBytes(randdata);
 		String nonce = String.valueOf(System.currentTimeMillis() / 1000 + expiry) + ":" + tag + ":" + ParameterEncodedAuthorizationToken.toHex(randdata);
 		return Base64.getEncoder().encodeToString(Buffer.buffer(nonce).getBytes());
 	}
@@ -0,0 +1,293 @@
+package tech.greenfield.vertx.irked.helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+import tech.greenfield.vertx.irked.auth.DigestAuthorizationToken;
+import tech.greenfield.vertx.irked.auth.ParameterEncodedAuthorizationToken;
+
+/**
+ * Issues and validates Digest authentication nonces.
+ *
+ * Nonces are signed with HMAC-SHA256 and carry their expiry time, so they can be verified without keeping server
+ * state - and by any server that shares the same key. The nonce format is compatible with
+ * {@link DigestAuthorizationToken#isNonceStale(int)}.
+ *
+ * In addition, the nonce counts ({@code nc}) used with each nonce are tracked to detect replayed requests. Each nonce
+ * keeps a window of the last 64 nonce counts, so that concurrent requests that arrive out of order are accepted. The
+ * tracking is bounded: nonces are dropped when they expire, or when more than the configured number of nonces are
+ * tracked - in which case the least recently tracked nonces are dropped and will be reported as stale, causing the
+ * client to be challenged again with a new nonce. The tracking table is split into independently locked stripes so
+ * that event loops rarely contend on it.
+ *
+ * Nonce counts are only sent by clients that use the {@code qop} parameter, which RFC 7616 requires, so tokens without
+ * it are rejected as invalid. Legacy RFC 2069 clients, that don't send it, can be accepted using
+ * {@link #setAllowMissingQop(boolean)} - at the cost of replay protection for their requests.
+ *
+ * Typical usage:
+ * <pre>{@code
+ * DigestNonces nonces = new DigestNonces(300);
+ * ...
+ * DigestAuthorizationToken auth = (DigestAuthorizationToken) r.getAuthorization();
+ * if (!auth.isValid() || !auth.validateResponse(password, r) || nonces.check(auth) != DigestNonces.Status.VALID)
+ *     throw new DigestAuthenticate(realm, nonces.generate(), opaque, "SHA-256");
+ * }</pre>
+ *
+ * @author odeda
+ */
+public class DigestNonces {
+
+	/**
+	 * Result of a nonce validation
+	 */
+	public enum Status {
+		/**
+		 * The nonce was issued by this instance (or with the same key), has not expired and the nonce count was not
+		 * used before
+		 */
+		VALID,
+		/**
+		 * The nonce was not issued with this key, or the token is malformed
+		 */
+		INVALID,
+		/**
+		 * The nonce was valid but it has expired, or it is no longer tracked - the client should be challenged again
+		 * with a new nonce
+		 */
+		STALE,
+		/**
+		 * The nonce count was already used with this nonce
+		 */
+		REPLAYED
+	}
+
+	/**
+	 * Default maximal number of tracked nonces
+	 */
+	public static final int DEFAULT_MAX_TRACKED_NONCES = 65536;
+
+	private static final int RANDOM_LENGTH = 8;
+	private static final int SIGNATURE_LENGTH = 16;
+	private static final int WINDOW_SIZE = Long.SIZE;
+
+	private final HmacKey key;
+	private final long lifetime;
+	private final Stripes<Stripe> stripes;
+	private volatile boolean allowMissingQop;
+	private volatile Clock clock = Clock.systemUTC();
+
+	/**
+	 * Create a nonce manager with a random key, for a single server
+	 * @param lifetime number of seconds that issued nonces are valid for
+	 */
+	public DigestNonces(long lifetime) {
+		this(HmacKey.randomKey(), lifetime, DEFAULT_MAX_TRACKED_NONCES);
+	}
+
+	/**
+	 * Create a nonce manager
+	 * @param key secret key to sign nonces with - servers that share the key accept each other's nonces
+	 * @param lifetime number of seconds that issued nonces are valid for
+	 * @param maxTrackedNonces maximal number of nonces to track nonce counts for
+	 */
+	public DigestNonces(byte[] key, long lifetime, int maxTrackedNonces) {
+		if (Objects.requireNonNull(key).length == 0)
+			throw new IllegalArgumentException("Nonce signing key must not be empty");
+		if (lifetime <= 0 || maxTrackedNonces <= 0)
+			throw new IllegalArgumentException("Nonce lifetime and the number of tracked nonces must be positive");
+		this.key = new HmacKey(key);
+		this.lifetime = lifetime;
+		stripes = new Stripes<>(maxTrackedNonces, Stripe::new);
+	}
+
+	/**
+	 * Accept Digest tokens without the {@code qop} parameter, as sent by legacy RFC 2069 clients. Such tokens carry no
+	 * nonce count, so {@link #check(DigestAuthorizationToken)} can't detect when they are replayed, and a captured
+	 * request can be repeated until its nonce expires. Disabled by default.
+	 * @param allow whether to accept tokens without the {@code qop} parameter
+	 * @return itself for fluent calls
+	 */
+	public DigestNonces setAllowMissingQop(boolean allow) {
+		allowMissingQop = allow;
+		return this;
+	}
+
+	/**
+	 * Set the clock used to issue nonces with an expiry time and to check whether they have expired
+	 * @param clock clock to use instead of the system clock
+	 * @return itself for fluent calls
+	 */
+	public DigestNonces setClock(Clock clock) {
+		this.clock = Objects.requireNonNull(clock);
+		return this;
+	}
+
+	/**
+	 * Issue a new nonce
+	 * @return a new signed nonce
+	 */
+	public String generate() {
+		return generate("");
+	}
+
+	/**
+	 * Issue a new nonce with an application specific tag
+	 * @param tag text to embed in the nonce, that must not contain a colon
+	 * @return a new signed nonce
+	 */
+	public String generate(String tag) {
+		if (tag.indexOf(':') >= 0)
+			throw new IllegalArgumentException("Nonce tag must not contain a colon");
+		byte[] randomData = new byte[RANDOM_LENGTH];
+		ThreadRandom.nextBytes(randomData);
+		String content = (currentTimeSeconds() + lifetime) + ":" + tag + ":" + ParameterEncodedAuthorizationToken.toHex(randomData);
+		String nonce = content + ParameterEncodedAuthorizationToken.toHex(sign(content));
+		return Base64.getEncoder().encodeToString(nonce.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Verify that a nonce was issued with this key and has not expired, without checking nonce counts
+	 * @param nonce nonce to verify
+	 * @return {@link Status#VALID}, {@link Status#STALE} or {@link Status#INVALID}
+	 */
+	public Status verify(String nonce) {
+		long expiry = expiryOf(nonce);
+		if (expiry < 0)
+			return Status.INVALID;
+		return expiry < currentTimeSeconds() ? Status.STALE : Status.VALID;
+	}
+
+	/**
+	 * Check the nonce and nonce count of a Digest authorization token, and record the nonce count as used.
+	 * This method should be called only after the token's response was validated, so that requests with invalid
+	 * credentials do not consume nonce counts.
+	 * @param token Digest authorization token with a validated response
+	 * @return the status of the nonce and nonce count - {@link Status#INVALID} if the token has no {@code qop}
+	 *   parameter, unless {@link #setAllowMissingQop(boolean) allowed}
+	 */
+	public Status check(DigestAuthorizationToken token) {
+		String nonce = token.getParameter("nonce");
+		long expiry = expiryOf(nonce);
+		if (expiry < 0)
+			return Status.INVALID;
+		long now = currentTimeSeconds();
+		if (expiry < now)
+			return Status.STALE;
+		if (Objects.isNull(token.getParameter("qop"))) // RFC 2069 - no nonce count to check
+			return allowMissingQop ? Status.VALID : Status.INVALID;
+		long nc;
+		try {
+			nc = Long.parseLong(Objects.requireNonNull(token.getParameter("nc")), 16);
+		} catch (NumberFormatException | NullPointerException e) {
+			return Status.INVALID;
+		}
+		if (nc <= 0)
+			return Status.INVALID;
+		return stripes.of(nonce).record(nonce, expiry, nc, now);
+	}
+
+	private long currentTimeSeconds() {
+		return clock.millis() / 1000;
+	}
+
+	/**
+	 * Decode and verify the signature of a nonce
+	 * @return the expiry time of the nonce, or -1 if it is not a valid nonce
+	 */
+	private long expiryOf(String nonce) {
+		if (Objects.isNull(nonce))
+			return -1;
+		String text;
+		try {
+			text = new String(Base64.getDecoder().decode(nonce), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+		int expiryEnd = text.indexOf(':'), tagEnd = text.indexOf(':', expiryEnd + 1);
+		int signatureStart = tagEnd + 1 + RANDOM_LENGTH * 2;
+		if (expiryEnd <= 0 || tagEnd < 0 || text.length() != signatureStart + SIGNATURE_LENGTH * 2)
+			return -1;
+		byte[] signature = sign(text.substring(0, signatureStart));
+		if (!MessageDigest.isEqual(ParameterEncodedAuthorizationToken.toHex(signature).getBytes(StandardCharsets.US_ASCII),
+				text.substring(signatureStart).getBytes(StandardCharsets.US_ASCII)))
+			return -1;
+		try {
+			return Long.parseLong(text.substring(0, expiryEnd));
+		} catch (NumberFormatException e) { // can't really happen for a correctly signed nonce
+			return -1;
+		}
+	}
+
+	private byte[] sign(String content) {
+		byte[] mac = key.mac().doFinal(content.getBytes(StandardCharsets.UTF_8));
+		byte[] signature = new byte[SIGNATURE_LENGTH];
+		System.arraycopy(mac, 0, signature, 0, SIGNATURE_LENGTH);
+		return signature;
+	}
+
+	/**
+	 * Nonce count window of a tracked nonce: the highest nonce count seen and a bit mask of the nonce counts
+	 * that were seen below it
+	 */
+	private static class Window {
+		final long expiry;
+		long highest;
+		long seen;
+
+		Window(long expiry) {
+			this.expiry = expiry;
+		}
+
+		boolean accept(long nc) {
+			if (nc > highest) {
+				long shift = nc - highest;
+				seen = (shift >= WINDOW_SIZE ? 0 : seen << shift) | 1;
+				highest = nc;
+				return true;
+			}
+			long offset = highest - nc;
+			if (offset >= WINDOW_SIZE || (seen & (1L << offset)) != 0)
+				return false;
+			seen |= 1L << offset;
+			return true;
+		}
+	}
+
+	/**
+	 * A part of the nonce tracking table, with its own lock
+	 */
+	private static class Stripe {
+		private final LinkedHashMap<String, Window> windows = new LinkedHashMap<>();
+		private final int capacity;
+		// nonces that expire at or before this time are not tracked anymore, even if they are still valid
+		private long evictedUntil;
+
+		Stripe(int capacity) {
+			this.capacity = capacity;
+		}
+
+		synchronized Status record(String nonce, long expiry, long nc, long now) {
+			Window window = windows.get(nonce);
+			if (Objects.isNull(window)) {
+				if (expiry <= evictedUntil)
+					return Status.STALE;
+				for (Iterator<Window> it = windows.values().iterator(); it.hasNext(); ) {
+					Window eldest = it.next();
+					if (eldest.expiry >= now && windows.size() < capacity)
+						break;
+					it.remove();
+					if (eldest.expiry >= now)
+						evictedUntil = Math.max(evictedUntil, eldest.expiry);
+				}
+				windows.put(nonce, window = new Window(expiry));
+			}
+			return window.accept(nc) ? Status.VALID : Status.REPLAYED;
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package tech.greenfield.vertx.irked.helpers;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Objects;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A secret key for HMAC-SHA256 signatures, that keeps an initialized {@link Mac} for each thread that uses it, so that
+ * signing on the event loops neither contends on a lock nor allocates a new {@link Mac} for every signature.
+ *
+ * @author odeda
+ */
+public class HmacKey {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final ThreadLocal<Mac> macs;
+
+	/**
+	 * Create a new key
+	 * @param key secret key material
+	 */
+	public HmacKey(byte[] key) {
+		if (Objects.requireNonNull(key).length == 0)
+			throw new IllegalArgumentException("HMAC key must not be empty");
+		SecretKeySpec spec = new SecretKeySpec(key, ALGORITHM);
+		macs = ThreadLocal.withInitial(() -> {
+			try {
+				Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(spec);
+				return mac;
+			} catch (GeneralSecurityException e) { // shouldn't happen - every JVM must implement HmacSHA256
+				throw new IllegalStateException("Failed to initialize " + ALGORITHM, e);
+			}
+		});
+	}
+
+	/**
+	 * Generate random key material, for keys that don't need to be shared with other servers
+	 * @return 32 random bytes
+	 */
+	public static byte[] randomKey() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return key;
+	}
+
+	/**
+	 * Retrieve the current thread's {@link Mac} for this key. The {@link Mac} is ready to compute a new signature as
+	 * long as every signature computed with it is completed by calling {@link Mac#doFinal()}.
+	 * @return a {@link Mac} initialized with this key
+	 */
+	public Mac mac() {
+		return macs.get();
+	}
+
+}
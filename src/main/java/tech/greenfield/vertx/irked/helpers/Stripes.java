@@ -0,0 +1,51 @@
+package tech.greenfield.vertx.irked.helpers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * The parts of a bounded table that is split into independently locked "stripes", so that event loops that access
+ * different keys rarely contend on the same lock.
+ *
+ * The number of stripes is a power of two that grows with the number of processors, but is not larger than the
+ * table's capacity, and each stripe is created with an equal part of the capacity. Keys are assigned to stripes by
+ * their hash code.
+ *
+ * @param <S> type of the stripes, which are responsible for their own locking
+ * @author odeda
+ */
+public class Stripes<S> implements Iterable<S> {
+
+	private final List<S> stripes;
+
+	/**
+	 * Create the stripes of a table
+	 * @param capacity maximal number of entries in the whole table
+	 * @param factory creates a stripe, given the maximal number of entries that it should hold
+	 */
+	public Stripes(int capacity, IntFunction<S> factory) {
+		int count = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4) * 2,
+				Integer.highestOneBit(capacity));
+		stripes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			stripes.add(factory.apply((capacity + count - 1) / count));
+	}
+
+	/**
+	 * Find the stripe that holds a key
+	 * @param key key to look up
+	 * @return the stripe responsible for the key
+	 */
+	public S of(Object key) {
+		int hash = key.hashCode();
+		return stripes.get((hash ^ (hash >>> 16)) & (stripes.size() - 1));
+	}
+
+	@Override
+	public Iterator<S> iterator() {
+		return stripes.iterator();
+	}
+
+}
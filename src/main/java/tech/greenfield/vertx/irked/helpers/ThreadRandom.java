@@ -0,0 +1,48 @@
+package tech.greenfield.vertx.irked.helpers;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * A cryptographically strong random generator for each thread, so that event loops that generate nonces concurrently
+ * don't contend on a shared lock.
+ *
+ * A per thread {@code new SecureRandom()} is not enough for that: on Linux it is {@code NativePRNG}, and all its
+ * instances share a single global state that serializes {@code nextBytes()} across threads. Instead, each thread gets
+ * its own {@code DRBG} instance, which keeps all its state in the instance and is seeded once when the thread first
+ * uses it.
+ *
+ * @author odeda
+ */
+public class ThreadRandom {
+
+	private static final String ALGORITHM = "DRBG";
+
+	private static final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(() -> {
+		try {
+			return SecureRandom.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) { // shouldn't happen - every JVM since Java 9 implements DRBG
+			return new SecureRandom();
+		}
+	});
+
+	private ThreadRandom() {
+	}
+
+	/**
+	 * Retrieve the current thread's random generator
+	 * @return a random generator that is only used by the current thread
+	 */
+	public static SecureRandom current() {
+		return random.get();
+	}
+
+	/**
+	 * Fill an array with random bytes from the current thread's random generator
+	 * @param bytes array to fill
+	 */
+	public static void nextBytes(byte[] bytes) {
+		random.get().nextBytes(bytes);
+	}
+
+}
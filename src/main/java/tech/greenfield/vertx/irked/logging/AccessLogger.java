@@ -0,0 +1,494 @@
+package tech.greenfield.vertx.irked.logging;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.internal.ContextInternal;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.LoggerFormat;
+import io.vertx.ext.web.handler.LoggerFormatter;
+import io.vertx.ext.web.handler.LoggerHandler;
+
+/**
+ * HTTP access logger that moves the formatting and writing of access log lines off the event loop.
+ *
+ * When a response is sent, the fields needed for the log line are copied into a pre-allocated record in a bounded
+ * lock-free ring buffer, and a single background writer thread drains the buffer in batches, formats the log lines and
+ * writes them to an SLF4J logger - at the ERROR level for 5xx responses, WARN for 4xx and INFO otherwise, like
+ * {@link tech.greenfield.vertx.irked.Irked#logger()}. Besides the standard Vert.x {@link LoggerFormat}s, a structured
+ * JSON format is supported - see {@link Format#JSON}.
+ *
+ * If requests are logged faster than the writer can write them, the ring buffer fills up and the {@link OverflowPolicy}
+ * determines whether new log lines are dropped (and counted, see {@link #getDroppedCount()}) or the event loop waits
+ * for the writer to catch up. Exceptions thrown while writing a log line - for example by a broken appender - do not
+ * stop the writer, and are counted instead (see {@link #getFailedCount()}).
+ *
+ * The writer thread is started when the first request is logged, and is stopped when the Vert.x context on which that
+ * request was handled is closed - when its verticle is undeployed or when Vert.x is closed - or when {@link #close()}
+ * is called, after it has written the pending log lines.
+ *
+ * To use - define a field in your main (root) controller like so:
+ *
+ * <pre><code>
+ * &#x0040;Endpoint private LoggerHandler accessLog = Irked.accessLogger();
+ * </code></pre>
+ *
+ * @author odeda
+ */
+public class AccessLogger implements LoggerHandler {
+
+	/**
+	 * Access log line formats
+	 */
+	public enum Format {
+		/** Apache "common" log format, with an RFC 1123 date - like {@link LoggerFormat#DEFAULT} */
+		DEFAULT,
+		/** Apache "combined" log format - like {@link LoggerFormat#COMBINED} */
+		COMBINED,
+		/** Short format, with the response time - like {@link LoggerFormat#SHORT} */
+		SHORT,
+		/** Tiny format, with only the request line, status, size and response time - like {@link LoggerFormat#TINY} */
+		TINY,
+		/**
+		 * JSON object per line, with the fields {@code timestamp} (ISO-8601), {@code remote}, {@code user},
+		 * {@code method}, {@code uri}, {@code version}, {@code status}, {@code bytes}, {@code duration} (in
+		 * milliseconds), {@code referrer} and {@code userAgent}. Fields that are not available are omitted.
+		 */
+		JSON;
+
+		/**
+		 * Find the access log format that matches a Vert.x log format
+		 * @param format Vert.x log format
+		 * @return the matching access log format, or {@link #DEFAULT} for {@link LoggerFormat#CUSTOM}
+		 */
+		public static Format of(LoggerFormat format) {
+			switch (format) {
+			case COMBINED: return COMBINED;
+			case SHORT: return SHORT;
+			case TINY: return TINY;
+			default: return DEFAULT;
+			}
+		}
+	}
+
+	/**
+	 * What to do with a new log line when the ring buffer is full
+	 */
+	public enum OverflowPolicy {
+		/** Drop the log line and count it */
+		DROP,
+		/** Wait for the writer to make room - this blocks the event loop, so use with care */
+		BLOCK
+	}
+
+	private static final int DEFAULT_CAPACITY = Integer.getInteger("irked.access-log.capacity", 8192);
+	private static final int BATCH_SIZE = 256;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final DateTimeFormatter COMBINED_DATE = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH)
+			.withZone(ZoneId.systemDefault());
+
+	private final Logger log;
+	private final Format format;
+	private final OverflowPolicy overflowPolicy;
+	private final Record[] records;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final AtomicLong written = new AtomicLong();
+	private final StringBuilder line = new StringBuilder(256);
+	private volatile LoggerFormatter customFormatter;
+	private volatile Thread writer;
+	private volatile boolean writerIdle;
+	private volatile boolean closed;
+	private volatile boolean closeHookAdded;
+	private long head;
+
+	/**
+	 * Create a new access logger with the default capacity that drops log lines when it overflows
+	 * @param loggerName name of the SLF4J logger to write to
+	 * @param format log line format
+	 */
+	public AccessLogger(String loggerName, Format format) {
+		this(loggerName, format, DEFAULT_CAPACITY, OverflowPolicy.DROP);
+	}
+
+	/**
+	 * Create a new access logger with the default capacity that drops log lines when it overflows
+	 * @param loggerName name of the SLF4J logger to write to
+	 * @param format Vert.x log line format
+	 */
+	public AccessLogger(String loggerName, LoggerFormat format) {
+		this(loggerName, Format.of(format));
+	}
+
+	/**
+	 * Create a new access logger
+	 * @param loggerName name of the SLF4J logger to write to
+	 * @param format log line format
+	 * @param capacity number of log lines that can wait to be written, rounded up to a power of 2. The default
+	 *   capacity is 8192 and can be changed using the {@code irked.access-log.capacity} system property
+	 * @param overflowPolicy what to do with new log lines when the capacity is exhausted
+	 */
+	public AccessLogger(String loggerName, Format format, int capacity, OverflowPolicy overflowPolicy) {
+		this.log = LoggerFactory.getLogger(loggerName);
+		this.format = format;
+		this.overflowPolicy = overflowPolicy;
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		records = new Record[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			records[i] = new Record();
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+	}
+
+	@Override
+	public LoggerHandler customFormatter(LoggerFormatter formatter) {
+		customFormatter = formatter;
+		return this;
+	}
+
+	@Override
+	public void handle(RoutingContext ctx) {
+		if (!closeHookAdded)
+			addCloseHook(Vertx.currentContext());
+		long timestamp = System.currentTimeMillis();
+		long start = System.nanoTime();
+		ctx.addBodyEndHandler(v -> enqueue(ctx, timestamp, start));
+		ctx.next();
+	}
+
+	/**
+	 * Retrieve the number of log lines dropped because the ring buffer was full
+	 * @return number of log lines dropped
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Retrieve the number of log lines that could not be written, because writing them threw an exception
+	 * @return number of log lines that failed to be written
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * Retrieve the number of log lines written
+	 * @return number of log lines written by the writer thread
+	 */
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * Stop the writer thread, after it has written all the pending log lines. Requests completed after the logger is
+	 * closed are not logged.
+	 */
+	public void close() {
+		Thread thread = stop();
+		if (thread == null)
+			return;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Signal the writer thread to stop once it has written the pending log lines, without waiting for it
+	 * @return the writer thread, or {@code null} if it was not started
+	 */
+	private Thread stop() {
+		closed = true;
+		Thread thread = writer;
+		if (thread != null)
+			LockSupport.unpark(thread);
+		return thread;
+	}
+
+	/**
+	 * Stop the writer thread when the context that handles requests is closed, so that redeploying a verticle
+	 * does not leak writer threads
+	 * @param context Vert.x context of the first request logged
+	 */
+	private synchronized void addCloseHook(Context context) {
+		if (closeHookAdded || context == null)
+			return;
+		closeHookAdded = true;
+		((ContextInternal) context).addCloseHook(completion -> {
+			stop();
+			completion.succeed();
+		});
+	}
+
+	private void enqueue(RoutingContext ctx, long timestamp, long start) {
+		if (closed)
+			return;
+		long slot = claim();
+		if (slot < 0) {
+			dropped.increment();
+			return;
+		}
+		Record record = records[(int) slot & mask];
+		HttpServerRequest request = ctx.request();
+		LoggerFormatter formatter = customFormatter;
+		try {
+			if (formatter != null) {
+				record.status = request.response().getStatusCode();
+				record.message = formatter.format(ctx, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			} else
+				record.capture(ctx, request, timestamp, System.nanoTime() - start, format);
+		} catch (RuntimeException e) {
+			record.message = "Failed to capture access log: " + e;
+		} finally {
+			sequences.lazySet((int) slot & mask, slot + 1); // publish - the writer can't skip over a claimed slot
+		}
+		if (writerIdle)
+			LockSupport.unpark(writer());
+		else
+			writer();
+	}
+
+	/**
+	 * Claim the next free slot in the ring buffer
+	 * @return the sequence of the claimed slot, or -1 if the buffer is full and the overflow policy is to drop
+	 */
+	private long claim() {
+		while (true) {
+			long current = tail.get();
+			long diff = sequences.get((int) current & mask) - current;
+			if (diff == 0) {
+				if (tail.compareAndSet(current, current + 1))
+					return current;
+			} else if (diff < 0) { // the writer has not yet freed this slot
+				if (overflowPolicy == OverflowPolicy.DROP || closed)
+					return -1;
+				LockSupport.unpark(writer());
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+	private Thread writer() {
+		Thread thread = writer;
+		if (thread != null)
+			return thread;
+		synchronized (this) {
+			if (writer == null) {
+				thread = new Thread(this::drain, "irked-access-log-" + log.getName());
+				thread.setDaemon(true);
+				writer = thread;
+				thread.start();
+			}
+			return writer;
+		}
+	}
+
+	private void drain() {
+		while (true) {
+			int batch = 0;
+			while (batch < BATCH_SIZE && write())
+				batch++;
+			if (batch > 0)
+				continue;
+			if (closed && sequences.get((int) head & mask) != head + 1)
+				return;
+			writerIdle = true;
+			if (sequences.get((int) head & mask) != head + 1) // check again, in case a producer missed the idle flag
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			writerIdle = false;
+		}
+	}
+
+	/**
+	 * Format and write the next published log line, and free its slot
+	 * @return whether a log line was written
+	 */
+	private boolean write() {
+		int index = (int) head & mask;
+		if (sequences.get(index) != head + 1)
+			return false;
+		Record record = records[index];
+		String message = record.message;
+		int status = record.status;
+		if (message == null) {
+			line.setLength(0);
+			record.format(line, format);
+			message = line.toString();
+		}
+		record.clear();
+		sequences.lazySet(index, head + records.length); // free the slot for the next round
+		head++;
+		try {
+			doLog(status, message);
+			written.incrementAndGet();
+		} catch (RuntimeException e) { // don't let a broken appender kill the writer
+			failed.increment();
+		}
+		return true;
+	}
+
+	/**
+	 * Write a formatted access log line. Called on the writer thread, for each log line in order.
+	 * @param status HTTP status of the response
+	 * @param message formatted log line
+	 */
+	protected void doLog(int status, String message) {
+		if (status >= 500)
+			log.error(message);
+		else if (status >= 400)
+			log.warn(message);
+		else
+			log.info(message);
+	}
+
+	/**
+	 * Pre-allocated log line fields. Only references to existing objects are stored, so capturing a log line does not
+	 * allocate.
+	 */
+	private static class Record {
+		long timestamp;
+		long durationNanos;
+		String remote;
+		String user;
+		HttpMethod method;
+		String uri;
+		HttpVersion version;
+		int status;
+		long bytes;
+		String referrer;
+		String userAgent;
+		String message;
+
+		void capture(RoutingContext ctx, HttpServerRequest request, long timestamp, long durationNanos, Format format) {
+			this.timestamp = timestamp;
+			this.durationNanos = durationNanos;
+			SocketAddress address = request.remoteAddress();
+			remote = address != null ? address.host() : null;
+			method = request.method();
+			uri = request.uri();
+			version = request.version();
+			status = request.response().getStatusCode();
+			bytes = request.response().bytesWritten();
+			if (format == Format.SHORT || format == Format.TINY)
+				return;
+			referrer = request.headers().get("referrer");
+			if (referrer == null)
+				referrer = request.headers().get("referer");
+			userAgent = request.headers().get("user-agent");
+			User u = ctx.user();
+			user = u != null ? u.subject() : null;
+		}
+
+		void clear() {
+			remote = user = uri = referrer = userAgent = message = null;
+			method = null;
+			version = null;
+		}
+
+		void format(StringBuilder out, Format format) {
+			switch (format) {
+			case DEFAULT:
+				out.append(or(remote)).append(" - - [")
+					.append(DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(timestamp).atOffset(ZoneOffset.UTC)))
+					.append("] \"");
+				requestLine(out).append("\" ").append(status).append(' ').append(bytes).append(" \"")
+					.append(or(referrer)).append("\" \"").append(or(userAgent)).append('"');
+				break;
+			case COMBINED:
+				out.append(or(remote)).append(" - ").append(or(user)).append(" [")
+					.append(COMBINED_DATE.format(Instant.ofEpochMilli(timestamp))).append("] \"");
+				requestLine(out).append("\" ").append(status).append(' ').append(bytes).append(" \"")
+					.append(or(referrer)).append("\" \"").append(or(userAgent)).append('"');
+				break;
+			case SHORT:
+				out.append(or(remote)).append(" - ");
+				requestLine(out).append(' ').append(status).append(' ').append(bytes).append(" - ")
+					.append(TimeUnit.NANOSECONDS.toMillis(durationNanos)).append(" ms");
+				break;
+			case TINY:
+				out.append(method).append(' ').append(uri).append(' ').append(status).append(' ').append(bytes)
+					.append(" - ").append(TimeUnit.NANOSECONDS.toMillis(durationNanos)).append(" ms");
+				break;
+			case JSON:
+				out.append("{\"timestamp\":\"").append(Instant.ofEpochMilli(timestamp)).append('"');
+				field(out, "remote", remote);
+				field(out, "user", user);
+				field(out, "method", method != null ? method.name() : null);
+				field(out, "uri", uri);
+				field(out, "version", versionName());
+				out.append(",\"status\":").append(status).append(",\"bytes\":").append(bytes)
+					.append(",\"duration\":").append(durationNanos / 1000000.0);
+				field(out, "referrer", referrer);
+				field(out, "userAgent", userAgent);
+				out.append('}');
+				break;
+			}
+		}
+
+		private StringBuilder requestLine(StringBuilder out) {
+			return out.append(method).append(' ').append(uri).append(' ').append(versionName());
+		}
+
+		private String versionName() {
+			if (version == null)
+				return "-";
+			switch (version) {
+			case HTTP_1_0: return "HTTP/1.0";
+			case HTTP_1_1: return "HTTP/1.1";
+			case HTTP_2: return "HTTP/2.0";
+			default: return "-";
+			}
+		}
+
+		private static String or(String value) {
+			return value != null ? value : "-";
+		}
+
+		private static void field(StringBuilder out, String name, String value) {
+			if (value == null)
+				return;
+			out.append(",\"").append(name).append("\":\"");
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default:
+					if (c < 0x20)
+						out.append(String.format("\\u%04x", (int) c));
+					else
+						out.append(c);
+				}
+			}
+			out.append('"');
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package tech.greenfield.vertx.irked.logging;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Rate limiting error logger for exceptions thrown by request handlers.
+ *
+ * When a downstream dependency fails, every request that reaches the affected handlers will fail in exactly the same
+ * way, and logging a full stack trace for each failure can easily saturate the event loops. Instead, failures are
+ * aggregated by the route that failed and by the "signature" of the exception - its type and the type of its root cause.
+ * The signature deliberately does not include the code location that threw the exception, as retrieving an exception's
+ * stack trace copies it, which would make every suppressed repeat as expensive as the first failure. The first
+ * occurrence of each signature is logged in full, further occurrences are only counted, and a summary line with the
+ * number of repeats and the message of the first occurrence is logged periodically for each signature that repeated.
+ * A signature that did not repeat for at least a full summary interval is forgotten, so its next occurrence is logged in
+ * full again.
+ *
+ * The summary interval defaults to 60 seconds and can be changed using the {@code irked.error-log.summary-interval-ms}
+ * system property. Setting it to 0 disables aggregation, and all failures are logged in full. The number of signatures
+ * tracked is limited by the {@code irked.error-log.max-signatures} system property (default 1000); failures with new
+ * signatures beyond that limit are counted but not logged until the next summary.
+ *
+ * The failure counts are available through {@link #getTotalCount()}, {@link #getSuppressedCount()} and
+ * {@link #getCounts()} for reporting as metrics.
+ *
+ * @author odeda
+ */
+public class ErrorLogAggregator {
+
+	private static final long SUMMARY_INTERVAL = Long.getLong("irked.error-log.summary-interval-ms", 60000);
+	private static final int MAX_SIGNATURES = Integer.getInteger("irked.error-log.max-signatures", 1000);
+
+	private final Vertx vertx;
+	private final long summaryInterval;
+	private final ConcurrentHashMap<Signature, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicBoolean summaryScheduled = new AtomicBoolean(false);
+	// number of summaries done so far, used to retain signatures for at least a full interval
+	private volatile long generation;
+	private final LongAdder total = new LongAdder();
+	private final LongAdder suppressed = new LongAdder();
+	private final AtomicLong overflow = new AtomicLong();
+	private volatile Logger overflowLogger;
+
+	/**
+	 * Create a new aggregator using the default summary interval
+	 * @param vertx Vert.x instance used to schedule summaries
+	 */
+	public ErrorLogAggregator(Vertx vertx) {
+		this(vertx, SUMMARY_INTERVAL);
+	}
+
+	/**
+	 * Create a new aggregator
+	 * @param vertx Vert.x instance used to schedule summaries
+	 * @param summaryInterval number of milliseconds between summaries, or 0 to log all failures in full
+	 */
+	public ErrorLogAggregator(Vertx vertx, long summaryInterval) {
+		this.vertx = vertx;
+		this.summaryInterval = vertx != null ? Math.max(summaryInterval, 0) : 0;
+	}
+
+	/**
+	 * Log a handler failure at the ERROR level, if it was not recently logged
+	 * @param logger logger to report to
+	 * @param route description of the route that failed
+	 * @param cause the failure to report
+	 * @param format log message format, as used by {@link Logger#error(String, Object...)}. The exception should not be
+	 *   included in the arguments, as it is added automatically when the failure is logged in full
+	 * @param args log message arguments
+	 * @return whether the failure was logged in full
+	 */
+	public boolean error(Logger logger, String route, Throwable cause, String format, Object... args) {
+		return log(Level.ERROR, logger, route, cause, format, args);
+	}
+
+	/**
+	 * Log a handler failure at the WARN level, if it was not recently logged
+	 * @param logger logger to report to
+	 * @param route description of the route that failed
+	 * @param cause the failure to report
+	 * @param format log message format, as used by {@link Logger#warn(String, Object...)}. The exception should not be
+	 *   included in the arguments, as it is added automatically when the failure is logged in full
+	 * @param args log message arguments
+	 * @return whether the failure was logged in full
+	 */
+	public boolean warn(Logger logger, String route, Throwable cause, String format, Object... args) {
+		return log(Level.WARN, logger, route, cause, format, args);
+	}
+
+	/**
+	 * Log a handler failure, if it was not recently logged
+	 * @param level level to log the failure and its summaries at
+	 * @param logger logger to report to
+	 * @param route description of the route that failed
+	 * @param cause the failure to report
+	 * @param format log message format. The exception should not be included in the arguments, as it is added
+	 *   automatically when the failure is logged in full
+	 * @param args log message arguments
+	 * @return whether the failure was logged in full
+	 */
+	public boolean log(Level level, Logger logger, String route, Throwable cause, String format, Object... args) {
+		total.increment();
+		if (summaryInterval == 0) {
+			logger.atLevel(level).setCause(cause).log(format, args);
+			return true;
+		}
+		Signature signature = new Signature(route, cause);
+		Entry entry = entries.get(signature);
+		if (entry == null) {
+			if (entries.size() >= MAX_SIGNATURES) {
+				suppressed.increment();
+				overflowLogger = logger;
+				overflow.incrementAndGet();
+				scheduleSummary();
+				return false;
+			}
+			Entry created = new Entry(level, logger, cause, generation);
+			entry = entries.putIfAbsent(signature, created);
+			if (entry == null) {
+				created.total.increment();
+				scheduleSummary();
+				logger.atLevel(level).setCause(cause).log(format, args);
+				return true;
+			}
+		}
+		entry.total.increment();
+		entry.repeats.incrementAndGet();
+		suppressed.increment();
+		return false;
+	}
+
+	private void scheduleSummary() {
+		if (summaryScheduled.compareAndSet(false, true))
+			vertx.setTimer(summaryInterval, id -> summarize());
+	}
+
+	private void summarize() {
+		long current = generation++;
+		entries.forEach((signature, entry) -> {
+			long repeats = entry.repeats.getAndSet(0);
+			if (repeats == 0) {
+				// an entry created during the last interval may have been created just before this summary
+				if (entry.generation < current)
+					entries.remove(signature, entry);
+				return;
+			}
+			entry.logger.atLevel(entry.level).log("{} failed with {}: {} - repeated {} more times in the last {}ms ({} total)",
+					signature.route, signature.type.getName(), entry.message, repeats, summaryInterval,
+					entry.total.sum());
+		});
+		long overflowCount = overflow.getAndSet(0);
+		if (overflowCount > 0)
+			overflowLogger.error("{} failures with new signatures were not logged in the last {}ms, as more than {} signatures are tracked",
+					overflowCount, summaryInterval, MAX_SIGNATURES);
+		summaryScheduled.set(false);
+		if (!entries.isEmpty() || overflow.get() > 0)
+			scheduleSummary();
+	}
+
+	/**
+	 * Retrieve the total number of failures reported to this aggregator
+	 * @return number of failures reported, whether they were logged or not
+	 */
+	public long getTotalCount() {
+		return total.sum();
+	}
+
+	/**
+	 * Retrieve the number of failures that were counted but not logged in full
+	 * @return number of failures suppressed
+	 */
+	public long getSuppressedCount() {
+		return suppressed.sum();
+	}
+
+	/**
+	 * Retrieve the number of failures for each signature that is currently tracked
+	 * @return a map of signature descriptions, in the format "route: exception-type", to the number of times that
+	 *   signature occurred since it was first logged
+	 */
+	public Map<String, Long> getCounts() {
+		var counts = new TreeMap<String, Long>();
+		entries.forEach((signature, entry) -> counts.merge(signature.toString(), entry.total.sum(), Long::sum));
+		return counts;
+	}
+
+	private static class Entry {
+		final Level level;
+		final Logger logger;
+		final LongAdder total = new LongAdder();
+		final AtomicLong repeats = new AtomicLong();
+		final String message;
+		final long generation;
+
+		Entry(Level level, Logger logger, Throwable cause, long generation) {
+			this.level = level;
+			this.logger = logger;
+			this.message = cause.getMessage();
+			this.generation = generation;
+		}
+	}
+
+	private static class Signature {
+		final String route;
+		final Class<?> type;
+		final Class<?> rootType;
+		final int hash;
+
+		Signature(String route, Throwable cause) {
+			this.route = route;
+			this.type = cause.getClass();
+			Throwable root = cause;
+			for (int depth = 0; root.getCause() != null && root.getCause() != root && depth < 20; depth++)
+				root = root.getCause();
+			this.rootType = root.getClass();
+			this.hash = (Objects.hashCode(route) * 31 + type.hashCode()) * 31 + rootType.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Signature))
+				return false;
+			Signature other = (Signature) obj;
+			return hash == other.hash && type == other.type && rootType == other.rootType &&
+					Objects.equals(route, other.route);
+		}
+
+		@Override
+		public String toString() {
+			return route + ": " + type.getName();
+		}
+	}
+}
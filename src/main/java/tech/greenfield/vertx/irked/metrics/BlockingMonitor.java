@@ -0,0 +1,329 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.Context;
+
+/**
+ * Measures the synchronous execution time of Irked handlers on event loop threads, and attributes it to the routes
+ * that the handlers implement - so that the routes that block the event loop can be identified and moved to
+ * {@link tech.greenfield.vertx.irked.annotations.Blocking @Blocking} handlers or reworked.
+ *
+ * When a handler passes the request to the next handler synchronously (e.g. by calling {@code next()}), the execution
+ * time of the nested handlers is subtracted from the handler's own time, so that each route is only charged for the
+ * time spent in its own code. For each route, {@link RouteMetrics} counts the executions that took longer than each
+ * of the blocking thresholds - by default 1, 10 and 100 milliseconds, which can be changed by setting the
+ * {@code irked.blocking.thresholds-ms} system property to a comma separated list of millisecond values.
+ *
+ * Optionally, a watchdog thread can capture the stack of handlers while they are blocking the event loop, and the stack
+ * of the longest blocking execution of each route is kept and logged at the WARN level - see
+ * {@link #captureStacks(long)}.
+ *
+ * Handler executions on other threads - Vert.x worker threads and {@link tech.greenfield.vertx.irked.annotations.Blocking
+ * @Blocking} handler threads - are tracked as well, so that their resource usage can be sampled and the route they are
+ * executing can be identified, but they are not counted as blocking and the watchdog does not capture their stacks.
+ *
+ * Execution state is tracked in a fixed size per-thread stack, so measuring handlers does not allocate. The stacks of
+ * threads that have terminated are dropped whenever another thread starts executing handlers, so elastic thread pools
+ * do not leak them.
+ *
+ * @author odeda
+ */
+public class BlockingMonitor {
+
+	private static final Logger log = LoggerFactory.getLogger(BlockingMonitor.class);
+	private static final long[] THRESHOLDS = parseThresholds(System.getProperty("irked.blocking.thresholds-ms", "1,10,100"));
+	private static final int MAX_DEPTH = 64;
+
+	private static final ThreadLocal<Executions> executions = ThreadLocal.withInitial(Executions::new);
+	private static final Map<Thread, Executions> threads = new ConcurrentHashMap<>();
+	private static Watchdog watchdog;
+
+	private BlockingMonitor() {}
+
+	/**
+	 * Retrieve the blocking thresholds for which executions are counted
+	 * @return thresholds in nanoseconds, in ascending order
+	 */
+	public static long[] getThresholds() {
+		return THRESHOLDS.clone();
+	}
+
+	/**
+	 * Start capturing the stack of handlers that block an event loop thread for longer than the specified threshold.
+	 * Calling this method again changes the threshold.
+	 * @param thresholdMillis number of milliseconds after which the stack of a running handler is captured
+	 */
+	public static synchronized void captureStacks(long thresholdMillis) {
+		if (watchdog != null)
+			watchdog.interrupt();
+		watchdog = new Watchdog(TimeUnit.MILLISECONDS.toNanos(Math.max(thresholdMillis, 1)));
+		watchdog.start();
+	}
+
+	/**
+	 * Stop capturing the stack of blocking handlers
+	 */
+	public static synchronized void stopCapturingStacks() {
+		if (watchdog != null)
+			watchdog.interrupt();
+		watchdog = null;
+	}
+
+	/**
+	 * Record the start of a handler's synchronous execution on the current thread, which may be any thread
+	 * @param route metrics of the route that the handler implements
+	 * @return execution depth to pass to {@link #exit(int)}
+	 */
+	static int enter(RouteMetrics route) {
+		return executions.get().enter(route);
+	}
+
+	/**
+	 * Record the start of a synchronous execution on behalf of a handler, unless a handler is already executing on the
+	 * current thread - in which case the execution is already attributed to it
+	 * @param route metrics of the route that the handler implements
+	 * @return execution depth to pass to {@link #exit(int)}, or -1 if the execution is not tracked separately
+	 */
+	static int enterIfIdle(RouteMetrics route) {
+		Executions e = executions.get();
+		return e.depth == 0 ? e.enter(route) : -1;
+	}
+
+	/**
+	 * Record the end of a handler's synchronous execution on the current thread, and attribute its execution time
+	 * @param depth execution depth returned by {@link #enter(RouteMetrics)}
+	 */
+	static void exit(int depth) {
+		if (depth >= 0)
+			executions.get().exit(depth);
+	}
+
+	/**
+	 * Find the route whose handler is currently executing on a thread
+	 * @param thread thread to check
+	 * @return the route of the innermost handler executing on the thread, or {@code null} if no Irked handler is
+	 *   executing on the thread
+	 */
+	public static RouteMetrics activeRoute(Thread thread) {
+		Executions e = threads.get(thread);
+		if (e == null)
+			return null;
+		long sequence = e.sequence;
+		int current = e.depth - 1;
+		if (current < 0 || current >= MAX_DEPTH)
+			return null;
+		RouteMetrics route = e.routes.get(current);
+		return e.sequence == sequence ? route : null; // null if the handler completed while we were looking at it
+	}
+
+	/**
+	 * Retrieve the number of threads whose handler executions are tracked
+	 * @return number of threads that have executed Irked handlers, not including threads that have terminated before
+	 *   the last time a new thread started executing handlers
+	 */
+	public static int trackedThreads() {
+		return threads.size();
+	}
+
+	/**
+	 * Retrieve the total time that Irked handlers executed on the current thread
+	 * @return total execution time of top level handlers on the current thread, in nanoseconds
+	 */
+	static long busyTime() {
+		return executions.get().busyNanos;
+	}
+
+	static int thresholdCount() {
+		return THRESHOLDS.length;
+	}
+
+	static long threshold(int index) {
+		return THRESHOLDS[index];
+	}
+
+	private static long[] parseThresholds(String spec) {
+		try {
+			return Arrays.stream(spec.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+					.mapToLong(Long::parseLong).map(TimeUnit.MILLISECONDS::toNanos).sorted().toArray();
+		} catch (NumberFormatException e) {
+			log.warn("Invalid blocking thresholds '{}', using the defaults", spec);
+			return parseThresholds("1,10,100");
+		}
+	}
+
+	/**
+	 * The stack of a handler execution, as captured by the watchdog
+	 */
+	public static class BlockedExecution {
+		private final long sequence;
+		private final String thread;
+		private final StackTraceElement[] stack;
+		private long durationNanos;
+
+		BlockedExecution(long sequence, String thread, StackTraceElement[] stack) {
+			this.sequence = sequence;
+			this.thread = thread;
+			this.stack = stack;
+		}
+
+		/**
+		 * Retrieve the name of the thread that the handler blocked
+		 * @return thread name
+		 */
+		public String getThread() {
+			return thread;
+		}
+
+		/**
+		 * Retrieve the stack of the handler, as captured while it was blocking
+		 * @return stack trace of the event loop thread
+		 */
+		public StackTraceElement[] getStackTrace() {
+			return stack.clone();
+		}
+
+		/**
+		 * Retrieve the execution time of the handler
+		 * @return time that the handler blocked the thread, not including nested handlers, in nanoseconds
+		 */
+		public long getDuration() {
+			return durationNanos;
+		}
+
+		private Exception toException() {
+			Exception e = new Exception("Blocked here");
+			e.setStackTrace(stack);
+			return e;
+		}
+	}
+
+	/**
+	 * Stack of the handler executions running on a thread. Only the owning thread modifies the stack, while the watchdog
+	 * and the profiler read the current top of the stack, relying on the sequence number of the top execution to detect
+	 * whether it changed while reading. The routes, start times and sequence numbers that they read are published with ordered
+	 * writes, which cost the owning thread no more than plain writes on common hardware.
+	 */
+	private static class Executions {
+		final Thread thread = Thread.currentThread();
+		final boolean eventLoop = Context.isOnEventLoopThread();
+		final AtomicReferenceArray<RouteMetrics> routes = new AtomicReferenceArray<>(MAX_DEPTH);
+		final AtomicLongArray starts = new AtomicLongArray(MAX_DEPTH);
+		final long[] nested = new long[MAX_DEPTH];
+		final AtomicLongArray sequences = new AtomicLongArray(MAX_DEPTH);
+		final boolean[] sampled = new boolean[MAX_DEPTH];
+		final long[] cpuStarts = new long[MAX_DEPTH];
+		final long[] allocStarts = new long[MAX_DEPTH];
+		final long[] nestedCpu = new long[MAX_DEPTH];
+		final long[] nestedAlloc = new long[MAX_DEPTH];
+		final AtomicReferenceArray<BlockedExecution> captured = new AtomicReferenceArray<>(MAX_DEPTH);
+		long executed;
+		long busyNanos;
+		volatile int depth;
+		volatile long sequence;
+
+		Executions() {
+			// threads register rarely - only when they first execute a handler - so that's when the dead are dropped
+			threads.keySet().removeIf(t -> !t.isAlive());
+			threads.put(thread, this);
+		}
+
+		int enter(RouteMetrics route) {
+			int current = depth;
+			if (current == MAX_DEPTH)
+				return current; // too deep to track - will be attributed to the enclosing handler
+			routes.lazySet(current, route);
+			nested[current] = 0;
+			// nested executions are sampled together with their caller, so their usage can be subtracted from it
+			if (sampled[current] = current > 0 ? sampled[current - 1] : route.shouldSampleUsage()) {
+				nestedCpu[current] = nestedAlloc[current] = 0;
+				cpuStarts[current] = ResourceUsageSampler.cpuTime();
+				allocStarts[current] = ResourceUsageSampler.allocatedBytes();
+			}
+			starts.lazySet(current, System.nanoTime());
+			sequences.lazySet(current, ++executed);
+			depth = current + 1;
+			sequence = executed;
+			return current;
+		}
+
+		void exit(int current) {
+			if (current == MAX_DEPTH)
+				return;
+			long total = System.nanoTime() - starts.get(current);
+			long own = total - nested[current];
+			RouteMetrics route = routes.get(current);
+			routes.lazySet(current, null);
+			depth = current;
+			sequence = current > 0 ? sequences.get(current - 1) : 0;
+			if (current > 0)
+				nested[current - 1] += total;
+			else
+				busyNanos += total;
+			if (sampled[current]) {
+				long cpu = ResourceUsageSampler.cpuTime() - cpuStarts[current];
+				long alloc = ResourceUsageSampler.allocatedBytes() - allocStarts[current];
+				route.recordUsage(cpu - nestedCpu[current], alloc - nestedAlloc[current]);
+				if (current > 0) {
+					nestedCpu[current - 1] += cpu;
+					nestedAlloc[current - 1] += alloc;
+				}
+			}
+			BlockedExecution stack = captured.getAndSet(current, null);
+			if (stack != null && stack.sequence == sequences.get(current))
+				stack.durationNanos = own;
+			else
+				stack = null;
+			if (route.recordExecution(own, eventLoop, stack))
+				log.warn("Handler for {} blocked {} for {}ms", route, thread.getName(), own / 1000000, stack.toException());
+		}
+	}
+
+	/**
+	 * Daemon thread that periodically checks the handler executing on each thread, and captures its stack if it has
+	 * been running for longer than the threshold
+	 */
+	private static class Watchdog extends Thread {
+		private final long thresholdNanos;
+
+		Watchdog(long thresholdNanos) {
+			super("irked-blocking-watchdog");
+			this.thresholdNanos = thresholdNanos;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long interval = Math.max(thresholdNanos / 4, TimeUnit.MILLISECONDS.toNanos(1));
+			try {
+				while (!isInterrupted()) {
+					TimeUnit.NANOSECONDS.sleep(interval);
+					for (Executions e : threads.values())
+						if (e.eventLoop)
+							check(e);
+				}
+			} catch (InterruptedException e) { // stopped
+			}
+		}
+
+		private void check(Executions e) {
+			long sequence = e.sequence;
+			int current = e.depth - 1;
+			if (current < 0 || current >= MAX_DEPTH || e.sequences.get(current) != sequence ||
+					System.nanoTime() - e.starts.get(current) < thresholdNanos || e.captured.get(current) != null)
+				return;
+			StackTraceElement[] stack = e.thread.getStackTrace();
+			if (e.sequence != sequence)
+				return; // the handler has completed while we were looking at it
+			e.captured.compareAndSet(current, null, new BlockedExecution(sequence, e.thread.getName(), stack));
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package tech.greenfield.vertx.irked.metrics;
+
+/**
+ * Statistics of a cache used while handling requests, such as the
+ * {@link tech.greenfield.vertx.irked.auth.CredentialVerificationHandler} credential cache.
+ *
+ * Caches are registered using {@link MetricsRegistry#addCache(String, CacheMetrics)}, and their statistics are read
+ * whenever the metrics are reported - e.g. by the {@link MetricsController} - so the methods should be cheap and
+ * thread-safe.
+ *
+ * @author odeda
+ */
+public interface CacheMetrics {
+
+	/**
+	 * @return the number of lookups that found a completed result in the cache
+	 */
+	long getHitCount();
+
+	/**
+	 * @return the number of lookups that did not find a result in the cache and had to compute it
+	 */
+	long getMissCount();
+
+	/**
+	 * @return the number of lookups that waited for a result that another lookup was computing
+	 */
+	default long getCoalescedCount() {
+		return 0;
+	}
+
+	/**
+	 * @return the number of results that were evicted from the cache before they expired, because it was full
+	 */
+	long getEvictionCount();
+
+	/**
+	 * @return the number of results currently in the cache
+	 */
+	int size();
+
+}
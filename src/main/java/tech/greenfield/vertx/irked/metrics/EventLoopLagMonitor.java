@@ -0,0 +1,177 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.VerticleBase;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+
+/**
+ * Measures the scheduling lag of the Vert.x event loops.
+ *
+ * A probe task is scheduled on each event loop at a fixed interval, and the difference between the time it was due to
+ * run and the time it actually ran is the time the event loop was busy with other work - a direct measure of how long
+ * requests on that event loop have to wait before they are processed. A lag that is consistently higher than a few
+ * milliseconds means that the event loop is overloaded or is being blocked.
+ *
+ * The probe also measures the utilization of each event loop - the fraction of the time between probes that the event
+ * loop thread spent running on the CPU, which includes the network I/O, Irked and non-Irked handlers and response
+ * serialization, whether or not metrics are enabled. A utilization close to 1 means that the event loop is saturated,
+ * even if it is not yet lagging. Time that the event loop spends blocked, e.g. on a lock or on blocking I/O, is not
+ * CPU time and shows up as lag instead. On JVMs that can't measure thread CPU time, the utilization is the fraction of
+ * the time spent executing Irked handlers of routers with metrics enabled, as measured by the {@link BlockingMonitor}.
+ *
+ * One monitor is started for each Vert.x instance, on first use, by deploying a probe verticle with one instance per
+ * event loop - Vert.x assigns verticle instances to event loops in turn, and instances that land on an event loop that
+ * is already probed stop themselves. The number of instances defaults to the Vert.x default event loop pool size, and
+ * should be set using the {@code irked.event-loop-lag.loops} system property if the Vert.x instance is configured with
+ * a larger pool. The probes are undeployed when the Vert.x instance is closed. The probe interval defaults to 100
+ * milliseconds and can be changed using the {@code irked.event-loop-lag.interval-ms} system property.
+ *
+ * @author odeda
+ */
+public class EventLoopLagMonitor {
+
+	private static final long INTERVAL_MILLIS = Math.max(1, Long.getLong("irked.event-loop-lag.interval-ms", 100));
+	static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+	private static final int LOOPS = Integer.getInteger("irked.event-loop-lag.loops", VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE);
+	private static final Map<Vertx, EventLoopLagMonitor> monitors = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final List<LoopProbe> loops = new CopyOnWriteArrayList<>();
+	private final boolean cpuTimeMeasured = ResourceUsageSampler.isCpuTimeMeasured();
+
+	/**
+	 * Retrieve the event loop lag monitor for a Vert.x instance, starting it if needed
+	 * @param vertx Vert.x instance whose event loops should be monitored
+	 * @return the monitor for the Vert.x instance
+	 */
+	public static EventLoopLagMonitor of(Vertx vertx) {
+		return monitors.computeIfAbsent(vertx, EventLoopLagMonitor::new);
+	}
+
+	private EventLoopLagMonitor(Vertx vertx) {
+		vertx.deployVerticle(LoopProbe::new, new DeploymentOptions().setInstances(Math.max(1, LOOPS)));
+	}
+
+	/**
+	 * Register a probe that started on an event loop, unless the event loop is already probed
+	 * @return whether the probe was registered
+	 */
+	private synchronized boolean register(LoopProbe probe) {
+		for (LoopProbe other : loops)
+			if (other.thread == probe.thread)
+				return false;
+		loops.add(probe);
+		return true;
+	}
+
+	/**
+	 * Retrieve the number of event loops monitored
+	 * @return number of event loops
+	 */
+	public int size() {
+		return loops.size();
+	}
+
+	/**
+	 * Retrieve the last lag measured for an event loop
+	 * @param loop index of the event loop, between 0 and {@link #size()} (exclusive)
+	 * @return last measured lag, in nanoseconds
+	 */
+	public long getLag(int loop) {
+		return loops.get(loop).lastLagNanos;
+	}
+
+	/**
+	 * Retrieve the largest lag measured in any of the event loops in the last measurement
+	 * @return the largest last measured lag, in nanoseconds
+	 */
+	public long getMaxLag() {
+		long max = 0;
+		for (LoopProbe probe : loops)
+			max = Math.max(max, probe.lastLagNanos);
+		return max;
+	}
+
+	/**
+	 * Retrieve the utilization of an event loop during the last measurement interval
+	 * @param loop index of the event loop, between 0 and {@link #size()} (exclusive)
+	 * @return fraction of the time that the event loop was busy, between 0 and 1
+	 */
+	public double getUtilization(int loop) {
+		return loops.get(loop).lastUtilization;
+	}
+
+	/**
+	 * Retrieve the highest utilization of any of the event loops during the last measurement interval
+	 * @return the highest last measured utilization, between 0 and 1
+	 */
+	public double getMaxUtilization() {
+		double max = 0;
+		for (LoopProbe probe : loops)
+			max = Math.max(max, probe.lastUtilization);
+		return max;
+	}
+
+	/**
+	 * Retrieve the histogram of all lag measurements of an event loop
+	 * @param loop index of the event loop, between 0 and {@link #size()} (exclusive)
+	 * @return histogram of lag measurements
+	 */
+	public LatencyHistogram getHistogram(int loop) {
+		return loops.get(loop).histogram;
+	}
+
+	private class LoopProbe extends VerticleBase {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		volatile long lastLagNanos;
+		volatile double lastUtilization;
+		Thread thread;
+		long dueNanos;
+		long lastRunNanos;
+		long lastBusyNanos = -1;
+		long timer = -1;
+
+		@Override
+		public Future<?> start() {
+			thread = Thread.currentThread();
+			if (!register(this))
+				return Future.succeededFuture(); // another instance already probes this event loop
+			lastRunNanos = System.nanoTime();
+			schedule();
+			return Future.succeededFuture();
+		}
+
+		@Override
+		public Future<?> stop() {
+			vertx.cancelTimer(timer);
+			monitors.remove(vertx);
+			return Future.succeededFuture();
+		}
+
+		private void schedule() {
+			dueNanos = System.nanoTime() + INTERVAL_NANOS;
+			timer = vertx.setTimer(INTERVAL_MILLIS, id -> run());
+		}
+
+		private void run() {
+			long now = System.nanoTime();
+			long lag = Math.max(0, now - dueNanos);
+			lastLagNanos = lag;
+			histogram.recordNanos(lag);
+			long busy = cpuTimeMeasured ? ResourceUsageSampler.cpuTime() : BlockingMonitor.busyTime();
+			if (lastBusyNanos >= 0 && now > lastRunNanos) // the first probe only reads the busy time baseline
+				lastUtilization = Math.min(1.0, (double) (busy - lastBusyNanos) / (now - lastRunNanos));
+			lastBusyNanos = busy;
+			lastRunNanos = now;
+			schedule();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets.
+ *
+ * Values are recorded in microseconds into buckets whose width grows with the value - similar to HdrHistogram, each
+ * power of 2 range is split into 8 linear sub-buckets, so every recorded value is reported with a precision of 12.5% or
+ * better, from 1 microsecond up to several days, using a fixed array of counters. Recording a value is wait-free and does
+ * not allocate, so it is safe to use on the event loop for every request.
+ *
+ * @author odeda
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40; // 2^40 microseconds is about 12 days
+	/**
+	 * Number of buckets in every histogram
+	 */
+	public static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a latency value
+	 * @param durationNanos latency to record, in nanoseconds
+	 */
+	public void recordNanos(long durationNanos) {
+		record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+	}
+
+	/**
+	 * Record a latency value
+	 * @param micros latency to record, in microseconds
+	 */
+	public void record(long micros) {
+		if (micros < 0)
+			micros = 0;
+		counts.incrementAndGet(bucketFor(micros));
+		count.increment();
+		sum.add(micros);
+		for (long current = max.get(); micros > current && !max.compareAndSet(current, micros); current = max.get());
+	}
+
+	/**
+	 * Compute the bucket index for a value
+	 * @param micros value in microseconds
+	 * @return index of the bucket that counts this value
+	 */
+	static int bucketFor(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent >= MAX_EXPONENT)
+			return BUCKETS - 1;
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Retrieve the upper bound of a bucket
+	 * @param bucket index of the bucket, between 0 and {@link #BUCKETS} (exclusive)
+	 * @return the smallest value in microseconds that is larger than all the values counted in the bucket
+	 */
+	public static long bucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket + 1;
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + subBucket + 1) << shift;
+	}
+
+	/**
+	 * Retrieve the number of values recorded in a bucket
+	 * @param bucket index of the bucket, between 0 and {@link #BUCKETS} (exclusive)
+	 * @return number of values recorded in the bucket
+	 */
+	public long getBucketCount(int bucket) {
+		return counts.get(bucket);
+	}
+
+	/**
+	 * Retrieve the number of values recorded
+	 * @return number of values recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Retrieve the sum of all values recorded
+	 * @return total of recorded values, in microseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Retrieve the largest value recorded
+	 * @return maximum recorded value, in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Estimate the value at a percentile of the recorded values
+	 * @param percentile percentile to look up, between 0 and 100
+	 * @return the upper bound, in microseconds, of the bucket in which the percentile falls, or 0 if no values were recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			total += snapshot[i] = counts.get(i);
+		if (total == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			if ((seen += snapshot[i]) >= target)
+				return Math.min(bucketUpperBound(i), getMax());
+		return getMax();
+	}
+
+}
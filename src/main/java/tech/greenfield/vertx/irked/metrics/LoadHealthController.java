@@ -0,0 +1,162 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.Response;
+import tech.greenfield.vertx.irked.Router;
+import tech.greenfield.vertx.irked.annotations.Get;
+
+/**
+ * A ready-made health check controller that reports whether the event loops are saturated, so that load balancers can
+ * steer traffic away from an instance before its latency degrades. Mount it on the path that the load balancer checks:
+ *
+ * <pre>{@code
+ * router.configure(new LoadHealthController(), "/health");
+ * }</pre>
+ *
+ * The load status is computed from the {@link EventLoopLagMonitor} measurements of the most lagging and the most
+ * utilized event loop - the utilization being the fraction of the time that the event loop thread was busy, whether
+ * or not metrics are enabled for the router:
+ * <ul>
+ * <li>{@code overloaded} - the lag or the utilization is above the overloaded threshold (by default 200ms or 90%).
+ * The health check responds with a 503 Service Unavailable status.</li>
+ * <li>{@code degraded} - the lag or the utilization is above the degraded threshold (by default 50ms or 70%). The
+ * health check still responds with a 200 OK status.</li>
+ * <li>{@code ok} - otherwise.</li>
+ * </ul>
+ * The response body is a JSON object with the {@code status}, the maximal {@code lag} (in milliseconds), the maximal
+ * {@code utilization} and the measurements of each of the event {@code loops}.
+ *
+ * Optionally, a load hint header can be added to all the responses of the router, using {@link #setLoadHeader(String)},
+ * so that load balancers that support response feedback can adjust their weights without polling.
+ *
+ * @author odeda
+ */
+public class LoadHealthController extends Controller {
+
+	/**
+	 * Load status of the event loops
+	 */
+	public enum Status {
+		OK, DEGRADED, OVERLOADED;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private volatile EventLoopLagMonitor monitor;
+	private long degradedLagNanos = TimeUnit.MILLISECONDS.toNanos(50);
+	private long overloadedLagNanos = TimeUnit.MILLISECONDS.toNanos(200);
+	private double degradedUtilization = 0.7;
+	private double overloadedUtilization = 0.9;
+	private String loadHeader;
+	private volatile String loadHint;
+	private volatile long loadHintExpiry;
+
+	/**
+	 * Set the event loop lag thresholds
+	 * @param degradedMillis lag, in milliseconds, above which the status is degraded
+	 * @param overloadedMillis lag, in milliseconds, above which the status is overloaded
+	 * @return itself for fluent calls
+	 */
+	public LoadHealthController setLagThresholds(long degradedMillis, long overloadedMillis) {
+		degradedLagNanos = TimeUnit.MILLISECONDS.toNanos(degradedMillis);
+		overloadedLagNanos = TimeUnit.MILLISECONDS.toNanos(overloadedMillis);
+		return this;
+	}
+
+	/**
+	 * Set the event loop utilization thresholds
+	 * @param degraded utilization, between 0 and 1, above which the status is degraded
+	 * @param overloaded utilization, between 0 and 1, above which the status is overloaded
+	 * @return itself for fluent calls
+	 */
+	public LoadHealthController setUtilizationThresholds(double degraded, double overloaded) {
+		degradedUtilization = degraded;
+		overloadedUtilization = overloaded;
+		return this;
+	}
+
+	/**
+	 * Add a load hint header to all the responses of the router that this controller is configured on. The header value
+	 * lists the load status, the maximal utilization and the maximal lag in milliseconds, for example
+	 * {@code degraded; utilization=0.74; lag=12}. Must be called before the controller is configured.
+	 * @param header name of the header to add, for example {@code X-Load}
+	 * @return itself for fluent calls
+	 */
+	public LoadHealthController setLoadHeader(String header) {
+		loadHeader = header;
+		return this;
+	}
+
+	@Override
+	protected void onConfigure(Router router) {
+		monitor = EventLoopLagMonitor.of(router.vertx());
+		if (loadHeader != null)
+			router.route().order(Integer.MIN_VALUE).handler(this::addLoadHint);
+	}
+
+	@Get("/")
+	WebResult<Request> health = r -> {
+		Status status = getStatus();
+		JsonArray loops = new JsonArray();
+		for (int i = 0; i < monitor.size(); i++)
+			loops.add(new JsonObject()
+					.put("lag", monitor.getLag(i) / 1e6)
+					.put("utilization", monitor.getUtilization(i)));
+		JsonObject report = new JsonObject()
+				.put("status", status.toString())
+				.put("lag", monitor.getMaxLag() / 1e6)
+				.put("utilization", monitor.getMaxUtilization())
+				.put("loops", loops);
+		return Response.status(status == Status.OVERLOADED ? 503 : 200).body(report).header("Cache-Control", "no-store");
+	};
+
+	/**
+	 * Compute the current load status from the last event loop measurements
+	 * @return the load status, which is {@link Status#OK} until the controller is configured and the event loops
+	 *   are measured
+	 */
+	public Status getStatus() {
+		EventLoopLagMonitor monitor = this.monitor;
+		if (monitor == null)
+			return Status.OK;
+		long lag = monitor.getMaxLag();
+		double utilization = monitor.getMaxUtilization();
+		if (lag > overloadedLagNanos || utilization > overloadedUtilization)
+			return Status.OVERLOADED;
+		if (lag > degradedLagNanos || utilization > degradedUtilization)
+			return Status.DEGRADED;
+		return Status.OK;
+	}
+
+	private void addLoadHint(RoutingContext ctx) {
+		ctx.addHeadersEndHandler(v -> ctx.response().putHeader(loadHeader, loadHint()));
+		ctx.next();
+	}
+
+	/**
+	 * Render the load hint header value, which is cached until the next event loop measurement
+	 * @return the load hint header value
+	 */
+	private String loadHint() {
+		long now = System.nanoTime();
+		String hint = loadHint;
+		if (hint != null && now - loadHintExpiry < 0)
+			return hint;
+		hint = String.format(Locale.ROOT, "%s; utilization=%.2f; lag=%d", getStatus(), monitor.getMaxUtilization(),
+				TimeUnit.NANOSECONDS.toMillis(monitor.getMaxLag()));
+		loadHint = hint;
+		loadHintExpiry = now + EventLoopLagMonitor.INTERVAL_NANOS;
+		return hint;
+	}
+
+}
@@ -0,0 +1,385 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import tech.greenfield.vertx.irked.Controller;
+import tech.greenfield.vertx.irked.Request;
+import tech.greenfield.vertx.irked.Router;
+import tech.greenfield.vertx.irked.annotations.Get;
+
+/**
+ * A ready-made controller that exposes the Irked metrics of the router it is configured on, in the Prometheus text
+ * exposition format. Mount it on the path that should be scraped:
+ *
+ * <pre>{@code
+ * router.configure(new MetricsController(), "/metrics");
+ * }</pre>
+ *
+ * Configuring the controller enables per-route metrics collection on the router - see
+ * {@link Router#enableMetrics()}.
+ *
+ * The following metrics are reported:
+ * <ul>
+ * <li>{@code irked_requests_total} - requests completed, by route and status class</li>
+ * <li>{@code irked_request_duration_seconds} - request latency histogram, by route</li>
+ * <li>{@code irked_requests_in_flight} - requests currently processed, by route</li>
+ * <li>{@code irked_response_bytes_total} - response body bytes written, by route</li>
+ * <li>{@code irked_requests_cancelled_total} - requests whose client disconnected before the response was sent, by route</li>
+ * <li>{@code irked_request_failures_total} - requests that failed, by route and exception type</li>
+ * <li>{@code irked_unexpected_exceptions_total} - unexpected exceptions thrown by handlers</li>
+ * <li>{@code irked_event_loop_lag_seconds} - the last measured scheduling lag of each event loop</li>
+ * <li>{@code irked_event_loop_utilization} - the fraction of time each event loop thread was busy on the CPU</li>
+ * <li>{@code irked_handler_blocking_total} - handler executions that blocked an event loop for longer than a
+ * threshold, by route and threshold</li>
+ * <li>{@code irked_handler_execution_max_seconds} - longest handler execution on an event loop, by route</li>
+ * <li>{@code irked_handler_executions_total} - handler executions, by route</li>
+ * <li>{@code irked_handler_sampled_executions_total} - handler executions whose resource usage was sampled, by route</li>
+ * <li>{@code irked_handler_sampled_cpu_seconds_total} - CPU time used by sampled handler executions, by route</li>
+ * <li>{@code irked_handler_sampled_allocated_bytes_total} - memory allocated by sampled handler executions, by route</li>
+ * <li>{@code irked_cache_lookups_total} - lookups in the caches registered with
+ * {@link MetricsRegistry#addCache(String, CacheMetrics)}, by cache and result ({@code hit}, {@code miss} or
+ * {@code coalesced})</li>
+ * <li>{@code irked_cache_evictions_total} - results evicted from a registered cache because it was full, by cache</li>
+ * <li>{@code irked_cache_size} - results currently held by a registered cache, by cache</li>
+ * </ul>
+ *
+ * The output is rendered incrementally into a small buffer that is written to the response as a chunk whenever it
+ * fills up, yielding the event loop between chunks, so scraping thousands of series neither requires a large buffer
+ * nor stalls the event loop. The next chunk is rendered only after the previous one was written to the connection, so
+ * the same buffer is reused for all the chunks - and kept by the controller for the next scrape.
+ *
+ * The request duration histogram is exported with fixed {@code le} buckets, while {@link LatencyHistogram} counts values
+ * in logarithmic buckets whose boundaries do not align with them. The count of a logarithmic bucket that straddles an
+ * {@code le} boundary is split between the two sides in proportion to the part of its range that falls below the
+ * boundary - i.e. assuming its values are evenly spread - so a reported bucket count may be off by at most the count of
+ * a single logarithmic bucket, which covers 12.5% or less of its value range.
+ *
+ * @author odeda
+ */
+public class MetricsController extends Controller {
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+	private static final long[] BUCKET_BOUNDS = { 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+			1000000, 2500000, 5000000, 10000000 }; // in microseconds
+	private static final String[] BUCKET_LABELS = { "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1",
+			"0.25", "0.5", "1", "2.5", "5", "10" };
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final AtomicReference<Buffer> spare = new AtomicReference<>();
+	private Router router;
+	private EventLoopLagMonitor lag;
+
+	@Override
+	protected void onConfigure(Router router) {
+		this.router = router;
+		router.enableMetrics(); // there's no point in exporting metrics that are not collected
+		this.lag = EventLoopLagMonitor.of(router.vertx());
+	}
+
+	@Get("/")
+	WebHandler scrape = r -> new Scrape(r).next();
+
+	/**
+	 * Incremental rendering of all metric families - each call to {@link #next()} renders up to a chunk of output
+	 */
+	private class Scrape {
+		private static final int FAMILIES = 18;
+
+		private final Request request;
+		private final HttpServerResponse response;
+		private final List<RouteMetrics> routes;
+		private final List<Map.Entry<String, CacheMetrics>> caches;
+		private final long[] thresholds = BlockingMonitor.getThresholds();
+		private final Output out;
+		private int family, index;
+
+		Scrape(Request request) {
+			this.request = request;
+			this.response = request.response();
+			this.routes = new ArrayList<>(router.metrics().routes());
+			this.caches = new ArrayList<>(router.metrics().caches().entrySet());
+			Buffer buffer = spare.getAndSet(null);
+			this.out = new Output(buffer != null ? buffer : Buffer.buffer(CHUNK_SIZE + 1024));
+			response.setChunked(true).putHeader("Content-Type", CONTENT_TYPE);
+		}
+
+		void next() {
+			if (response.closed())
+				return;
+			out.reset();
+			while (out.length() < CHUNK_SIZE && family < FAMILIES)
+				if (!render())
+					family++;
+			// the chunk shares the buffer's memory, so the buffer is only reused once the chunk was written
+			if (family >= FAMILIES)
+				response.end(out.chunk()).onSuccess(v -> spare.set(out.buffer));
+			else
+				response.write(out.chunk()).onSuccess(v -> next());
+		}
+
+		/**
+		 * Render the next series of the current family
+		 * @return whether there are more series to render in the current family
+		 */
+		private boolean render() {
+			if (index == 0)
+				header();
+			switch (family) {
+			case 0: return renderRoute(this::requests);
+			case 1: return renderRoute(this::duration);
+			case 2: return renderRoute(m -> sample("irked_requests_in_flight", m, null, null, m.getInFlight()));
+			case 3: return renderRoute(m -> sample("irked_response_bytes_total", m, null, null, m.getBytesWritten()));
+			case 4: return renderRoute(m -> sample("irked_requests_cancelled_total", m, null, null, m.getCancelledCount()));
+			case 5: return renderRoute(this::failures);
+			case 6:
+				out.append("irked_unexpected_exceptions_total ").append(router.errorLog().getTotalCount()).append('\n');
+				index = 0;
+				return false;
+			case 7:
+				if (index >= lag.size()) {
+					index = 0;
+					return false;
+				}
+				out.append("irked_event_loop_lag_seconds{loop=\"").append(index).append("\"} ")
+					.append(lag.getLag(index) / 1e9).append('\n');
+				index++;
+				return true;
+			case 8: return renderRoute(this::blocking);
+			case 9: return renderRoute(m -> {
+				out.append("irked_handler_execution_max_seconds{route=\"");
+				escape(m.getName());
+				out.append("\"} ").append(m.getMaxExecutionTime() / 1e9).append('\n');
+			});
+			case 10: return renderRoute(m -> sample("irked_handler_executions_total", m, null, null, m.getExecutionCount()));
+			case 11: return renderRoute(m -> sample("irked_handler_sampled_executions_total", m, null, null, m.getSampledExecutions()));
+			case 12: return renderRoute(m -> {
+				out.append("irked_handler_sampled_cpu_seconds_total{route=\"");
+				escape(m.getName());
+				out.append("\"} ").append(m.getCpuTime() / 1e9).append('\n');
+			});
+			case 13: return renderRoute(m -> sample("irked_handler_sampled_allocated_bytes_total", m, null, null, m.getAllocatedBytes()));
+			case 14:
+				if (index >= lag.size()) {
+					index = 0;
+					return false;
+				}
+				out.append("irked_event_loop_utilization{loop=\"").append(index).append("\"} ")
+					.append(lag.getUtilization(index)).append('\n');
+				index++;
+				return true;
+			case 15: return renderCache((name, c) -> {
+				cache("irked_cache_lookups_total", name, "hit", c.getHitCount());
+				cache("irked_cache_lookups_total", name, "miss", c.getMissCount());
+				cache("irked_cache_lookups_total", name, "coalesced", c.getCoalescedCount());
+			});
+			case 16: return renderCache((name, c) -> cache("irked_cache_evictions_total", name, null, c.getEvictionCount()));
+			case 17: return renderCache((name, c) -> cache("irked_cache_size", name, null, c.size()));
+			default:
+				return false;
+			}
+		}
+
+		private boolean renderCache(BiConsumer<String, CacheMetrics> renderer) {
+			if (index >= caches.size()) {
+				index = 0;
+				return false;
+			}
+			var entry = caches.get(index++);
+			renderer.accept(entry.getKey(), entry.getValue());
+			return true;
+		}
+
+		private boolean renderRoute(Consumer<RouteMetrics> renderer) {
+			if (index >= routes.size()) {
+				index = 0;
+				return false;
+			}
+			renderer.accept(routes.get(index++));
+			return true;
+		}
+
+		private void header() {
+			switch (family) {
+			case 0: family("irked_requests_total", "counter", "Requests completed by route and status class"); break;
+			case 1: family("irked_request_duration_seconds", "histogram", "Request processing time by route"); break;
+			case 2: family("irked_requests_in_flight", "gauge", "Requests currently being processed by route"); break;
+			case 3: family("irked_response_bytes_total", "counter", "Response body bytes written by route"); break;
+			case 4: family("irked_requests_cancelled_total", "counter", "Requests cancelled by the client by route"); break;
+			case 5: family("irked_request_failures_total", "counter", "Requests failed by route and exception type"); break;
+			case 6: family("irked_unexpected_exceptions_total", "counter", "Unexpected exceptions thrown by handlers"); break;
+			case 7: family("irked_event_loop_lag_seconds", "gauge", "Last measured scheduling lag by event loop"); break;
+			case 8: family("irked_handler_blocking_total", "counter", "Handler executions blocking the event loop by route and threshold"); break;
+			case 9: family("irked_handler_execution_max_seconds", "gauge", "Longest handler execution on the event loop by route"); break;
+			case 10: family("irked_handler_executions_total", "counter", "Handler executions by route"); break;
+			case 11: family("irked_handler_sampled_executions_total", "counter", "Handler executions sampled for resource usage by route"); break;
+			case 12: family("irked_handler_sampled_cpu_seconds_total", "counter", "CPU time used by sampled handler executions by route"); break;
+			case 13: family("irked_handler_sampled_allocated_bytes_total", "counter", "Memory allocated by sampled handler executions by route"); break;
+			case 14: family("irked_event_loop_utilization", "gauge", "Fraction of time the event loop thread was busy by event loop"); break;
+			case 15: family("irked_cache_lookups_total", "counter", "Cache lookups by cache and result"); break;
+			case 16: family("irked_cache_evictions_total", "counter", "Results evicted from full caches by cache"); break;
+			case 17: family("irked_cache_size", "gauge", "Results held by cache"); break;
+			}
+		}
+
+		private void family(String name, String type, String help) {
+			out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+			out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		}
+
+		private void requests(RouteMetrics m) {
+			for (int statusClass = 1; statusClass <= 5; statusClass++) {
+				long count = m.getStatusCount(statusClass);
+				if (count > 0)
+					sample("irked_requests_total", m, "status", statusClass + "xx", count);
+			}
+		}
+
+		private void duration(RouteMetrics m) {
+			LatencyHistogram histogram = m.getLatency();
+			long cumulative = 0;
+			int bucket = 0;
+			for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+				for (; bucket < LatencyHistogram.BUCKETS && LatencyHistogram.bucketUpperBound(bucket) <= BUCKET_BOUNDS[i]; bucket++)
+					cumulative += histogram.getBucketCount(bucket);
+				long straddling = bucket < LatencyHistogram.BUCKETS ? histogram.getBucketCount(bucket) : 0;
+				if (straddling > 0) { // count the part of the bucket below the boundary, see the class documentation
+					long lower = bucket > 0 ? LatencyHistogram.bucketUpperBound(bucket - 1) : 0;
+					straddling = straddling * (BUCKET_BOUNDS[i] - lower) / (LatencyHistogram.bucketUpperBound(bucket) - lower);
+				}
+				sample("irked_request_duration_seconds_bucket", m, "le", BUCKET_LABELS[i], cumulative + straddling);
+			}
+			long count = histogram.getCount();
+			sample("irked_request_duration_seconds_bucket", m, "le", "+Inf", count);
+			out.append("irked_request_duration_seconds_sum{route=\"");
+			escape(m.getName());
+			out.append("\"} ").append(histogram.getSum() / 1e6).append('\n');
+			sample("irked_request_duration_seconds_count", m, null, null, count);
+		}
+
+		private void blocking(RouteMetrics m) {
+			for (int i = 0; i < thresholds.length; i++)
+				sample("irked_handler_blocking_total", m, "threshold", String.valueOf(thresholds[i] / 1e9), m.getBlockingCount(i));
+		}
+
+		private void failures(RouteMetrics m) {
+			m.getFailureCounts().forEach((type, count) -> sample("irked_request_failures_total", m, "exception", type, count));
+		}
+
+		private void sample(String name, RouteMetrics m, String label, String value, long count) {
+			out.append(name).append("{route=\"");
+			escape(m.getName());
+			out.append('"');
+			if (label != null) {
+				out.append(',').append(label).append("=\"");
+				escape(value);
+				out.append('"');
+			}
+			out.append("} ").append(count).append('\n');
+		}
+
+		private void cache(String name, String cache, String result, long count) {
+			out.append(name).append("{cache=\"");
+			escape(cache);
+			out.append('"');
+			if (result != null)
+				out.append(",result=\"").append(result).append('"');
+			out.append("} ").append(count).append('\n');
+		}
+
+		private void escape(String value) {
+			for (int i = 0; i < value.length(); i += Character.charCount(value.codePointAt(i))) {
+				int c = value.codePointAt(i);
+				switch (c) {
+				case '\\': out.append("\\\\"); break;
+				case '"': out.append("\\\""); break;
+				case '\n': out.append("\\n"); break;
+				default: out.appendCodePoint(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Renders text directly into a reusable buffer, encoded as UTF-8
+	 */
+	private static class Output {
+		private final Buffer buffer;
+		private int position;
+
+		Output(Buffer buffer) {
+			this.buffer = buffer;
+		}
+
+		void reset() {
+			position = 0;
+		}
+
+		int length() {
+			return position;
+		}
+
+		Buffer chunk() {
+			return buffer.slice(0, position);
+		}
+
+		Output append(String text) {
+			for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i)))
+				appendCodePoint(text.codePointAt(i));
+			return this;
+		}
+
+		Output append(char c) {
+			return appendCodePoint(c);
+		}
+
+		Output appendCodePoint(int c) {
+			if (c < 0x80)
+				buffer.setByte(position++, (byte) c);
+			else if (c < 0x800) {
+				buffer.setByte(position++, (byte) (0xc0 | c >> 6));
+				buffer.setByte(position++, (byte) (0x80 | c & 0x3f));
+			} else if (c < 0x10000) {
+				buffer.setByte(position++, (byte) (0xe0 | c >> 12));
+				buffer.setByte(position++, (byte) (0x80 | c >> 6 & 0x3f));
+				buffer.setByte(position++, (byte) (0x80 | c & 0x3f));
+			} else {
+				buffer.setByte(position++, (byte) (0xf0 | c >> 18));
+				buffer.setByte(position++, (byte) (0x80 | c >> 12 & 0x3f));
+				buffer.setByte(position++, (byte) (0x80 | c >> 6 & 0x3f));
+				buffer.setByte(position++, (byte) (0x80 | c & 0x3f));
+			}
+			return this;
+		}
+
+		Output append(long value) {
+			if (value < 0) {
+				append('-');
+				if (value == Long.MIN_VALUE)
+					return append(String.valueOf(value).substring(1));
+				value = -value;
+			}
+			int digits = 1;
+			for (long v = value; v >= 10; v /= 10)
+				digits++;
+			for (int i = digits - 1; i >= 0; i--, value /= 10)
+				buffer.setByte(position + i, (byte) ('0' + value % 10));
+			position += digits;
+			return this;
+		}
+
+		Output append(int value) {
+			return append((long) value);
+		}
+
+		Output append(double value) {
+			return append(String.valueOf(value));
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package tech.greenfield.vertx.irked.metrics;
+
+/**
+ * Service provider interface for bridging Irked per-route metrics to an external metrics collector.
+ *
+ * Recorders are registered using {@link MetricsRegistry#addRecorder(MetricsRecorder)} and are called on the event loop
+ * of the request for each request that was handled by an Irked route, after the built-in {@link RouteMetrics} were
+ * updated. Implementations must be fast and should not block or throw.
+ *
+ * @author odeda
+ */
+public interface MetricsRecorder {
+
+	/**
+	 * Called when a request starts being handled by a route
+	 * @param route metrics of the route that handles the request
+	 */
+	default void requestStarted(RouteMetrics route) {}
+
+	/**
+	 * Called when the processing of a request completed, either by sending a response or by the client disconnecting
+	 * @param route metrics of the route that handled the request
+	 * @param statusCode the HTTP status code of the response
+	 * @param durationNanos time since the route started handling the request, in nanoseconds
+	 * @param bytesWritten number of response body bytes written
+	 * @param cancelled whether the connection was closed before the response was sent
+	 */
+	void requestCompleted(RouteMetrics route, int statusCode, long durationNanos, long bytesWritten, boolean cancelled);
+
+}
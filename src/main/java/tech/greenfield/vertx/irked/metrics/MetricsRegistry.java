@@ -0,0 +1,151 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the per-route metrics collected by an Irked router.
+ *
+ * Every route configured by the router gets its own {@link RouteMetrics}, which can be read at any time using
+ * {@link #routes()} - for example by a metrics scraping endpoint. Alternatively, {@link MetricsRecorder}s can be
+ * registered to receive a call for every request, to bridge the metrics to an external collector. The statistics of
+ * caches used by the router's handlers can be reported together with the route metrics, by registering the caches
+ * using {@link #addCache(String, CacheMetrics)}.
+ *
+ * Per-route metrics collection is opt-in, as tracking a request costs a few allocations: it can be turned on and off
+ * for each router using {@link #setEnabled(boolean)}, for example with
+ * {@link tech.greenfield.vertx.irked.Router#enableMetrics()}, and is turned on when a {@link MetricsController} is
+ * configured on the router. While collection is disabled, requests are not tracked at all. Setting the
+ * {@code irked.metrics.enable} system property to {@literal true} enables metrics collection by default for all
+ * routers.
+ *
+ * @author odeda
+ */
+public class MetricsRegistry {
+
+	private static final boolean ENABLED = Boolean.getBoolean("irked.metrics.enable");
+	private static final MetricsRecorder[] NO_RECORDERS = new MetricsRecorder[0];
+
+	private final ConcurrentHashMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, CacheMetrics> caches = new ConcurrentHashMap<>();
+	volatile MetricsRecorder[] recorders = NO_RECORDERS;
+	private volatile boolean enabled = ENABLED;
+	private volatile double resourceSampleRate;
+
+	/**
+	 * Check whether per-route metrics are collected
+	 * @return whether metrics collection is enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enable or disable per-route metrics collection. Requests that are already being tracked when collection is
+	 * disabled are still recorded when they complete.
+	 * @param enabled whether to collect metrics
+	 * @return itself for fluent calls
+	 */
+	public MetricsRegistry setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		return this;
+	}
+
+	/**
+	 * Start or stop sampling the CPU time and memory allocations of the handler executions of this registry's routes
+	 * @param rate sample rate, between 0 (disabled) and 1 (sample every execution)
+	 * @return itself for fluent calls
+	 * @see ResourceUsageSampler
+	 */
+	public MetricsRegistry setResourceSampleRate(double rate) {
+		if (rate > 0)
+			ResourceUsageSampler.prepare();
+		resourceSampleRate = rate;
+		return this;
+	}
+
+	/**
+	 * Retrieve the rate at which handler executions of this registry's routes are sampled for resource usage
+	 * @return sample rate, between 0 (disabled) and 1 (sample every execution)
+	 */
+	public double getResourceSampleRate() {
+		return resourceSampleRate;
+	}
+
+	/**
+	 * Retrieve the metrics for a route, creating them if needed
+	 * @param name HTTP method and route pattern of the route
+	 * @return the metrics of the route
+	 */
+	public RouteMetrics route(String name) {
+		return routes.computeIfAbsent(name, n -> new RouteMetrics(this, n));
+	}
+
+	/**
+	 * List the metrics of all the routes
+	 * @return metrics for all routes configured, sorted by route name
+	 */
+	public Collection<RouteMetrics> routes() {
+		var list = new ArrayList<>(routes.values());
+		list.sort(Comparator.comparing(RouteMetrics::getName));
+		return list;
+	}
+
+	/**
+	 * Register a cache whose statistics should be reported with the router's metrics, replacing any cache previously
+	 * registered with the same name. Caches are reported regardless of whether per-route metrics collection is enabled.
+	 * @param name name to report the cache statistics under, e.g. {@code credentials}
+	 * @param cache cache to report
+	 * @return itself for fluent calls
+	 */
+	public MetricsRegistry addCache(String name, CacheMetrics cache) {
+		caches.put(name, cache);
+		return this;
+	}
+
+	/**
+	 * Stop reporting the statistics of a cache
+	 * @param name name that the cache was registered with
+	 * @return itself for fluent calls
+	 */
+	public MetricsRegistry removeCache(String name) {
+		caches.remove(name);
+		return this;
+	}
+
+	/**
+	 * List the registered caches
+	 * @return the registered caches, sorted by name
+	 */
+	public Map<String, CacheMetrics> caches() {
+		return new TreeMap<>(caches);
+	}
+
+	/**
+	 * Register a recorder to receive per-request metrics
+	 * @param recorder recorder to register
+	 * @return itself for fluent calls
+	 */
+	public synchronized MetricsRegistry addRecorder(MetricsRecorder recorder) {
+		var updated = Arrays.copyOf(recorders, recorders.length + 1);
+		updated[recorders.length] = recorder;
+		recorders = updated;
+		return this;
+	}
+
+	/**
+	 * Remove a previously registered recorder
+	 * @param recorder recorder to remove
+	 * @return itself for fluent calls
+	 */
+	public synchronized MetricsRegistry removeRecorder(MetricsRecorder recorder) {
+		recorders = Arrays.stream(recorders).filter(r -> r != recorder).toArray(MetricsRecorder[]::new);
+		return this;
+	}
+
+}
@@ -0,0 +1,94 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples the CPU time and the memory allocated by the synchronous executions of Irked handlers, and accumulates them
+ * per route - so that the routes that are expensive to serve can be identified for capacity planning and optimization.
+ *
+ * Reading the thread CPU time and allocation counters costs about a microsecond, so only a random sample of handler
+ * executions is measured: the sums reported by {@link RouteMetrics#getCpuTime()} and
+ * {@link RouteMetrics#getAllocatedBytes()} cover {@link RouteMetrics#getSampledExecutions()} of the
+ * {@link RouteMetrics#getExecutionCount()} executions of the route, and can be scaled up accordingly. Like
+ * {@link BlockingMonitor} execution times, the usage of nested handlers is not included in the usage of the handler
+ * that called them, while the serialization of the handler's response by the {@link tech.greenfield.vertx.irked.Request}
+ * send helpers is - also when the response is sent later, from an asynchronous callback. The counters are read for the
+ * current thread, so handlers are sampled on event loops, worker threads and
+ * {@link tech.greenfield.vertx.irked.annotations.Blocking @Blocking} handler threads alike.
+ *
+ * Sampling is disabled by default, and is enabled for the routes of a router using
+ * {@link MetricsRegistry#setResourceSampleRate(double)}, for example with
+ * {@link tech.greenfield.vertx.irked.Router#sampleResourceUsage(double)}. CPU time is only available if the JVM
+ * supports thread CPU time measurement, and allocations are only available on JVMs that support
+ * {@code com.sun.management.ThreadMXBean}.
+ *
+ * @author odeda
+ */
+public class ResourceUsageSampler {
+
+	private static final Logger log = LoggerFactory.getLogger(ResourceUsageSampler.class);
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final com.sun.management.ThreadMXBean allocations =
+			threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+	private static boolean prepared;
+
+	private ResourceUsageSampler() {}
+
+	/**
+	 * Enable the JVM's thread CPU time and allocation measurement, if needed, before sampling starts
+	 */
+	static synchronized void prepare() {
+		if (prepared)
+			return;
+		prepared = true;
+		if (!threads.isThreadCpuTimeSupported())
+			log.warn("Thread CPU time measurement is not supported by this JVM, only allocations will be sampled");
+		else if (!threads.isThreadCpuTimeEnabled())
+			threads.setThreadCpuTimeEnabled(true);
+		if (allocations == null || !allocations.isThreadAllocatedMemorySupported())
+			log.warn("Thread allocation measurement is not supported by this JVM, only CPU time will be sampled");
+		else if (!allocations.isThreadAllocatedMemoryEnabled())
+			allocations.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * Decide whether a handler execution should be sampled
+	 * @param rate sample rate, between 0 (disabled) and 1 (sample every execution)
+	 * @return whether to measure the next execution
+	 */
+	static boolean shouldSample(double rate) {
+		return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+	}
+
+	/**
+	 * Check whether the CPU time of the current thread can be measured
+	 * @return whether {@link #cpuTime()} reports the thread's CPU time
+	 */
+	static boolean isCpuTimeMeasured() {
+		return threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+	}
+
+	/**
+	 * Retrieve the CPU time used by the current thread
+	 * @return CPU time in nanoseconds, or 0 if not supported
+	 */
+	static long cpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported() ? Math.max(threads.getCurrentThreadCpuTime(), 0) : 0;
+	}
+
+	/**
+	 * Retrieve the number of bytes allocated by the current thread
+	 * @return bytes allocated, or 0 if not supported
+	 */
+	@SuppressWarnings("deprecation")
+	static long allocatedBytes() {
+		return allocations != null ? Math.max(allocations.getThreadAllocatedBytes(Thread.currentThread().getId()), 0) : 0;
+	}
+
+}
@@ -0,0 +1,325 @@
+package tech.greenfield.vertx.irked.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Metrics collected for a single Irked route - identified by its HTTP method and route pattern (e.g.
+ * {@code GET /items/:id}) instead of the raw request URI, so that path parameters do not explode the number of
+ * distinct metrics.
+ *
+ * A request is attributed to the last (non-failure) route that handled it before the response was sent, so middle-ware
+ * routes that pass requests on using {@code next()} report only the requests they completed themselves. Latency is
+ * measured from the time the first Irked route started handling the request until the response was completely written.
+ *
+ * The synchronous execution time of the route's handlers on event loop threads is also measured, to find out which
+ * routes block the event loop - see {@link BlockingMonitor} - and optionally a sample of their CPU time and memory
+ * allocations on any thread - see {@link ResourceUsageSampler}. Failure routes have their own metrics, named with an {@code @OnFail}
+ * prefix, that only measure the execution of their handlers - requests are never attributed to them.
+ *
+ * All counters are updated without locks or allocations. Attributing a request to its route does allocate: a small
+ * per-request tracking object, its entry in the routing context data and the registration of the end handler that
+ * records the request's completion - which is why metrics collection is disabled unless enabled for the router, and
+ * while it is disabled requests are not tracked at all - see {@link MetricsRegistry#setEnabled(boolean)}.
+ *
+ * @author odeda
+ */
+public class RouteMetrics {
+
+	static final String PROBE_FIELD = String.format("%1$s.probe", RouteMetrics.class);
+
+	private final MetricsRegistry registry;
+	private final String name;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder[] statusCounts = new LongAdder[6];
+	private final LongAdder inFlight = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder cancelled = new LongAdder();
+	private final ConcurrentHashMap<Class<?>, LongAdder> failures = new ConcurrentHashMap<>();
+	private final LongAdder[] blockingCounts = new LongAdder[BlockingMonitor.thresholdCount()];
+	private final LongAccumulator maxExecution = new LongAccumulator(Math::max, 0);
+	private volatile BlockingMonitor.BlockedExecution worstBlocking;
+	private final LongAdder executions = new LongAdder();
+	private final LongAdder sampledExecutions = new LongAdder();
+	private final LongAdder cpuTime = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+
+	RouteMetrics(MetricsRegistry registry, String name) {
+		this.registry = registry;
+		this.name = name;
+		for (int i = 0; i < statusCounts.length; i++)
+			statusCounts[i] = new LongAdder();
+		for (int i = 0; i < blockingCounts.length; i++)
+			blockingCounts[i] = new LongAdder();
+	}
+
+	/**
+	 * Check whether metrics are currently collected for this route
+	 * @return whether metrics collection is enabled in the route's registry
+	 */
+	public boolean isEnabled() {
+		return registry.isEnabled();
+	}
+
+	/**
+	 * Retrieve the name of the route
+	 * @return the HTTP method and route pattern of the route
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Retrieve the latency histogram of the route
+	 * @return histogram of request processing times
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Retrieve the total number of requests completed by this route
+	 * @return number of requests completed
+	 */
+	public long getRequestCount() {
+		return latency.getCount();
+	}
+
+	/**
+	 * Retrieve the number of responses sent by this route with a status in the specified class
+	 * @param statusClass HTTP status class, 1 to 5 for 1xx to 5xx
+	 * @return number of responses with a status code of that class
+	 */
+	public long getStatusCount(int statusClass) {
+		return statusClass > 0 && statusClass < statusCounts.length ? statusCounts[statusClass].sum() : 0;
+	}
+
+	/**
+	 * Retrieve the number of requests currently being handled by this route
+	 * @return number of requests in flight
+	 */
+	public long getInFlight() {
+		return inFlight.sum();
+	}
+
+	/**
+	 * Retrieve the number of response bytes written by this route
+	 * @return number of response body bytes written
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * Retrieve the number of requests for which the client disconnected before the response was sent
+	 * @return number of cancelled requests
+	 */
+	public long getCancelledCount() {
+		return cancelled.sum();
+	}
+
+	/**
+	 * Retrieve the number of requests that failed, by the type of exception they failed with
+	 * @return a map of exception class names to the number of requests that failed with that exception
+	 */
+	public Map<String, Long> getFailureCounts() {
+		var counts = new TreeMap<String, Long>();
+		failures.forEach((type, count) -> counts.put(type.getName(), count.sum()));
+		return counts;
+	}
+
+	/**
+	 * Retrieve the number of handler executions of this route that blocked an event loop thread for longer than a
+	 * blocking threshold
+	 * @param threshold index of the threshold, in the list returned by {@link BlockingMonitor#getThresholds()}
+	 * @return number of handler executions that took longer than the threshold
+	 */
+	public long getBlockingCount(int threshold) {
+		return threshold >= 0 && threshold < blockingCounts.length ? blockingCounts[threshold].sum() : 0;
+	}
+
+	/**
+	 * Retrieve the longest synchronous execution time of this route's handlers on an event loop thread
+	 * @return longest execution time, in nanoseconds
+	 */
+	public long getMaxExecutionTime() {
+		return maxExecution.get();
+	}
+
+	/**
+	 * Retrieve the stack captured for the longest blocking execution of this route's handlers, if stack capturing was
+	 * enabled using {@link BlockingMonitor#captureStacks(long)}
+	 * @return the captured stack of the longest blocking execution, or {@code null} if none was captured
+	 */
+	public BlockingMonitor.BlockedExecution getWorstBlocking() {
+		return worstBlocking;
+	}
+
+	/**
+	 * Retrieve the number of synchronous handler executions of this route, on any thread
+	 * @return number of handler executions, including the serialization of responses sent outside of a handler
+	 */
+	public long getExecutionCount() {
+		return executions.sum();
+	}
+
+	/**
+	 * Retrieve the number of handler executions of this route whose resource usage was sampled
+	 * @return number of sampled handler executions
+	 */
+	public long getSampledExecutions() {
+		return sampledExecutions.sum();
+	}
+
+	/**
+	 * Retrieve the CPU time used by the sampled handler executions of this route
+	 * @return total CPU time of the sampled executions, in nanoseconds
+	 */
+	public long getCpuTime() {
+		return cpuTime.sum();
+	}
+
+	/**
+	 * Retrieve the memory allocated by the sampled handler executions of this route
+	 * @return total number of bytes allocated by the sampled executions
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	/**
+	 * Called by Irked when a handler of this route starts executing
+	 * @return execution identifier to pass to {@link #handlerCompleted(int)}
+	 */
+	public int handlerStarted() {
+		return BlockingMonitor.enter(this);
+	}
+
+	/**
+	 * Called by Irked when it serializes a response of this route, to attribute the serialization to the route if it
+	 * does not run as part of a handler execution - for example when a response is sent from an asynchronous callback
+	 * @return execution identifier to pass to {@link #handlerCompleted(int)}
+	 */
+	public int completionStarted() {
+		return BlockingMonitor.enterIfIdle(this);
+	}
+
+	/**
+	 * Called by Irked when a handler of this route returns, to record its execution time
+	 * @param execution execution identifier returned by {@link #handlerStarted()} or {@link #completionStarted()}
+	 */
+	public void handlerCompleted(int execution) {
+		BlockingMonitor.exit(execution);
+	}
+
+	/**
+	 * Record the synchronous execution time of a handler of this route
+	 * @param durationNanos execution time, not including nested handlers
+	 * @param eventLoop whether the handler executed on an event loop thread - only those count as blocking
+	 * @param stack stack captured while the handler was blocking, or {@code null}
+	 * @return whether the captured stack is now the worst blocking execution of this route
+	 */
+	boolean recordExecution(long durationNanos, boolean eventLoop, BlockingMonitor.BlockedExecution stack) {
+		executions.increment();
+		if (!eventLoop)
+			return false;
+		maxExecution.accumulate(durationNanos);
+		for (int i = 0; i < blockingCounts.length && durationNanos >= BlockingMonitor.threshold(i); i++)
+			blockingCounts[i].increment();
+		if (stack == null)
+			return false;
+		BlockingMonitor.BlockedExecution worst = worstBlocking;
+		if (worst != null && worst.getDuration() >= durationNanos)
+			return false;
+		worstBlocking = stack;
+		return true;
+	}
+
+	boolean shouldSampleUsage() {
+		return ResourceUsageSampler.shouldSample(registry.getResourceSampleRate());
+	}
+
+	void recordUsage(long cpuNanos, long bytes) {
+		sampledExecutions.increment();
+		cpuTime.add(cpuNanos);
+		allocatedBytes.add(bytes);
+	}
+
+	/**
+	 * Retrieve the metrics of the route that a request is currently attributed to
+	 * @param ctx routing context of the request
+	 * @return metrics of the last route that started handling the request, or {@code null} if none
+	 */
+	public static RouteMetrics of(RoutingContext ctx) {
+		Probe probe = ctx.get(PROBE_FIELD);
+		return probe != null ? probe.route : null;
+	}
+
+	/**
+	 * Called by Irked when this route starts handling a request, to attribute the request to this route
+	 * @param ctx routing context of the request
+	 */
+	public void dispatched(RoutingContext ctx) {
+		Probe probe = ctx.get(PROBE_FIELD);
+		if (probe == null) {
+			if (ctx.response().ended())
+				return;
+			ctx.put(PROBE_FIELD, probe = new Probe(ctx, System.nanoTime()));
+			ctx.addEndHandler(probe);
+		} else if (probe.route == this)
+			return;
+		else if (probe.route != null)
+			probe.route.inFlight.decrement();
+		probe.route = this;
+		inFlight.increment();
+		for (MetricsRecorder recorder : registry.recorders)
+			recorder.requestStarted(this);
+	}
+
+	private void completed(int statusCode, long durationNanos, long bytes, boolean wasCancelled) {
+		inFlight.decrement();
+		latency.recordNanos(durationNanos);
+		statusCounts[statusCode / 100 < statusCounts.length ? statusCode / 100 : 0].increment();
+		bytesWritten.add(bytes);
+		if (wasCancelled)
+			cancelled.increment();
+		for (MetricsRecorder recorder : registry.recorders)
+			recorder.requestCompleted(this, statusCode, durationNanos, bytes, wasCancelled);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Per-request state tracking which route the request is attributed to
+	 */
+	private static class Probe implements Handler<AsyncResult<Void>> {
+		final RoutingContext ctx;
+		final long startNanos;
+		RouteMetrics route;
+
+		Probe(RoutingContext ctx, long startNanos) {
+			this.ctx = ctx;
+			this.startNanos = startNanos;
+		}
+
+		@Override
+		public void handle(AsyncResult<Void> result) {
+			if (route == null)
+				return;
+			if (ctx.failed() && ctx.failure() != null)
+				route.failures.computeIfAbsent(ctx.failure().getClass(), t -> new LongAdder()).increment();
+			route.completed(ctx.response().getStatusCode(), System.nanoTime() - startNanos,
+					ctx.response().bytesWritten(), result.failed());
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.VerticleBase;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.handler.LoggerFormat;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.logging.AccessLogger;
+import tech.greenfield.vertx.irked.status.NotFound;
+
+public class TestAccessLogger extends TestBase {
+
+	class CollectingLogger extends AccessLogger {
+		List<String> lines = new CopyOnWriteArrayList<>();
+		CountDownLatch gate = new CountDownLatch(0);
+		long delayMillis;
+
+		CollectingLogger(Format format, int capacity, OverflowPolicy policy) {
+			this("access", format, capacity, policy);
+		}
+
+		CollectingLogger(String name, Format format, int capacity, OverflowPolicy policy) {
+			super(name, format, capacity, policy);
+		}
+
+		@Override
+		protected void doLog(int status, String message) {
+			try {
+				gate.await();
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (message.contains("/items/broken"))
+				throw new IllegalStateException("broken appender");
+			lines.add(status + " " + message);
+		}
+	}
+
+	public class TestController extends Controller {
+		@Endpoint
+		AccessLogger accessLog;
+
+		TestController(AccessLogger accessLog) {
+			this.accessLog = accessLog;
+		}
+
+		@Get("/items/:id")
+		String item(Request r) {
+			if (r.pathParam("id").equals("missing"))
+				throw new NotFound().unchecked();
+			return "item " + r.pathParam("id");
+		}
+	}
+
+	private Future<Void> start(Vertx vertx, AccessLogger logger) throws Exception {
+		return vertx.createHttpServer().requestHandler(Irked.router(vertx).configure(new TestController(logger)))
+				.listen(port).mapEmpty();
+	}
+
+	private Future<Void> await(Vertx vertx, CollectingLogger logger, int lines) {
+		return Future.future(p -> vertx.setPeriodic(5, id -> {
+			if (logger.lines.size() + logger.getDroppedCount() + logger.getFailedCount() >= lines) {
+				vertx.cancelTimer(id);
+				p.complete();
+			}
+		}));
+	}
+
+	@Test
+	public void testJsonFormat(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger(AccessLogger.Format.JSON, 16, AccessLogger.OverflowPolicy.DROP);
+		var client = getClient(vertx);
+		start(vertx, logger)
+		.compose(v -> client.get(port, "localhost", "/items/1").putHeader("User-Agent", "test \"agent\"").send())
+		.compose(r -> client.get(port, "localhost", "/items/missing").send())
+		.compose(r -> await(vertx, logger, 2))
+		.map(v -> {
+			assertThat(logger.lines.size(), is(2));
+			assertThat(logger.lines.get(0), startsWith("200 "));
+			JsonObject entry = new JsonObject(logger.lines.get(0).substring(4));
+			assertThat(entry.getString("method"), is(equalTo("GET")));
+			assertThat(entry.getString("uri"), is(equalTo("/items/1")));
+			assertThat(entry.getString("version"), is(equalTo("HTTP/1.1")));
+			assertThat(entry.getInteger("status"), is(200));
+			assertThat(entry.getLong("bytes"), is(6L));
+			assertThat(entry.getString("userAgent"), is(equalTo("test \"agent\"")));
+			assertThat(entry.containsKey("referrer"), is(false));
+			assertThat(logger.lines.get(1), startsWith("404 "));
+			assertThat(logger.getWrittenCount(), is(2L));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testShortFormat(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger(AccessLogger.Format.of(LoggerFormat.SHORT), 16, AccessLogger.OverflowPolicy.DROP);
+		start(vertx, logger)
+		.compose(v -> getClient(vertx).get(port, "localhost", "/items/2").send())
+		.compose(r -> {
+			assertThat(r, isSuccess());
+			return await(vertx, logger, 1);
+		})
+		.map(v -> {
+			assertThat(logger.lines.get(0), matchesPattern("200 127\\.0\\.0\\.1 - GET /items/2 HTTP/1\\.1 200 6 - \\d+ ms"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	private Future<Void> requests(Vertx vertx, int count) {
+		List<Future<HttpResponse<Buffer>>> responses = new ArrayList<>();
+		var client = getClient(vertx);
+		for (int i = 0; i < count; i++)
+			responses.add(client.get(port, "localhost", "/items/" + i).send());
+		return Future.all(responses).mapEmpty();
+	}
+
+	@Test
+	public void testDropPolicy(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger(AccessLogger.Format.TINY, 2, AccessLogger.OverflowPolicy.DROP);
+		logger.gate = new CountDownLatch(1); // hold the writer so that the ring buffer fills up
+		start(vertx, logger)
+		.compose(v -> requests(vertx, 10))
+		.compose(v -> {
+			assertThat(logger.getDroppedCount(), is(greaterThan(0L)));
+			logger.gate.countDown();
+			return await(vertx, logger, 10);
+		})
+		.map(v -> {
+			assertThat(logger.getWrittenCount() + logger.getDroppedCount(), is(10L));
+			assertThat((long) logger.lines.size(), is(logger.getWrittenCount()));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testBlockPolicy(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger(AccessLogger.Format.TINY, 2, AccessLogger.OverflowPolicy.BLOCK);
+		logger.delayMillis = 5; // slower than the requests, so they have to wait for the writer
+		start(vertx, logger)
+		.compose(v -> requests(vertx, 10))
+		.compose(v -> await(vertx, logger, 10))
+		.map(v -> {
+			assertThat(logger.getDroppedCount(), is(0L));
+			assertThat(logger.lines.size(), is(10));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testFailedAppender(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger(AccessLogger.Format.TINY, 16, AccessLogger.OverflowPolicy.DROP);
+		var client = getClient(vertx);
+		start(vertx, logger)
+		.compose(v -> client.get(port, "localhost", "/items/broken").send())
+		.compose(r -> client.get(port, "localhost", "/items/1").send())
+		.compose(r -> await(vertx, logger, 2))
+		.map(v -> {
+			assertThat(logger.getFailedCount(), is(1L));
+			assertThat(logger.getWrittenCount(), is(1L));
+			assertThat(logger.lines.get(0), startsWith("200 GET /items/1 "));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testCustomFormatter(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger(AccessLogger.Format.DEFAULT, 16, AccessLogger.OverflowPolicy.DROP);
+		logger.customFormatter((ctx, ms) -> "custom " + ctx.request().uri());
+		start(vertx, logger)
+		.compose(v -> getClient(vertx).get(port, "localhost", "/items/3").send())
+		.compose(r -> await(vertx, logger, 1))
+		.map(v -> {
+			assertThat(logger.lines.get(0), is(equalTo("200 custom /items/3")));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testClose(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger("access-close", AccessLogger.Format.TINY, 16, AccessLogger.OverflowPolicy.DROP);
+		var client = getClient(vertx);
+		start(vertx, logger)
+		.compose(v -> client.get(port, "localhost", "/items/1").send())
+		.compose(r -> await(vertx, logger, 1))
+		.compose(v -> vertx.executeBlocking(() -> {
+			logger.close();
+			return null;
+		}))
+		.compose(v -> client.get(port, "localhost", "/items/2").send())
+		.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(logger.lines.size(), is(1));
+			assertThat(writerRunning("access-close"), is(false));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testStoppedOnUndeploy(VertxTestContext context, Vertx vertx) throws Exception {
+		var logger = new CollectingLogger("access-undeploy", AccessLogger.Format.TINY, 16, AccessLogger.OverflowPolicy.DROP);
+		vertx.deployVerticle(new VerticleBase() {
+			@Override
+			public Future<?> start() throws Exception {
+				return TestAccessLogger.this.start(vertx, logger);
+			}
+		}, new DeploymentOptions())
+		.compose(id -> getClient(vertx).get(port, "localhost", "/items/1").send()
+				.compose(r -> await(vertx, logger, 1))
+				.map(v -> {
+					assertThat(writerRunning("access-undeploy"), is(true));
+					return id;
+				}))
+		.compose(vertx::undeploy)
+		.compose(v -> Future.<Void>future(p -> vertx.setTimer(100, t -> p.complete())))
+		.map(v -> {
+			assertThat(writerRunning("access-undeploy"), is(false));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	private static boolean writerRunning(String loggerName) {
+		return Thread.getAllStackTraces().keySet().stream()
+				.anyMatch(t -> t.getName().equals("irked-access-log-" + loggerName) && t.isAlive());
+	}
+
+}
@@ -0,0 +1,117 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.annotations.Name;
+import tech.greenfield.vertx.irked.base.AllocationMeter;
+import tech.greenfield.vertx.irked.base.TestBase;
+
+public class TestAllocationBudget extends TestBase {
+
+	private static final int WARMUP_REQUESTS = 2000;
+	private static final int MEASURED_REQUESTS = 200;
+
+	// Budgets leave about 50% headroom over the current allocations, so only significant regressions fail the tests.
+	// When an intentional change needs more, update the budget and explain why in the commit message
+	private static final long TEXT_BUDGET = 2560;
+	private static final long JSON_BUDGET = 4096;
+	private static final long PATH_PARAMETERS_BUDGET = 5120;
+	private static final long NESTED_CONTROLLER_BUDGET = 3072;
+
+	public class NestedController extends Controller {
+		@Get("/status")
+		WebHandler status = r -> r.send("OK");
+	}
+
+	public class TestController extends Controller {
+		@Get("/text")
+		WebHandler text = r -> r.send("Hello, World!");
+
+		@Get("/json")
+		WebResult<Request> json = r -> new JsonObject().put("message", "Hello, World!");
+
+		@Get("/items/:category/:id")
+		JsonObject item(Request r, @Name("category") String category, @Name("id") String id) {
+			return new JsonObject().put("category", category).put("id", id);
+		}
+
+		@Endpoint("/api/*")
+		WebHandler middleware = Request::next;
+
+		@Endpoint("/api")
+		NestedController nested = new NestedController();
+	}
+
+	private AllocationMeter meter;
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		try {
+			meter = new AllocationMeter(Irked.router(vertx).configure(new TestController()));
+		} catch (Exception e) {
+			context.failNow(e);
+			return;
+		}
+		vertx.createHttpServer().requestHandler(meter).listen(port).<Void>mapEmpty().onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testTextBudget(VertxTestContext context, Vertx vertx) {
+		verifyBudget(context, vertx, "/text", TEXT_BUDGET);
+	}
+
+	@Test
+	public void testJsonBudget(VertxTestContext context, Vertx vertx) {
+		verifyBudget(context, vertx, "/json", JSON_BUDGET);
+	}
+
+	@Test
+	public void testPathParametersBudget(VertxTestContext context, Vertx vertx) {
+		verifyBudget(context, vertx, "/items/books/42", PATH_PARAMETERS_BUDGET);
+	}
+
+	@Test
+	public void testNestedControllerBudget(VertxTestContext context, Vertx vertx) {
+		verifyBudget(context, vertx, "/api/status", NESTED_CONTROLLER_BUDGET);
+	}
+
+	private void verifyBudget(VertxTestContext context, Vertx vertx, String uri, long budget) {
+		assumeTrue(AllocationMeter.isSupported(), "Thread allocation measurement is not supported");
+		var client = getClient(vertx);
+		Supplier<Future<Void>> request = () -> client.get(port, "localhost", uri).send().map(r -> {
+			assertThat(r, isSuccess());
+			return null;
+		});
+		repeat(WARMUP_REQUESTS, request)
+		.map(v -> { meter.reset(); return null; })
+		.compose(v -> repeat(MEASURED_REQUESTS, request))
+		.map(v -> {
+			assertThat(meter.count(), is(MEASURED_REQUESTS));
+			log.info("Request to {} allocated {} bytes", uri, meter.median());
+			assertThat(meter.median(), is(lessThanOrEqualTo(budget)));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	private static Future<Void> repeat(int times, Supplier<Future<Void>> operation) {
+		if (times == 0)
+			return Future.succeededFuture();
+		return operation.get().compose(v -> repeat(times - 1, operation));
+	}
+
+}
@@ -1,8 +1,10 @@
 package tech.greenfield.vertx.irked;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static tech.greenfield.vertx.irked.Matchers.isSuccess;
 import static tech.greenfield.vertx.irked.Matchers.status;
 
@@ -23,6 +25,7 @@ import tech.greenfield.vertx.irked.annotations.Endpoint;
 import tech.greenfield.vertx.irked.annotations.Get;
 import tech.greenfield.vertx.irked.annotations.OnFail;
 import tech.greenfield.vertx.irked.annotations.Post;
+import tech.greenfield.vertx.irked.auth.AuthorizationToken;
 import tech.greenfield.vertx.irked.auth.DigestAuthorizationToken;
 import tech.greenfield.vertx.irked.auth.ParameterEncodedAuthorizationToken;
 import tech.greenfield.vertx.irked.base.TestBase;
@@ -62,6 +65,19 @@ public class TestAuthDigest extends TestBase {
 			r.sendContent("OK");
 		};
 		
+		@Get("/auth-userhash")
+		public void userhash(Request r) throws Unauthorized {
+			if (!(r.getAuthorization() instanceof DigestAuthorizationToken)) {
+				throw new DigestAuthenticate("irked", "opaque-value");
+			}
+
+			DigestAuthorizationToken auth = (DigestAuthorizationToken) r.getAuthorization();
+			if (!auth.isValid() || !auth.isUserhash() || !auth.validateResponse(userName, userPass, r)) {
+				throw new DigestAuthenticate("irked", "opaque-value");
+			}
+			r.sendContent("OK");
+		}
+		
 		@OnFail
 		@Endpoint("/*")
 		WebHandler failure = Request.failureHandler();
@@ -114,6 +130,81 @@ public class TestAuthDigest extends TestBase {
 		.onComplete(context.succeedingThenComplete());
 	}
 
+	@Test
+	public void testGetAuthedWithUserhash(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/auth-userhash").send()
+		.compose(res -> {
+			assertThat(res, is(status(Unauthorized.class)));
+			Map<String, String> auth = parseAuthHeader(res.getHeader("WWW-Authenticate"));
+			DigestAuthorizationToken tok = new DigestAuthorizationToken(auth.get("realm"), "GET", "/auth-userhash", null,
+					userName, userPass, auth.get("nonce"), DigestAuthenticate.generateNonce("", 300), null, "SHA-512-256", true);
+			assertThat(tok.generateAuthrizationHeader(), not(containsString(userName + "\"")));
+			return getClient(vertx).get(port, "localhost", "/auth-userhash").putHeader("Authorization", tok.generateAuthrizationHeader())
+					.send();
+		})
+		.map(res -> {
+			assertThat(res, isSuccess());
+			assertThat(res.body().toString(), is(equalTo("OK")));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testRfc7616Examples() {
+		// RFC 7616 section 3.9.1
+		String nonce = "7ypf/xlj9XXwfDPEoM4URrv/xwf94BcCAzFZH4GiTo0v", cnonce = "f2/wE4q74E6zIJEtWaHKaf5wv/H5QzzpXusqGemxURZJ";
+		var md5 = new DigestAuthorizationToken("http-auth@example.org", "GET", "/dir/index.html", null, "Mufasa",
+				"Circle of Life", nonce, cnonce, null, "MD5");
+		assertThat(md5.getParameter("response"), is(equalTo("8ca523f5e9506fed4657c9700eebdbec")));
+		var sha256 = new DigestAuthorizationToken("http-auth@example.org", "GET", "/dir/index.html", null, "Mufasa",
+				"Circle of Life", nonce, cnonce, null, "SHA-256");
+		assertThat(sha256.getParameter("response"), is(equalTo("753927fa0e85d155564e2e272a28d1802ca10daf4496794697cf8db5856cb6c1")));
+		var parsed = (DigestAuthorizationToken) AuthorizationToken.parse(sha256.generateAuthrizationHeader());
+		assertThat(parsed.isValid(), is(true));
+		assertThat(parsed.hash("Mufasa:http-auth@example.org:Circle of Life"),
+				is(equalTo("7987c64c30e25f1b74be53f966b49b90f2808aa92faf9a00262392d7b4794232")));
+	}
+
+	@Test
+	public void testSha512256Userhash() {
+		var token = new DigestAuthorizationToken("api@example.org", "GET", "/doe.json", null, "J\u00e4s\u00f8n Doe",
+				"Secret, or not?", "5TsQWLVdgBdmrQ0XsxbDODV+57QdFR34I9HAbC/RVvkK", "NTg6RKcb9boFIAS3KrFK9BGeh+iDa/sm6jUMp2wds69v",
+				null, "SHA-512-256", true);
+		assertThat(token.isUserhash(), is(true));
+		assertThat(token.getUsername(), is(equalTo("793263caabb707a56211940d90411ea4a575adeccb7e360aeb624ed06ece9b0b")));
+		assertThat(token.matchesUsername("J\u00e4s\u00f8n Doe"), is(true));
+		assertThat(token.matchesUsername("Jason Doe"), is(false));
+		assertThat(token.getParameter("response"), is(equalTo("3798d4131c277846293534c3edc11bd8a5e4cdcbff78b05db9d95eeb1cec68a5")));
+	}
+
+	@Test
+	public void testNonHexHashRejected() {
+		var token = new DigestAuthorizationToken("realm", "GET", "/", null, "user", "password", "nonce", "cnonce", null,
+				"SHA-256", true);
+		String userhash = token.getUsername();
+		var upper = (DigestAuthorizationToken) AuthorizationToken.parse(token.generateAuthrizationHeader()
+				.replace(userhash, userhash.toUpperCase()));
+		assertThat(upper.matchesUsername("user"), is(true));
+		// control characters U+0010-U+0019 differ from the digits '0'-'9' only by the case bit
+		StringBuilder folded = new StringBuilder();
+		for (char c : userhash.toCharArray())
+			folded.append(Character.isDigit(c) ? (char) (c - 0x20) : c);
+		var malformed = (DigestAuthorizationToken) AuthorizationToken.parse(token.generateAuthrizationHeader()
+				.replace(userhash, folded));
+		assertThat(malformed.getUsername(), is(equalTo(folded.toString())));
+		assertThat(malformed.matchesUsername("user"), is(false));
+	}
+
+	@Test
+	public void testSessionAlgorithm() {
+		var token = new DigestAuthorizationToken("realm", "GET", "/", null, "user", "password", "nonce", "cnonce", null, "md5-sess");
+		assertThat(token.isValid(), is(true));
+		assertThat(token.getParameter("response"), is(equalTo("19fd1f74b95b73dce8e35ff855edc74c")));
+		assertThat(new DigestAuthorizationToken("realm", "GET", "/", null, "user", "password", "nonce", "cnonce", null,
+				"NO-SUCH-ALGORITHM").getParameter("algorithm"), is(equalTo("unknown")));
+	}
+
 	private Map<String,String> parseAuthHeader(String authHeader) {
 		String[] authparts = authHeader.split(" ",2);
 		assertThat(authparts.length, is(equalTo(2)));
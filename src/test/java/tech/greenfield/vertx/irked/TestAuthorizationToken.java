@@ -0,0 +1,110 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.auth.AuthorizationToken;
+import tech.greenfield.vertx.irked.auth.BasicAuthorizationToken;
+import tech.greenfield.vertx.irked.auth.BearerAuthorizationToken;
+import tech.greenfield.vertx.irked.auth.DigestAuthorizationToken;
+import tech.greenfield.vertx.irked.auth.NullAuthorizationToken;
+import tech.greenfield.vertx.irked.auth.ParameterEncodedAuthorizationToken;
+import tech.greenfield.vertx.irked.auth.SimpleAuthrizationToken;
+import tech.greenfield.vertx.irked.base.TestBase;
+
+public class TestAuthorizationToken extends TestBase {
+
+	/**
+	 * Custom authentication scheme, loaded from the service loader configuration in the test resources
+	 */
+	public static class CustomToken extends ParameterEncodedAuthorizationToken {
+		@Override
+		protected String getSchemeName() {
+			return "Custom";
+		}
+	}
+
+	public static class RegisteredToken extends AuthorizationToken {
+	}
+
+	public class TestController extends Controller {
+		@Endpoint("/*")
+		WebHandler parse = r -> {
+			r.put("token", r.getAuthorization());
+			r.next();
+		};
+
+		@Get("/auth")
+		WebHandler check = r -> r.send(r.get("token") == r.getAuthorization() ? "same" : "different");
+	}
+
+	@Test
+	public void testSchemeLookup() {
+		assertThat(AuthorizationToken.parse("Bearer abc"), is(instanceOf(BearerAuthorizationToken.class)));
+		assertThat(AuthorizationToken.parse("bEaReR abc"), is(instanceOf(BearerAuthorizationToken.class)));
+		assertThat(AuthorizationToken.parse("Bearer \t abc").getToken(), is(equalTo("abc")));
+		var basic = AuthorizationToken.parse("basic dXNlcjpwYXNz");
+		assertThat(basic, is(instanceOf(BasicAuthorizationToken.class)));
+		assertThat(((BasicAuthorizationToken) basic).getUsername(), is(equalTo("user")));
+		assertThat(((BasicAuthorizationToken) basic).getPassword(), is(equalTo("pass")));
+		var unknown = AuthorizationToken.parse("Unknown abc");
+		assertThat(unknown.getClass(), is(equalTo(AuthorizationToken.class)));
+		assertThat(unknown.getType(), is(equalTo("Unknown")));
+		assertThat(unknown.getToken(), is(equalTo("abc")));
+		assertThat(AuthorizationToken.parse("abc"), is(instanceOf(SimpleAuthrizationToken.class)));
+		assertThat(AuthorizationToken.parse(null), is(instanceOf(NullAuthorizationToken.class)));
+	}
+
+	@Test
+	public void testParameterParsing() {
+		var token = (DigestAuthorizationToken) AuthorizationToken.parse("Digest username=\"Mufasa\", " +
+				"realm=\"http-auth@example.org\",uri=\"/dir/index.html\", qop=auth, nc=00000001,\tnonce = \"7ypf/xlj9XX\", " +
+				"opaque=\"a \\\"quoted\\\", value\", empty=\"\", flag");
+		assertThat(token.getUsername(), is(equalTo("Mufasa")));
+		assertThat(token.getParameter("realm"), is(equalTo("http-auth@example.org")));
+		assertThat(token.getParameter("uri"), is(equalTo("/dir/index.html")));
+		assertThat(token.getParameter("qop"), is(equalTo("auth")));
+		assertThat(token.getParameter("nc"), is(equalTo("00000001")));
+		assertThat(token.getParameter("nonce"), is(equalTo("7ypf/xlj9XX")));
+		assertThat(token.getOpaque(), is(equalTo("a \"quoted\", value")));
+		assertThat(token.getParameter("empty"), is(equalTo("")));
+		assertThat(token.getParameter("flag"), is(nullValue()));
+	}
+
+	@Test
+	public void testServiceLoaderScheme() {
+		var token = AuthorizationToken.parse("CUSTOM key=value");
+		assertThat(token, is(instanceOf(CustomToken.class)));
+		assertThat(((CustomToken) token).getParameter("key"), is(equalTo("value")));
+	}
+
+	@Test
+	public void testRegisteredScheme() {
+		AuthorizationToken.register("Registered", RegisteredToken::new);
+		var token = AuthorizationToken.parse("registered abc");
+		assertThat(token, is(instanceOf(RegisteredToken.class)));
+		assertThat(token.getType(), is(equalTo("registered")));
+		assertThat(token.getToken(), is(equalTo("abc")));
+	}
+
+	@Test
+	public void testParsedOncePerRequest(VertxTestContext context, Vertx vertx) {
+		deployController(new TestController(), vertx, context.succeeding(s -> {
+			getClient(vertx).get(port, "localhost", "/auth").putHeader("Authorization", "Bearer abc").send()
+			.map(r -> {
+				assertThat(r, isSuccess());
+				assertThat(r.bodyAsString(), is(equalTo("same")));
+				return null;
+			})
+			.onComplete(context.succeedingThenComplete());
+		}));
+	}
+
+}
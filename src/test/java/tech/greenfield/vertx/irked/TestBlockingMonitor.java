@@ -0,0 +1,90 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.metrics.BlockingMonitor;
+import tech.greenfield.vertx.irked.metrics.RouteMetrics;
+
+public class TestBlockingMonitor extends TestBase {
+
+	Router router;
+
+	public class TestController extends Controller {
+		@Endpoint("/items/*")
+		WebHandler middleware = Request::next;
+
+		@Get("/items/:id")
+		String item(Request r) throws InterruptedException {
+			Thread.sleep(30); // don't do this at home
+			return "blocked";
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) throws Exception {
+		router = Irked.router(vertx).enableMetrics().configure(new TestController());
+		vertx.createHttpServer().requestHandler(router).listen(port).<Void>mapEmpty().onComplete(context.succeedingThenComplete());
+	}
+
+	@AfterEach
+	public void stopCapture() {
+		BlockingMonitor.stopCapturingStacks();
+	}
+
+	@Test
+	public void testTerminatedThreadsAreDropped(VertxTestContext context) throws InterruptedException {
+		RouteMetrics item = router.metrics().route("GET /items/:id");
+		Runnable handler = () -> item.handlerCompleted(item.handlerStarted());
+		for (int i = 0; i < 100; i++) { // like an elastic worker pool
+			Thread worker = new Thread(handler);
+			worker.start();
+			worker.join();
+		}
+		assertThat(item.getExecutionCount(), is(100L));
+		// each thread dropped its terminated predecessors when it registered, so at most the last one is left
+		assertThat(BlockingMonitor.trackedThreads(), is(lessThanOrEqualTo(Thread.getAllStackTraces().size() + 1)));
+		context.completeNow();
+	}
+
+	@Test
+	public void testBlockingAttribution(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		client.get(port, "localhost", "/items/1").send() // warm up, so the stack is not captured while loading classes
+		.compose(r -> {
+			BlockingMonitor.captureStacks(5);
+			return client.get(port, "localhost", "/items/1").send();
+		})
+		.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(BlockingMonitor.getThresholds().length, is(3));
+			RouteMetrics item = router.metrics().route("GET /items/:id");
+			assertThat(item.getBlockingCount(0), is(2L));
+			assertThat(item.getBlockingCount(1), is(2L));
+			assertThat(item.getBlockingCount(2), is(0L));
+			assertThat(item.getMaxExecutionTime(), is(greaterThanOrEqualTo(30000000L)));
+			RouteMetrics middleware = router.metrics().route("* /items/*");
+			assertThat(middleware.getBlockingCount(1), is(0L)); // nested handler time is not attributed to middle-ware
+			var worst = item.getWorstBlocking();
+			assertThat(worst, is(notNullValue()));
+			assertThat(worst.getThread(), startsWith("vert.x-eventloop-thread"));
+			assertThat(Arrays.stream(worst.getStackTrace()).anyMatch(e -> e.getMethodName().equals("item")), is(true));
+			assertThat(middleware.getWorstBlocking(), is(nullValue()));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
@@ -0,0 +1,68 @@
+package tech.greenfield.vertx.irked;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+
+public class TestCancelOnDisconnect extends TestBase {
+
+	AtomicBoolean cancelled = new AtomicBoolean(false);
+	CompletableFuture<String> pending = new CompletableFuture<>();
+
+	public class TestController extends Controller {
+		@Get("/cancel-handler")
+		void cancelHandler(Request r) {
+			r.onCancel(v -> cancelled.set(true));
+		}
+
+		@Get("/completable")
+		CompletableFuture<String> completable(Request r) {
+			return pending;
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		deployController(new TestController(), vertx, context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testCancelHandler(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/cancel-handler").timeout(200).send()
+		.transform(r -> waitFor(vertx, cancelled::get))
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testCompletableFutureCancelled(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/completable").timeout(200).send()
+		.transform(r -> waitFor(vertx, pending::isCancelled))
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	private Future<Void> waitFor(Vertx vertx, BooleanSupplier condition) {
+		Promise<Void> promise = Promise.promise();
+		long start = System.currentTimeMillis();
+		vertx.setPeriodic(20, id -> {
+			if (condition.getAsBoolean()) {
+				vertx.cancelTimer(id);
+				promise.complete();
+			} else if (System.currentTimeMillis() - start > 3000) {
+				vertx.cancelTimer(id);
+				promise.fail("Request was not cancelled");
+			}
+		});
+		return promise.future();
+	}
+
+}
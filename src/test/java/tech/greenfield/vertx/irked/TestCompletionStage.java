@@ -0,0 +1,150 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.status.NotFound;
+
+public class TestCompletionStage extends TestBase {
+
+	public static class ContextCheckingRequest extends Request {
+		private Context context;
+		public ContextCheckingRequest(Request request) {
+			super(request);
+			context = Vertx.currentContext();
+		}
+		@Override
+		public io.vertx.core.Future<Void> send(Object object) {
+			if (Vertx.currentContext() != context)
+				return sendContent("wrong context");
+			return super.send(object);
+		}
+	}
+
+	public static class SendOrFailRequest extends Request {
+		public SendOrFailRequest(Request request) {
+			super(request);
+		}
+		@Override
+		public <T> io.vertx.core.Future<Void> sendOrFail(io.vertx.core.AsyncResult<T> result) {
+			response().putHeader("X-Send-Or-Fail", result.succeeded() ? "sent" : "failed");
+			return super.sendOrFail(result);
+		}
+	}
+
+	public class OverridingController extends Controller {
+		@Get("/success")
+		CompletionStage<String> success(Request r) {
+			return CompletableFuture.supplyAsync(() -> "overridden");
+		}
+
+		@Get("/failure")
+		CompletionStage<String> failure(Request r) {
+			return CompletableFuture.supplyAsync(() -> { throw new NotFound("missing").unchecked(); });
+		}
+
+		@Override
+		protected Request getRequestContext(Request request) {
+			return new SendOrFailRequest(request);
+		}
+	}
+
+	public class TestController extends Controller {
+		@Get("/completed")
+		CompletableFuture<String> completed(Request r) {
+			return CompletableFuture.completedFuture("completed");
+		}
+
+		@Get("/async")
+		CompletionStage<JsonObject> async(ContextCheckingRequest r) {
+			return CompletableFuture.supplyAsync(() -> new JsonObject().put("value", "async"));
+		}
+
+		@Get("/failed")
+		CompletionStage<String> failed(Request r) {
+			return CompletableFuture.supplyAsync(() -> { throw new NotFound("missing").unchecked(); });
+		}
+
+		@Endpoint("/overridden")
+		OverridingController overriding = new OverridingController();
+
+		@Get("/field")
+		WebResult<Request> field = r -> CompletableFuture.supplyAsync(() -> "field");
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		deployController(new TestController(), vertx, context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testCompletedFuture(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/completed").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r, hasBody("completed"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testAsyncStage(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/async").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.bodyAsJsonObject().getString("value"), equalTo("async"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testFailedStage(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/failed").send().map(r -> {
+			assertThat(r, is(status(new NotFound())));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testFieldStage(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/field").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r, hasBody("field"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testSendOrFailOverride(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/overridden/success").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r, hasBody("overridden"));
+			assertThat(r.getHeader("X-Send-Or-Fail"), is(equalTo("sent")));
+			return null;
+		})
+		.compose(v -> getClient(vertx).get(port, "localhost", "/overridden/failure").send()).map(r -> {
+			assertThat(r, is(status(new NotFound())));
+			assertThat(r.getHeader("X-Send-Or-Fail"), is(equalTo("failed")));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
@@ -0,0 +1,218 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.annotations.OnFail;
+import tech.greenfield.vertx.irked.auth.AuthorizationToken;
+import tech.greenfield.vertx.irked.auth.BasicAuthorizationToken;
+import tech.greenfield.vertx.irked.auth.CredentialVerificationHandler;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.base.TestClock;
+import tech.greenfield.vertx.irked.metrics.MetricsController;
+import tech.greenfield.vertx.irked.status.ServiceUnavailable;
+
+public class TestCredentialVerification extends TestBase {
+
+	private static final String CHALLENGE = "Bearer realm=\"irked\"";
+
+	AtomicInteger verifications = new AtomicInteger();
+	TestClock clock = new TestClock(1_000_000);
+	CredentialVerificationHandler<String> auth;
+
+	Future<String> verify(Vertx vertx, AuthorizationToken token) {
+		verifications.incrementAndGet();
+		if (token instanceof BasicAuthorizationToken) {
+			var basic = (BasicAuthorizationToken) token;
+			return Future.succeededFuture("secret".equals(basic.getPassword()) ? basic.getUsername() : null);
+		}
+		switch (token.getToken()) {
+		case "alice-token": return Future.succeededFuture("alice");
+		case "bob-token": return Future.succeededFuture("bob");
+		case "slow-token": return vertx.timer(100).map(v -> "slow");
+		case "broken-token": return Future.failedFuture(new ServiceUnavailable("Identity service unavailable"));
+		default: return Future.succeededFuture(null);
+		}
+	}
+
+	public class TestController extends Controller {
+		@Endpoint("/api/*")
+		CredentialVerificationHandler<String> verifier = auth;
+
+		@Get("/api/me")
+		WebHandler me = r -> r.send(CredentialVerificationHandler.<String>principal(r));
+
+		@Endpoint("/metrics")
+		MetricsController metrics = new MetricsController();
+
+		@OnFail
+		@Endpoint("/*")
+		WebHandler failureHandler = Request.failureHandler();
+
+		@Override
+		protected void onConfigure(Router router) {
+			router.metrics().addCache("credentials", auth);
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		auth = CredentialVerificationHandler.<String>create(token -> verify(vertx, token), 1000, 100, 2)
+				.challenge(CHALLENGE).clock(clock);
+		deployController(new TestController(), vertx, context.succeedingThenComplete());
+	}
+
+	private Future<HttpResponse<Buffer>> request(Vertx vertx, String authorization) {
+		var request = getClient(vertx).get(port, "localhost", "/api/me");
+		if (authorization != null)
+			request.putHeader("Authorization", authorization);
+		return request.send();
+	}
+
+	@Test
+	public void testCachedCredentials(VertxTestContext context, Vertx vertx) {
+		request(vertx, "Bearer alice-token").map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r, hasBody("alice"));
+			return null;
+		})
+		.compose(v -> request(vertx, "bearer alice-token")).map(r -> {
+			assertThat(r, hasBody("alice"));
+			assertThat(verifications.get(), is(1));
+			assertThat(auth.getHitCount(), is(1L));
+			assertThat(auth.getMissCount(), is(1L));
+			return null;
+		})
+		.compose(v -> request(vertx, "Basic dXNlcjpzZWNyZXQ=")).map(r -> {
+			assertThat(r, hasBody("user"));
+			assertThat(verifications.get(), is(2));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testCacheMetrics(VertxTestContext context, Vertx vertx) {
+		request(vertx, "Bearer alice-token")
+		.compose(v -> request(vertx, "Bearer alice-token"))
+		.compose(v -> getClient(vertx).get(port, "localhost", "/metrics").send()).map(r -> {
+			assertThat(r, isSuccess());
+			String metrics = r.bodyAsString();
+			assertThat(metrics, containsString("irked_cache_lookups_total{cache=\"credentials\",result=\"hit\"} 1\n"));
+			assertThat(metrics, containsString("irked_cache_lookups_total{cache=\"credentials\",result=\"miss\"} 1\n"));
+			assertThat(metrics, containsString("irked_cache_evictions_total{cache=\"credentials\"} 0\n"));
+			assertThat(metrics, containsString("irked_cache_size{cache=\"credentials\"} 1\n"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testNegativeCaching(VertxTestContext context, Vertx vertx) {
+		request(vertx, "Bearer mallory-token").map(r -> {
+			assertThat(r, status(401));
+			assertThat(r.getHeader("WWW-Authenticate"), is(equalTo(CHALLENGE)));
+			return null;
+		})
+		.compose(v -> request(vertx, "Bearer mallory-token")).map(r -> {
+			assertThat(r, status(401));
+			assertThat(verifications.get(), is(1));
+			clock.advance(101);
+			return null;
+		})
+		.compose(v -> request(vertx, "Bearer mallory-token")).map(r -> {
+			assertThat(r, status(401));
+			assertThat(verifications.get(), is(2));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testMissingCredentials(VertxTestContext context, Vertx vertx) {
+		request(vertx, null).map(r -> {
+			assertThat(r, status(401));
+			assertThat(r.getHeader("WWW-Authenticate"), is(equalTo(CHALLENGE)));
+			return null;
+		})
+		.compose(v -> request(vertx, "Unknown alice-token")).map(r -> {
+			assertThat(r, status(401));
+			assertThat(verifications.get(), is(0));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testSingleFlight(VertxTestContext context, Vertx vertx) {
+		List<Future<HttpResponse<Buffer>>> requests = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			requests.add(request(vertx, "Bearer slow-token"));
+		Future.all(requests).map(v -> {
+			for (var r : requests)
+				assertThat(r.result(), hasBody("slow"));
+			assertThat(verifications.get(), is(1));
+			assertThat(auth.getMissCount(), is(1L));
+			assertThat(auth.getCoalescedCount(), is(4L));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testVerificationFailureIsNotCached(VertxTestContext context, Vertx vertx) {
+		request(vertx, "Bearer broken-token").map(r -> {
+			assertThat(r, status(503));
+			return null;
+		})
+		.compose(v -> request(vertx, "Bearer broken-token")).map(r -> {
+			assertThat(r, status(503));
+			assertThat(verifications.get(), is(2));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testExpiryAndEviction(VertxTestContext context, Vertx vertx) {
+		request(vertx, "Bearer alice-token").map(r -> {
+			clock.advance(1001);
+			return null;
+		})
+		.compose(v -> request(vertx, "Bearer alice-token")).map(r -> {
+			assertThat(r, hasBody("alice"));
+			assertThat(verifications.get(), is(2));
+			return null;
+		})
+		.compose(v -> request(vertx, "Bearer bob-token"))
+		.compose(v -> request(vertx, "Basic dXNlcjpzZWNyZXQ=")).map(r -> {
+			assertThat(auth.size(), is(lessThanOrEqualTo(2)));
+			assertThat(auth.getEvictionCount(), is(greaterThanOrEqualTo(1L)));
+			auth.invalidateAll();
+			assertThat(auth.size(), is(0));
+			return null;
+		})
+		.compose(v -> request(vertx, "Bearer bob-token")).map(r -> {
+			assertThat(r, hasBody("bob"));
+			assertThat(verifications.get(), is(5));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
@@ -0,0 +1,125 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.annotations.Timeout;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.status.ServiceUnavailable;
+
+public class TestDeadline extends TestBase {
+
+	AtomicBoolean expired = new AtomicBoolean(false);
+	AtomicBoolean abandonedRan = new AtomicBoolean(false);
+	Promise<Void> abandonedContinued = Promise.promise();
+
+	public class TestController extends Controller {
+		@Get("/remaining")
+		@Timeout(5000)
+		void remaining(Request r) {
+			r.send(r.deadline() != null && r.remaining() > 0 && r.remaining() <= 5000 ? "OK" : "Missing deadline");
+		}
+
+		@Get("/none")
+		void none(Request r) {
+			r.send(r.deadline() == null && r.remaining() == -1 ? "OK" : "Unexpected deadline");
+		}
+
+		@Get("/expire")
+		@Timeout(200)
+		void expire(Request r) {
+			r.onExpire(v -> expired.set(true));
+		}
+
+		@Get("/header")
+		@Timeout(value = 5000, header = "X-Request-Timeout")
+		void header(Request r) {
+			if (r.remaining() <= 1000)
+				return; // let it expire
+			r.send("Header ignored");
+		}
+
+		@Get("/abandoned")
+		@Timeout(100)
+		WebHandler slow = r -> r.vertx().setTimer(300, t -> { // continue long after the deadline expired
+			r.next();
+			abandonedContinued.complete();
+		});
+
+		@Get("/abandoned")
+		void abandoned(Request r) {
+			abandonedRan.set(true);
+			r.send("Should not run");
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		deployController(new TestController(), vertx, context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testRemaining(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/remaining").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r, hasBody("OK"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testNoDeadline(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/none").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r, hasBody("OK"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testExpire(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/expire").send().map(r -> {
+			assertThat(r, is(status(new ServiceUnavailable())));
+			assertThat(expired.get(), is(true));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testHeaderDeadline(VertxTestContext context, Vertx vertx) {
+		long start = System.currentTimeMillis();
+		getClient(vertx).get(port, "localhost", "/header").putHeader("X-Request-Timeout", "300").send().map(r -> {
+			assertThat(r, is(status(new ServiceUnavailable())));
+			assertThat(System.currentTimeMillis() - start, is(lessThan(4000L)));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testAbandonExpired(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/abandoned").send().map(r -> {
+			assertThat(r, is(status(new ServiceUnavailable())));
+			return null;
+		})
+		.compose(v -> abandonedContinued.future()).map(v -> {
+			assertThat(abandonedRan.get(), is(false));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
@@ -0,0 +1,151 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import tech.greenfield.vertx.irked.auth.AuthorizationToken;
+import tech.greenfield.vertx.irked.auth.DigestAuthorizationToken;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.base.TestClock;
+import tech.greenfield.vertx.irked.helpers.DigestNonces;
+import tech.greenfield.vertx.irked.helpers.DigestNonces.Status;
+import tech.greenfield.vertx.irked.helpers.ThreadRandom;
+
+public class TestDigestNonces extends TestBase {
+
+	private static final byte[] KEY = "test-key".getBytes(StandardCharsets.UTF_8);
+
+	private final TestClock clock = new TestClock(1_000_000_000);
+
+	private DigestNonces clockedNonces(int maxTrackedNonces) {
+		return new DigestNonces(KEY, 300, maxTrackedNonces).setClock(clock);
+	}
+
+	private static DigestAuthorizationToken token(String nonce, int nc) {
+		return (DigestAuthorizationToken) AuthorizationToken.parse("Digest username=\"user\", realm=\"irked\", nonce=\"" + nonce +
+				"\", uri=\"/auth\", qop=auth, nc=" + String.format("%08x", nc) + ", cnonce=\"abc\", response=\"0\"");
+	}
+
+	@Test
+	public void testValidNonce() {
+		var nonces = new DigestNonces(300);
+		String nonce = nonces.generate("tag");
+		assertThat(nonces.verify(nonce), is(Status.VALID));
+		assertThat(new String(Base64.getDecoder().decode(nonce), StandardCharsets.UTF_8), containsString(":tag:"));
+		assertThat(token(nonce, 1).isNonceStale(0), is(false));
+		assertThat(nonces.generate(), is(not(equalTo(nonces.generate()))));
+	}
+
+	@Test
+	public void testInvalidNonce() {
+		var nonces = clockedNonces(100);
+		String text = new String(Base64.getDecoder().decode(nonces.generate()), StandardCharsets.UTF_8);
+		String tampered = Base64.getEncoder().encodeToString(("9" + text.substring(1)).getBytes(StandardCharsets.UTF_8));
+		assertThat(nonces.verify(tampered), is(Status.INVALID));
+		assertThat(nonces.verify("not a nonce"), is(Status.INVALID));
+		assertThat(nonces.verify(new DigestNonces(300).generate()), is(Status.INVALID));
+		assertThat(nonces.check(token(tampered, 1)), is(Status.INVALID));
+		var sameKey = clockedNonces(100);
+		assertThat(sameKey.verify(nonces.generate()), is(Status.VALID));
+	}
+
+	@Test
+	public void testStaleNonce() {
+		var nonces = clockedNonces(100);
+		String nonce = nonces.generate();
+		clock.advance(300_000);
+		assertThat(nonces.verify(nonce), is(Status.VALID));
+		clock.advance(1000);
+		assertThat(nonces.verify(nonce), is(Status.STALE));
+		assertThat(nonces.check(token(nonce, 1)), is(Status.STALE));
+	}
+
+	@Test
+	public void testReplay() {
+		var nonces = clockedNonces(100);
+		String nonce = nonces.generate();
+		assertThat(nonces.check(token(nonce, 1)), is(Status.VALID));
+		assertThat(nonces.check(token(nonce, 1)), is(Status.REPLAYED));
+		assertThat(nonces.check(token(nonce, 3)), is(Status.VALID));
+		assertThat(nonces.check(token(nonce, 2)), is(Status.VALID));
+		assertThat(nonces.check(token(nonce, 2)), is(Status.REPLAYED));
+		assertThat(nonces.check(token(nonce, 100)), is(Status.VALID));
+		assertThat(nonces.check(token(nonce, 4)), is(Status.REPLAYED)); // out of the window
+		assertThat(nonces.check(token(nonces.generate(), 1)), is(Status.VALID));
+	}
+
+	@Test
+	public void testMissingQop() {
+		var nonces = clockedNonces(100);
+		String nonce = nonces.generate();
+		var legacy = (DigestAuthorizationToken) AuthorizationToken.parse("Digest username=\"user\", realm=\"irked\", nonce=\"" +
+				nonce + "\", uri=\"/auth\", response=\"0\"");
+		assertThat(nonces.check(legacy), is(Status.INVALID));
+		nonces.setAllowMissingQop(true);
+		assertThat(nonces.check(legacy), is(Status.VALID));
+		clock.advance(301_000);
+		assertThat(nonces.check(legacy), is(Status.STALE));
+	}
+
+	@Test
+	public void testEviction() {
+		var nonces = clockedNonces(16);
+		String first = nonces.generate();
+		assertThat(nonces.check(token(first, 1)), is(Status.VALID));
+		for (int i = 0; i < 1000; i++) {
+			clock.advance(1000);
+			assertThat(nonces.check(token(nonces.generate(), 1)), is(Status.VALID));
+		}
+		assertThat(nonces.check(token(first, 2)), is(Status.STALE));
+	}
+
+	@Test
+	public void testExpiredNoncesAreNotEvicted() {
+		var nonces = clockedNonces(16);
+		for (int i = 0; i < 1000; i++) {
+			clock.advance(301_000);
+			String nonce = nonces.generate();
+			assertThat(nonces.check(token(nonce, 1)), is(Status.VALID));
+			assertThat(nonces.check(token(nonce, 1)), is(Status.REPLAYED));
+		}
+	}
+
+	@Test
+	public void testConcurrentGeneration() throws InterruptedException {
+		var nonces = new DigestNonces(300);
+		Set<SecureRandom> generators = Collections.newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<>()));
+		Set<String> generated = ConcurrentHashMap.newKeySet();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			threads.add(new Thread(() -> {
+				generators.add(ThreadRandom.current());
+				for (int j = 0; j < 1000; j++)
+					generated.add(nonces.generate());
+			}));
+		for (var thread : threads)
+			thread.start();
+		for (var thread : threads)
+			thread.join();
+		assertThat(generated.size(), is(4000));
+		// each thread has its own generator, that does not share state with the other threads' generators
+		assertThat(generators.size(), is(4));
+		Set<String> algorithms = new HashSet<>();
+		for (var generator : generators)
+			algorithms.add(generator.getAlgorithm());
+		assertThat(algorithms, contains("DRBG"));
+	}
+
+}
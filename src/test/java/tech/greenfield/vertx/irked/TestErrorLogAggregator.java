@@ -0,0 +1,100 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.logging.ErrorLogAggregator;
+
+public class TestErrorLogAggregator extends TestBase {
+
+	private boolean fail(ErrorLogAggregator aggregator, String route) {
+		return aggregator.error(log, route, new IllegalStateException("downstream failed"), "Handler {} threw an unexpected exception", route);
+	}
+
+	@Test
+	public void testAggregation(VertxTestContext context, Vertx vertx) {
+		var aggregator = new ErrorLogAggregator(vertx, 100);
+		assertThat(fail(aggregator, "method a"), is(true));
+		for (int i = 0; i < 4; i++)
+			assertThat(fail(aggregator, "method a"), is(false));
+		assertThat(fail(aggregator, "method b"), is(true));
+		assertThat(aggregator.getTotalCount(), is(6L));
+		assertThat(aggregator.getSuppressedCount(), is(4L));
+		assertThat(aggregator.getCounts(), hasEntry("method a: java.lang.IllegalStateException", 5L));
+		assertThat(aggregator.getCounts(), hasEntry("method b: java.lang.IllegalStateException", 1L));
+		// after a full quiet interval, signatures are forgotten and logged in full again
+		vertx.setTimer(350, id -> context.verify(() -> {
+			assertThat(aggregator.getCounts().isEmpty(), is(true));
+			assertThat(fail(aggregator, "method a"), is(true));
+			context.completeNow();
+		}));
+	}
+
+	@Test
+	public void testRetainedForFullInterval(VertxTestContext context, Vertx vertx) {
+		var aggregator = new ErrorLogAggregator(vertx, 200);
+		assertThat(fail(aggregator, "method a"), is(true));
+		// the first summary runs before the signature was quiet for a full interval, so it must not forget it
+		vertx.setTimer(300, id -> context.verify(() -> {
+			assertThat(aggregator.getCounts(), hasEntry("method a: java.lang.IllegalStateException", 1L));
+			assertThat(fail(aggregator, "method a"), is(false));
+			context.completeNow();
+		}));
+	}
+
+	@Test
+	public void testDisabled(VertxTestContext context, Vertx vertx) {
+		var aggregator = new ErrorLogAggregator(vertx, 0);
+		for (int i = 0; i < 3; i++)
+			assertThat(fail(aggregator, "method a"), is(true));
+		assertThat(aggregator.getTotalCount(), is(3L));
+		assertThat(aggregator.getSuppressedCount(), is(0L));
+		context.completeNow();
+	}
+
+	public class StormController extends Controller { // no failure handlers
+		@Get("/throw")
+		void unexpected(Request r) {
+			throw new IllegalStateException("downstream failed");
+		}
+
+		@Get("/fail")
+		WebHandler failed = r -> r.fail(new IllegalStateException("downstream failed"));
+	}
+
+	@Test
+	public void testErrorStormWithoutFailureHandler(VertxTestContext context, Vertx vertx) {
+		ByteArrayOutputStream logged = new ByteArrayOutputStream();
+		PrintStream stderr = System.err;
+		deployController(new StormController(), vertx, context.succeeding(id -> {
+			System.setErr(new PrintStream(logged, true, StandardCharsets.UTF_8));
+			List<Future<?>> requests = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				requests.add(getClient(vertx).get(port, "localhost", "/throw").send());
+				requests.add(getClient(vertx).get(port, "localhost", "/fail").send());
+			}
+			Future.all(requests).onComplete(context.succeeding(v -> context.verify(() -> {
+				System.setErr(stderr);
+				String log = logged.toString(StandardCharsets.UTF_8);
+				// each failure is logged once in full, by Irked for the thrown exception and by the router for the other
+				assertThat(log.split("threw an unexpected exception", -1).length - 1, is(1));
+				assertThat(log.split("Unhandled exception in router", -1).length - 1, is(1));
+				context.completeNow();
+			})));
+		}));
+	}
+
+}
@@ -0,0 +1,103 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.diagnostics.FlightRecorderSupport;
+import tech.greenfield.vertx.irked.diagnostics.RouteDispatchEvent;
+import tech.greenfield.vertx.irked.diagnostics.WebSocketMessageEvent;
+
+public class TestFlightRecorderEvents extends TestBase {
+
+	Recording recording;
+
+	public class TestController extends Controller {
+		@Get("/async/:id")
+		Future<String> async(Request r) {
+			return Future.succeededFuture("OK");
+		}
+
+		@Get("/fail")
+		void fail(Request r) {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		recording = new Recording();
+		for (String event : List.of("RouteDispatch", "RequestContext", "HandlerInvocation", "AsyncCompletion", "FailureHandling"))
+			recording.enable("tech.greenfield.irked." + event).withoutThreshold();
+		recording.start();
+		deployController(new TestController(), vertx, context.succeedingThenComplete());
+	}
+
+	@AfterEach
+	public void closeRecording() {
+		recording.close();
+	}
+
+	@Test
+	public void testEvents(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		client.get(port, "localhost", "/async/1").send()
+		.compose(r -> client.get(port, "localhost", "/fail").send())
+		.map(r -> {
+			assertThat(r, is(status(500)));
+			recording.stop();
+			try {
+				Path file = Files.createTempFile("irked", ".jfr");
+				recording.dump(file);
+				List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+				Files.delete(file);
+				List<String> types = events.stream().map(e -> e.getEventType().getName()).collect(Collectors.toList());
+				assertThat(types, hasItems("tech.greenfield.irked.RouteDispatch", "tech.greenfield.irked.RequestContext",
+						"tech.greenfield.irked.HandlerInvocation", "tech.greenfield.irked.AsyncCompletion",
+						"tech.greenfield.irked.FailureHandling"));
+				RecordedEvent dispatch = events.stream().filter(e -> e.getEventType().getName().equals("tech.greenfield.irked.RouteDispatch"))
+						.filter(e -> "GET /async/:id".equals(e.getString("route"))).findFirst().orElseThrow();
+				assertThat(dispatch.getClass("controller").getName(), is(equalTo(TestController.class.getName())));
+				RecordedEvent failure = events.stream().filter(e -> e.getEventType().getName().equals("tech.greenfield.irked.FailureHandling"))
+						.findFirst().orElseThrow();
+				assertThat(failure.getClass("exception").getName(), is(equalTo(IllegalStateException.class.getName())));
+				assertThat(failure.getString("route"), is(equalTo("GET /fail")));
+				for (RecordedEvent event : events)
+					if (event.getEventType().getName().startsWith("tech.greenfield.irked."))
+						assertThat(event.getEventType().getName(), event.getString("route"), is(oneOf("GET /async/:id", "GET /fail")));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testEventTypeEnabled(VertxTestContext context) {
+		assertThat(FlightRecorderSupport.AVAILABLE, is(true));
+		assertThat(RouteDispatchEvent.isTypeEnabled(), is(true));
+		assertThat(WebSocketMessageEvent.isTypeEnabled(), is(false)); // not enabled by the recording
+		recording.close();
+		assertThat(RouteDispatchEvent.isTypeEnabled(), is(false)); // events are not created without a recording
+		context.completeNow();
+	}
+
+}
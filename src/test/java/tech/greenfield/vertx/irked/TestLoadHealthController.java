@@ -0,0 +1,139 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.metrics.LoadHealthController;
+import tech.greenfield.vertx.irked.metrics.LoadHealthController.Status;
+
+public class TestLoadHealthController extends TestBase {
+
+	public class TestController extends Controller {
+		@Endpoint("/health")
+		LoadHealthController health;
+
+		TestController(LoadHealthController health) {
+			this.health = health;
+		}
+
+		@Get("/items")
+		String items(Request r) {
+			return "items";
+		}
+
+		@Get("/busy")
+		String busy(Request r) {
+			long until = System.nanoTime() + 30_000_000L, count = 0;
+			while (System.nanoTime() < until)
+				count++;
+			return "done " + count;
+		}
+	}
+
+	private Future<Void> start(Vertx vertx, LoadHealthController health) throws Exception {
+		return start(vertx, Irked.router(vertx), health);
+	}
+
+	private Future<Void> start(Vertx vertx, Router router, LoadHealthController health) throws Exception {
+		return vertx.createHttpServer().requestHandler(router.configure(new TestController(health))).listen(port).mapEmpty();
+	}
+
+	@Test
+	public void testHealthy(VertxTestContext context, Vertx vertx) throws Exception {
+		start(vertx, new LoadHealthController().setLagThresholds(1000, 2000).setUtilizationThresholds(1, 1))
+		.compose(v -> getClient(vertx).get(port, "localhost", "/health").send())
+		.map(r -> {
+			assertThat(r, isSuccess());
+			JsonObject report = r.bodyAsJsonObject();
+			assertThat(report.getString("status"), is(equalTo("ok")));
+			assertThat(report.getJsonArray("loops").size(), is(greaterThan(0)));
+			assertThat(r.getHeader("X-Load"), is(nullValue()));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testDegraded(VertxTestContext context, Vertx vertx) throws Exception {
+		start(vertx, new LoadHealthController().setUtilizationThresholds(-1, 1).setLoadHeader("X-Load"))
+		.compose(v -> getClient(vertx).get(port, "localhost", "/items").send())
+		.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.getHeader("X-Load"), matchesPattern("degraded; utilization=\\d\\.\\d\\d; lag=\\d+"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testLoadChangesStatus(VertxTestContext context, Vertx vertx) throws Exception {
+		var health = new LoadHealthController().setLagThresholds(10000, 20000).setUtilizationThresholds(0.5, 2);
+		assertThat(health.getStatus(), is(Status.OK)); // not configured yet
+		var loaded = new AtomicBoolean();
+		var done = new AtomicBoolean();
+		// poll from a thread of its own, so that the polling is not delayed by the busy event loop
+		var poller = new Thread(() -> {
+			while (!done.get()) {
+				if (health.getStatus() == Status.DEGRADED)
+					loaded.set(true);
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+		start(vertx, Irked.router(vertx).disableMetrics(), health) // utilization is measured without metrics too
+		.compose(v -> vertx.timer(300))
+		.map(v -> {
+			assertThat(health.getStatus(), is(Status.OK));
+			poller.start();
+			return null;
+		})
+		.compose(v -> {
+			List<Future<Void>> clients = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				Future<Void> requests = Future.succeededFuture();
+				for (int j = 0; j < 10; j++)
+					requests = requests.compose(x -> getClient(vertx).get(port, "localhost", "/busy").send()).mapEmpty();
+				clients.add(requests);
+			}
+			return Future.all(clients);
+		})
+		.compose(v -> vertx.timer(300))
+		.map(v -> {
+			done.set(true);
+			assertThat(loaded.get(), is(true));
+			assertThat(health.getStatus(), is(Status.OK));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testOverloaded(VertxTestContext context, Vertx vertx) throws Exception {
+		start(vertx, new LoadHealthController().setUtilizationThresholds(-1, -1))
+		.compose(v -> getClient(vertx).get(port, "localhost", "/health").send())
+		.map(r -> {
+			assertThat(r, status(503));
+			assertThat(r.bodyAsJsonObject().getString("status"), is(equalTo("overloaded")));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
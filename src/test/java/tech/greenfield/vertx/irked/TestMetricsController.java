@@ -0,0 +1,82 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.metrics.MetricsController;
+
+public class TestMetricsController extends TestBase {
+
+	public class TestController extends Controller {
+		@Endpoint("/metrics")
+		MetricsController metrics = new MetricsController();
+
+		@Get("/items/:id")
+		Response item(Request r) {
+			if (r.pathParam("id").equals("fail"))
+				throw new IllegalArgumentException("bad id");
+			return Response.ok("found");
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		deployController(new TestController(), vertx, context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testScrape(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		client.get(port, "localhost", "/items/1").send()
+		.compose(r -> client.get(port, "localhost", "/items/fail").send())
+		.compose(r -> client.get(port, "localhost", "/metrics").send())
+		.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.getHeader("Content-Type"), startsWith("text/plain; version=0.0.4"));
+			String body = r.bodyAsString();
+			assertThat(body, containsString("# TYPE irked_request_duration_seconds histogram\n"));
+			assertThat(body, containsString("irked_requests_total{route=\"GET /items/:id\",status=\"2xx\"} 1\n"));
+			assertThat(body, containsString("irked_requests_total{route=\"GET /items/:id\",status=\"5xx\"} 1\n"));
+			assertThat(body, containsString("irked_request_duration_seconds_bucket{route=\"GET /items/:id\",le=\"+Inf\"} 2\n"));
+			assertThat(body, containsString("irked_request_failures_total{route=\"GET /items/:id\",exception=\"java.lang.IllegalArgumentException\"} 1\n"));
+			assertThat(body, containsString("irked_unexpected_exceptions_total 1\n"));
+			assertThat(body, containsString("irked_event_loop_lag_seconds{loop=\"0\"}"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testRepeatedScrape(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		client.get(port, "localhost", "/items/1").send()
+		.compose(r -> client.get(port, "localhost", "/items/2").send())
+		.compose(r -> client.get(port, "localhost", "/metrics").send())
+		.compose(r -> client.get(port, "localhost", "/metrics").send()) // reuses the buffer of the first scrape
+		.map(r -> {
+			assertThat(r, isSuccess());
+			long previous = 0;
+			for (String line : r.bodyAsString().split("\n")) {
+				if (!line.startsWith("irked_request_duration_seconds_bucket{route=\"GET /items/:id\""))
+					continue;
+				long count = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+				assertThat(line, count, is(greaterThanOrEqualTo(previous)));
+				previous = count;
+			}
+			assertThat(previous, is(2L));
+			assertThat(r.bodyAsString(), containsString("irked_request_duration_seconds_bucket{route=\"GET /items/:id\",le=\"10\"} 2\n"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
@@ -0,0 +1,93 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Blocking;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.diagnostics.ProfilerController;
+
+public class TestProfilerController extends TestBase {
+
+	public class TestController extends Controller {
+		@Endpoint("/admin/profile")
+		ProfilerController profiler = new ProfilerController(5);
+
+		@Get("/busy")
+		String busy(Request r) {
+			return "done " + spin(System.nanoTime() + 300_000_000L);
+		}
+
+		@Get("/blocking-busy")
+		@Blocking
+		WebHandler blockingBusy = r -> r.send("done " + spin(System.nanoTime() + 300_000_000L));
+
+		private long spin(long until) {
+			long count = 0;
+			while (System.nanoTime() < until)
+				count++;
+			return count;
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) throws Exception {
+		vertx.createHttpServer().requestHandler(Irked.router(vertx).enableMetrics().configure(new TestController())).listen(port)
+		.<Void>mapEmpty().onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testProfile(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		var profile = client.get(port, "localhost", "/admin/profile?seconds=0.5&rate=200").send();
+		vertx.setTimer(50, id -> client.get(port, "localhost", "/busy").send());
+		profile.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.getHeader("Content-Type"), startsWith("text/plain"));
+			String stacks = r.bodyAsString();
+			assertThat(stacks, containsString("vert.x-eventloop-thread;[GET /busy];"));
+			assertThat(stacks, containsString("TestProfilerController$TestController.spin"));
+			assertThat(stacks, matchesPattern("(?s)([^\\n]+ \\d+\\n)+"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testWorkerThreadRoutes(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		var profile = client.get(port, "localhost", "/admin/profile?seconds=0.6&rate=200").send();
+		// the worker thread is started after profiling has started, and should be found when the thread list is refreshed
+		vertx.setTimer(50, id -> client.get(port, "localhost", "/blocking-busy").send());
+		profile.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.bodyAsString(), containsString("vert.x-worker-thread;[GET /blocking-busy];"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testInvalidParameters(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		client.get(port, "localhost", "/admin/profile?seconds=10").send()
+		.compose(r -> {
+			assertThat(r, status(400));
+			return client.get(port, "localhost", "/admin/profile?rate=many").send();
+		})
+		.map(r -> {
+			assertThat(r, status(400));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
@@ -0,0 +1,120 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Blocking;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.metrics.RouteMetrics;
+
+public class TestResourceUsageSampler extends TestBase {
+
+	Router router;
+
+	public class TestController extends Controller {
+		@Endpoint("/items/*")
+		WebHandler middleware = Request::next;
+
+		@Get("/items")
+		Future<JsonArray> items(Request r) {
+			byte[][] work = new byte[16][];
+			for (int i = 0; i < work.length; i++)
+				work[i] = new byte[64 * 1024];
+			Promise<JsonArray> result = Promise.promise();
+			r.vertx().setTimer(10, id -> {
+				JsonArray list = new JsonArray();
+				for (int i = 0; i < 1000; i++)
+					list.add("item " + i);
+				result.complete(list);
+			});
+			return result.future();
+		}
+
+		@Get("/blocking")
+		@Blocking
+		WebHandler blocking = r -> {
+			byte[][] work = new byte[16][];
+			for (int i = 0; i < work.length; i++)
+				work[i] = new byte[64 * 1024];
+			r.send("done " + work.length);
+		};
+
+		@Get("/callback")
+		WebHandler callback = r -> r.vertx().setTimer(10, id -> {
+			JsonArray list = new JsonArray();
+			for (int i = 0; i < 1000; i++)
+				list.add("item " + i);
+			r.send(list);
+		});
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) throws Exception {
+		router = Irked.router(vertx).enableMetrics().configure(new TestController()).sampleResourceUsage(1);
+		vertx.createHttpServer().requestHandler(router).listen(port).<Void>mapEmpty().onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testResourceUsage(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/items").send()
+		.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.bodyAsJsonArray().size(), is(1000));
+			RouteMetrics items = router.metrics().route("GET /items");
+			assertThat(items.getExecutionCount(), is(2L)); // the handler and sending its asynchronous result
+			assertThat(items.getSampledExecutions(), is(2L));
+			assertThat(items.getAllocatedBytes(), is(greaterThan(1024L * 1024)));
+			assertThat(items.getCpuTime(), is(greaterThan(0L)));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testWorkerThreadUsage(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/blocking").send()
+		.compose(r -> vertx.timer(50).map(r)) // the response may arrive before the worker thread exits the handler
+		.map(r -> {
+			assertThat(r, isSuccess());
+			RouteMetrics blocking = router.metrics().route("GET /blocking");
+			assertThat(blocking.getSampledExecutions(), is(1L));
+			assertThat(blocking.getAllocatedBytes(), is(greaterThan(1024L * 1024)));
+			assertThat(blocking.getBlockingCount(0), is(0L)); // worker threads are allowed to block
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testSerializationFromCallback(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/callback").send()
+		.map(r -> {
+			assertThat(r.bodyAsJsonArray().size(), is(1000));
+			RouteMetrics callback = router.metrics().route("GET /callback");
+			assertThat(callback.getExecutionCount(), is(2L)); // the handler and sending its response from the timer
+			assertThat(callback.getSampledExecutions(), is(2L));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testSamplingIsPerRouter(VertxTestContext context, Vertx vertx) {
+		Router other = Irked.router(vertx);
+		assertThat(other.metrics().getResourceSampleRate(), is(0.0));
+		assertThat(router.metrics().getResourceSampleRate(), is(1.0));
+		context.completeNow();
+	}
+
+}
@@ -0,0 +1,101 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.status.NoContent;
+
+public class TestResponse extends TestBase {
+
+	public class TestController extends Controller {
+		@Get("/ok")
+		Response ok(Request r) {
+			return Response.ok(new JsonObject().put("value", "ok")).header("X-Test", "yes");
+		}
+
+		@Get("/missing")
+		WebResult<Request> missing = r -> Response.notFound("No such item");
+
+		@Get("/async")
+		Future<Response> async(Request r) {
+			return Future.succeededFuture(Response.badRequest("Bad value"));
+		}
+
+		@Get("/html")
+		WebResult<Request> html = r -> Response.ok("<p>hello</p>").contentType("text/html");
+
+		@Get("/empty")
+		Response empty(Request r) {
+			return Response.noContent();
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		deployController(new TestController(), vertx, context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testOk(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/ok").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.getHeader("X-Test"), is(equalTo("yes")));
+			assertThat(r.bodyAsJsonObject().getString("value"), is(equalTo("ok")));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testNotFound(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/missing").send().map(r -> {
+			assertThat(r, is(notFound()));
+			assertThat(r.bodyAsJsonObject().getBoolean("status"), is(false));
+			assertThat(r.bodyAsJsonObject().getString("message"), is(equalTo("No such item")));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testAsync(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/async").send().map(r -> {
+			assertThat(r, is(status(400)));
+			assertThat(r.bodyAsJsonObject().getString("message"), is(equalTo("Bad value")));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testContentType(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/html").send().map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.getHeader("Content-Type"), is(equalTo("text/html")));
+			assertThat(r, hasBody("<p>hello</p>"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testNoContent(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/empty").send().map(r -> {
+			assertThat(r, is(status(new NoContent())));
+			assertThat(r, bodyEmpty());
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
@@ -0,0 +1,134 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.annotations.OnFail;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.metrics.LatencyHistogram;
+import tech.greenfield.vertx.irked.metrics.RouteMetrics;
+import tech.greenfield.vertx.irked.status.BadRequest;
+
+public class TestRouteMetrics extends TestBase {
+
+	Router router;
+
+	public class TestController extends Controller {
+		@Endpoint("/items/*")
+		WebHandler middleware = Request::next;
+
+		@Get("/items/:id")
+		Response item(Request r) {
+			return r.pathParam("id").equals("1") ? Response.ok("found") : Response.notFound();
+		}
+
+		@Get("/broken")
+		WebHandler broken = r -> r.fail(new BadRequest());
+
+		@OnFail
+		@Endpoint("/*")
+		WebHandler failureHandler = Request.failureHandler();
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) throws Exception {
+		router = Irked.router(vertx).enableMetrics().configure(new TestController());
+		vertx.createHttpServer().requestHandler(router).listen(port).<Void>mapEmpty().onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testRouteMetrics(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		client.get(port, "localhost", "/items/1").send()
+		.compose(r -> client.get(port, "localhost", "/items/2").send())
+		.compose(r -> client.get(port, "localhost", "/items/1").send())
+		.map(r -> {
+			RouteMetrics item = router.metrics().route("GET /items/:id");
+			assertThat(item.getRequestCount(), is(3L));
+			assertThat(item.getStatusCount(2), is(2L));
+			assertThat(item.getStatusCount(4), is(1L));
+			assertThat(item.getInFlight(), is(0L));
+			assertThat(item.getBytesWritten(), is(greaterThan(0L)));
+			for (var route : router.metrics().routes()) // middle-ware passed the requests on
+				if (route != item)
+					assertThat(route.getRequestCount(), is(0L));
+			assertThat(router.metrics().routes().size(), is(4));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testFailureRouteMetrics(VertxTestContext context, Vertx vertx) {
+		getClient(vertx).get(port, "localhost", "/broken").send()
+		.map(r -> {
+			assertThat(r.statusCode(), is(400));
+			RouteMetrics broken = router.metrics().route("GET /broken");
+			assertThat(broken.getRequestCount(), is(1L));
+			assertThat(broken.getStatusCount(4), is(1L));
+			RouteMetrics failure = router.metrics().route("@OnFail * /");
+			assertThat(failure.getRequestCount(), is(0L));
+			assertThat(failure.getExecutionCount(), is(1L));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testRecorder(VertxTestContext context, Vertx vertx) {
+		AtomicInteger completed = new AtomicInteger();
+		router.metrics().addRecorder((route, status, duration, bytes, cancelled) -> {
+			if (route.getName().equals("GET /items/:id") && status == 404)
+				completed.incrementAndGet();
+		});
+		getClient(vertx).get(port, "localhost", "/items/2").send()
+		.map(r -> {
+			assertThat(completed.get(), is(1));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testDisabledMetrics(VertxTestContext context, Vertx vertx) {
+		assertThat(Irked.router(vertx).metrics().isEnabled(), is(false)); // metrics collection is opt-in
+		var client = getClient(vertx);
+		router.disableMetrics();
+		client.get(port, "localhost", "/items/1").send()
+		.map(r -> {
+			assertThat(router.metrics().isEnabled(), is(false));
+			assertThat(router.metrics().route("GET /items/:id").getRequestCount(), is(0L));
+			assertThat(router.metrics().route("GET /items/:id").getExecutionCount(), is(0L));
+			router.enableMetrics();
+			return null;
+		})
+		.compose(v -> client.get(port, "localhost", "/items/1").send())
+		.map(r -> {
+			assertThat(router.metrics().route("GET /items/:id").getRequestCount(), is(1L));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testHistogram(VertxTestContext context) {
+		var histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++)
+			histogram.record(i);
+		assertThat(histogram.getCount(), is(1000L));
+		assertThat(histogram.getMax(), is(1000L));
+		assertThat((double) histogram.getValueAtPercentile(50), is(closeTo(500, 500 * 0.125)));
+		assertThat((double) histogram.getValueAtPercentile(99), is(closeTo(990, 990 * 0.125)));
+		context.completeNow();
+	}
+
+}
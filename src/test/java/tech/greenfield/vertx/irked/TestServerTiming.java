@@ -0,0 +1,67 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+
+public class TestServerTiming extends TestBase {
+
+	public class TestController extends Controller {
+		@Endpoint("/items/*")
+		WebHandler middleware = Request::next;
+
+		@Get("/items/:id")
+		JsonObject item(Request r) {
+			return new JsonObject().put("id", r.pathParam("id"));
+		}
+	}
+
+	private Future<Router> start(Vertx vertx, boolean timing) throws Exception {
+		Router router = Irked.router(vertx).configure(new TestController());
+		if (timing)
+			router.enableServerTiming();
+		return vertx.createHttpServer().requestHandler(router).listen(port).map(router);
+	}
+
+	@Test
+	public void testServerTiming(VertxTestContext context, Vertx vertx) throws Exception {
+		start(vertx, true)
+		.compose(router -> getClient(vertx).get(port, "localhost", "/items/1").send())
+		.map(r -> {
+			assertThat(r, isSuccess());
+			String timing = r.getHeader("Server-Timing");
+			assertThat(timing, is(notNullValue()));
+			assertThat(timing, startsWith("match;dur="));
+			assertThat(timing, containsString("handler;dur="));
+			assertThat(timing, containsString(";desc=\"GET /items/:id\""));
+			assertThat(timing, containsString("serialize;dur="));
+			assertThat(timing, containsString("write;dur="));
+			assertThat(timing, matchesPattern(".*, total;dur=\\d+\\.\\d{3}$"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testDisabled(VertxTestContext context, Vertx vertx) throws Exception {
+		start(vertx, false)
+		.compose(router -> getClient(vertx).get(port, "localhost", "/items/1").send())
+		.map(r -> {
+			assertThat(r, isSuccess());
+			assertThat(r.getHeader("Server-Timing"), is(nullValue()));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
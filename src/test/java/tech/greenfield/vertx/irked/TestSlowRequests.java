@@ -0,0 +1,74 @@
+package tech.greenfield.vertx.irked;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static tech.greenfield.vertx.irked.Matchers.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxTestContext;
+import tech.greenfield.vertx.irked.annotations.Endpoint;
+import tech.greenfield.vertx.irked.annotations.Get;
+import tech.greenfield.vertx.irked.base.TestBase;
+import tech.greenfield.vertx.irked.diagnostics.SlowRequestsController;
+
+public class TestSlowRequests extends TestBase {
+
+	public class TestController extends Controller {
+		@Endpoint("/admin/slow")
+		SlowRequestsController slowRequests = new SlowRequestsController();
+
+		@Endpoint("/items/*")
+		WebHandler middleware = Request::next;
+
+		@Get("/items/:id")
+		Future<String> item(Request r) {
+			if (r.pathParam("id").equals("fast"))
+				return Future.succeededFuture("fast");
+			Promise<String> result = Promise.promise();
+			r.vertx().setTimer(200, id -> result.complete("slow"));
+			return result.future();
+		}
+	}
+
+	@BeforeEach
+	public void deployServer(VertxTestContext context, Vertx vertx) {
+		var router = Irked.router(vertx).recordSlowRequests(100);
+		try {
+			router.configure(new TestController());
+		} catch (Exception e) {
+			context.failNow(e);
+			return;
+		}
+		vertx.createHttpServer().requestHandler(router).listen(port).<Void>mapEmpty().onComplete(context.succeedingThenComplete());
+	}
+
+	@Test
+	public void testSlowRequestTimeline(VertxTestContext context, Vertx vertx) {
+		var client = getClient(vertx);
+		client.get(port, "localhost", "/items/fast").send()
+		.compose(r -> client.get(port, "localhost", "/items/slow").send())
+		.compose(r -> client.get(port, "localhost", "/admin/slow").send())
+		.map(r -> {
+			assertThat(r, isSuccess());
+			JsonObject report = r.bodyAsJsonObject();
+			assertThat(report.getLong("threshold"), is(100L));
+			assertThat(report.getLong("count"), is(1L));
+			JsonObject slow = report.getJsonArray("requests").getJsonObject(0);
+			assertThat(slow.getString("uri"), is(equalTo("/items/slow")));
+			assertThat(slow.getDouble("duration"), is(greaterThanOrEqualTo(200.0)));
+			var timeline = slow.getJsonArray("timeline");
+			assertThat(timeline.size(), is(2));
+			assertThat(timeline.getJsonObject(1).getString("route"), is(equalTo("GET /items/:id")));
+			assertThat(timeline.getJsonObject(1).getString("thread"), startsWith("vert.x-eventloop-thread"));
+			return null;
+		})
+		.onComplete(context.succeedingThenComplete());
+	}
+
+}
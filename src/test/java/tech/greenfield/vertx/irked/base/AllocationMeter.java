@@ -0,0 +1,93 @@
+package tech.greenfield.vertx.irked.base;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerRequest;
+
+/**
+ * HTTP request handler that measures the number of bytes allocated on the handling thread while a router handles each
+ * request, so that tests can assert allocation budgets for the request path.
+ *
+ * Only the allocations made before the router returns are counted, so the measured handlers should complete their
+ * response synchronously. Measurements should be taken after warming up the request path, and compared using
+ * {@link #median()} which is not sensitive to the occasional request that triggers lazy initialization.
+ */
+public class AllocationMeter implements Handler<HttpServerRequest> {
+
+	private static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final Handler<HttpServerRequest> router;
+	private final long overhead;
+	private long[] samples = new long[256];
+	private int count;
+
+	/**
+	 * Create a meter for a router
+	 * @param router router that handles the measured requests
+	 */
+	public AllocationMeter(Handler<HttpServerRequest> router) {
+		this.router = router;
+		long minimal = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			long before = allocatedBytes();
+			minimal = Math.min(minimal, allocatedBytes() - before);
+		}
+		overhead = minimal;
+	}
+
+	/**
+	 * Check whether the JVM can measure per-thread allocations
+	 * @return whether allocations can be measured
+	 */
+	public static boolean isSupported() {
+		return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+	}
+
+	@Override
+	public void handle(HttpServerRequest request) {
+		long before = allocatedBytes();
+		router.handle(request);
+		record(allocatedBytes() - before - overhead);
+	}
+
+	/**
+	 * Discard all measurements, for example after warming up
+	 */
+	public synchronized void reset() {
+		count = 0;
+	}
+
+	/**
+	 * Retrieve the number of measured requests
+	 * @return number of requests measured since the last reset
+	 */
+	public synchronized int count() {
+		return count;
+	}
+
+	/**
+	 * Retrieve the median number of bytes allocated by the measured requests
+	 * @return median number of bytes allocated per request, or 0 if no requests were measured
+	 */
+	public synchronized long median() {
+		if (count == 0)
+			return 0;
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		return sorted[count / 2];
+	}
+
+	private synchronized void record(long bytes) {
+		if (count == samples.length)
+			samples = Arrays.copyOf(samples, count * 2);
+		samples[count++] = bytes;
+	}
+
+	private static long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+}
@@ -0,0 +1,53 @@
+package tech.greenfield.vertx.irked.base;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock that only moves when a test advances it, for testing expiry without waiting
+ *
+ * @author odeda
+ */
+public class TestClock extends Clock {
+
+	private volatile long millis;
+
+	/**
+	 * Create a clock
+	 * @param millis initial time, in milliseconds since the epoch
+	 */
+	public TestClock(long millis) {
+		this.millis = millis;
+	}
+
+	/**
+	 * Move the clock forward
+	 * @param millis number of milliseconds to advance by
+	 */
+	public void advance(long millis) {
+		this.millis += millis;
+	}
+
+	@Override
+	public long millis() {
+		return millis;
+	}
+
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochMilli(millis);
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return ZoneOffset.UTC;
+	}
+
+	@Override
+	public Clock withZone(ZoneId zone) {
+		throw new UnsupportedOperationException();
+	}
+
+}